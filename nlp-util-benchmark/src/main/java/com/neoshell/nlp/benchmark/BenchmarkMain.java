@@ -0,0 +1,18 @@
+package com.neoshell.nlp.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Same as the JMH main class, but always reports the allocation rate per
+// operation (gc.alloc.rate.norm).
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+    new Runner(new OptionsBuilder().parent(commandLineOptions)
+        .addProfiler(GCProfiler.class).build()).run();
+  }
+
+}
@@ -0,0 +1,118 @@
+package com.neoshell.nlp.benchmark;
+
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.neoshell.nlp.client.NLPUtilClient;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.messaging.MessageAnalysisUtil;
+import com.neoshell.nlp.server.MetricsInterceptor;
+import com.neoshell.nlp.server.NLPUtilServer;
+import com.neoshell.nlp.server.ServerMetrics;
+
+// Runs the services of NLPUtilServer over the in-process gRPC transport with
+// the stub segmenter, so that the whole RPC stack can be loaded without the
+// Stanford model or a network.
+public class InProcessNLPUtilServer implements Closeable {
+
+  // Every ReloadStopWords call is logged. Don't flood the console under load.
+  private static final Logger serverLogger = Logger
+      .getLogger(NLPUtilServer.class.getName());
+
+  static {
+    serverLogger.setLevel(Level.WARNING);
+  }
+
+  private final String name;
+  private final File configDir;
+  private final ServerMetrics metrics;
+  private final Server server;
+
+  public InProcessNLPUtilServer() throws IOException {
+    name = "nlp-util-" + UUID.randomUUID();
+    // ReloadStopWords reads the stop words from the files listed in the
+    // config file.
+    configDir = Files.createTempDirectory("nlp-util-load").toFile();
+    List<String> stopWordsEnglish = new ArrayList<>();
+    List<String> stopWordsChinese = new ArrayList<>();
+    for (String word : SyntheticCorpus.STOP_WORDS) {
+      if (word.charAt(0) < 0x80) {
+        stopWordsEnglish.add(word);
+      } else {
+        stopWordsChinese.add(word);
+      }
+    }
+    File stopWordsEnglishFile = writeLines("stopwords_en.txt",
+        stopWordsEnglish);
+    File stopWordsChineseFile = writeLines("stopwords_zh.txt",
+        stopWordsChinese);
+    File configFile = writeLines("config.ini",
+        Arrays.asList("[NLP]",
+            "StopWordsEnglish = " + stopWordsEnglishFile.getPath(),
+            "StopWordsChinese = " + stopWordsChineseFile.getPath()));
+
+    metrics = new ServerMetrics();
+    NLPUtil nlpUtil = new NLPUtil(new StubSegmenter());
+    nlpUtil.addStopwords(SyntheticCorpus.STOP_WORDS);
+    nlpUtil.setStageRecorder(metrics);
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(nlpUtil);
+    messageAnalysisUtil.setStageRecorder(metrics);
+    MetricsInterceptor metricsInterceptor = new MetricsInterceptor(metrics);
+    server = InProcessServerBuilder.forName(name)
+        .addService(ServerInterceptors.intercept(
+            new NLPUtilServer.NLPUtilImpl(nlpUtil), metricsInterceptor))
+        .addService(ServerInterceptors.intercept(
+            new NLPUtilServer.MessageAnalysisUtilImpl(messageAnalysisUtil),
+            metricsInterceptor))
+        .addService(ServerInterceptors.intercept(
+            new NLPUtilServer.NLPUtilAdminImpl(nlpUtil, configFile.getPath()),
+            metricsInterceptor))
+        .build().start();
+  }
+
+  public NLPUtilClient createClient() {
+    return new NLPUtilClient(InProcessChannelBuilder.forName(name).build());
+  }
+
+  // Server side view of the load, including the time spent in each stage.
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.shutdown();
+    try {
+      server.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (File file : configDir.listFiles()) {
+      file.delete();
+    }
+    configDir.delete();
+  }
+
+  private File writeLines(String fileName, List<String> lines)
+      throws IOException {
+    File file = new File(configDir, fileName);
+    Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    return file;
+  }
+
+}
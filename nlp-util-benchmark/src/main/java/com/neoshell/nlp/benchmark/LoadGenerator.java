@@ -0,0 +1,212 @@
+package com.neoshell.nlp.benchmark;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.neoshell.nlp.client.NLPUtilClient;
+import com.neoshell.nlp.messaging.Conversation;
+
+// Drives NLPUtilServer through NLPUtilClient from a number of threads. Each
+// thread sends its next call as soon as the previous one returns (closed
+// loop), picking the RPC at random according to the weights of the mix.
+public class LoadGenerator {
+
+  public enum Rpc {
+    GENERATE_NLP_CONTEXT("GenerateNLPContext"),
+    UPDATE_NLP_CONTEXT("UpdateNLPContext"),
+    SEGMENT("Segment"),
+    SEGMENT_OFFSETS("SegmentOffsets"),
+    IS_STOP_WORD("IsStopWord"),
+    REMOVE_STOP_WORDS("RemoveStopWords"),
+    COUNT_WORDS("CountWords"),
+    COUNT_WORD_SHARD("CountWordShard"),
+    GET_KEYWORD_INFO("GetKeywordInfo"),
+    GET_KEYWORD_INFO_BATCH("GetKeywordInfoBatch"),
+    MERGE_MESSAGES_AND_COMPUTE_KEYWORDS("MergeMessagesAndComputeKeywords"),
+    MERGE_MESSAGES_AND_COMPUTE_KEYWORDS_STREAM(
+        "MergeMessagesAndComputeKeywordsStream"),
+    RELOAD_STOP_WORDS("ReloadStopWords");
+
+    private final String methodName;
+
+    private Rpc(String methodName) {
+      this.methodName = methodName;
+    }
+
+    // Name of the method in nlp_service.proto.
+    public String getMethodName() {
+      return methodName;
+    }
+
+    public static Rpc forMethodName(String methodName) {
+      for (Rpc rpc : values()) {
+        if (rpc.methodName.equalsIgnoreCase(methodName)) {
+          return rpc;
+        }
+      }
+      throw new IllegalArgumentException("Unknown RPC: " + methodName);
+    }
+  }
+
+  private static final int COUNT_WORDS_LIMIT = 100;
+  private static final int KEYWORD_LIMIT = 10;
+
+  private final NLPUtilClient client;
+  private final Workload workload;
+  private final int concurrency;
+  private final Rpc[] rpcs;
+  // cumulativeWeights[i] = sum of the weights of rpcs[0..i].
+  private final int[] cumulativeWeights;
+
+  // mix maps each RPC to its relative weight. RPCs not in the mix are not
+  // called.
+  public LoadGenerator(NLPUtilClient client, Workload workload,
+      Map<Rpc, Integer> mix, int concurrency) {
+    if (concurrency <= 0) {
+      throw new IllegalArgumentException(
+          "concurrency must be positive: " + concurrency);
+    }
+    this.client = client;
+    this.workload = workload;
+    this.concurrency = concurrency;
+    List<Rpc> rpcList = new ArrayList<>();
+    List<Integer> weightList = new ArrayList<>();
+    int sum = 0;
+    for (Map.Entry<Rpc, Integer> entry : mix.entrySet()) {
+      if (entry.getValue() > 0) {
+        sum += entry.getValue();
+        rpcList.add(entry.getKey());
+        weightList.add(sum);
+      }
+    }
+    if (rpcList.isEmpty()) {
+      throw new IllegalArgumentException("No RPC in the mix: " + mix);
+    }
+    rpcs = rpcList.toArray(new Rpc[rpcList.size()]);
+    cumulativeWeights = new int[rpcs.length];
+    for (int i = 0; i < rpcs.length; i++) {
+      cumulativeWeights[i] = weightList.get(i);
+    }
+  }
+
+  // Calls made during the warm-up are not reported.
+  public LoadReport run(long warmupMillis, long durationMillis)
+      throws InterruptedException {
+    final LoadReport report = new LoadReport();
+    final long measureStartNanos = System.nanoTime()
+        + warmupMillis * 1000000L;
+    final long endNanos = measureStartNanos + durationMillis * 1000000L;
+    List<Thread> threads = new ArrayList<>(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      final int threadIndex = i;
+      Thread thread = new Thread("load-generator-" + i) {
+        @Override
+        public void run() {
+          // Threads start at different payloads.
+          int payloadIndex = threadIndex * 7;
+          long startNanos;
+          while ((startNanos = System.nanoTime()) < endNanos) {
+            Rpc rpc = nextRpc();
+            Status.Code errorCode = call(rpc, payloadIndex++);
+            if (startNanos >= measureStartNanos) {
+              report.record(rpc, System.nanoTime() - startNanos, errorCode);
+            }
+          }
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // Calls started before the end are waited for.
+    report.setElapsedNanos(
+        Math.max(System.nanoTime() - measureStartNanos, 0L));
+    return report;
+  }
+
+  private Rpc nextRpc() {
+    int target = ThreadLocalRandom.current()
+        .nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    for (int i = 0; i < rpcs.length; i++) {
+      if (target < cumulativeWeights[i]) {
+        return rpcs[i];
+      }
+    }
+    return rpcs[rpcs.length - 1];
+  }
+
+  // Returns null if the call succeeded.
+  private Status.Code call(Rpc rpc, int payloadIndex) {
+    try {
+      switch (rpc) {
+      case GENERATE_NLP_CONTEXT:
+        client.generateNLPContext(workload.getGlobalWordCount());
+        break;
+      case UPDATE_NLP_CONTEXT:
+        client.updateNLPContext(workload.getNLPContext(),
+            workload.getWordCountDeltas(payloadIndex));
+        break;
+      case SEGMENT:
+        client.segment(workload.getTexts(payloadIndex));
+        break;
+      case SEGMENT_OFFSETS:
+        client.segmentOffsets(workload.getTexts(payloadIndex), true);
+        break;
+      case IS_STOP_WORD:
+        client.isStopWord(workload.getWord(payloadIndex));
+        break;
+      case REMOVE_STOP_WORDS:
+        client.removeStopWords(workload.getWords(payloadIndex));
+        break;
+      case COUNT_WORDS:
+        client.countWords(workload.getTexts(payloadIndex), false,
+            COUNT_WORDS_LIMIT);
+        break;
+      case COUNT_WORD_SHARD:
+        client.countWordShard(workload.getTexts(payloadIndex), false);
+        break;
+      case GET_KEYWORD_INFO:
+        client.getKeywordInfo(workload.getWords(payloadIndex),
+            workload.getNLPContext(), KEYWORD_LIMIT);
+        break;
+      case GET_KEYWORD_INFO_BATCH:
+        client.getKeywordInfoBatch(workload.getDocuments(payloadIndex),
+            workload.getNLPContext(), KEYWORD_LIMIT);
+        break;
+      case MERGE_MESSAGES_AND_COMPUTE_KEYWORDS:
+        client.mergeMessagesAndComputeKeywords(
+            workload.getMessages(payloadIndex),
+            workload.getMessageAnalysisContext());
+        break;
+      case MERGE_MESSAGES_AND_COMPUTE_KEYWORDS_STREAM:
+        // Until the last conversation is received.
+        Iterator<Conversation> conversations = client
+            .mergeMessagesAndComputeKeywordsStream(
+                workload.getMessages(payloadIndex),
+                workload.getMessageAnalysisContext(), false);
+        while (conversations.hasNext()) {
+          conversations.next();
+        }
+        break;
+      case RELOAD_STOP_WORDS:
+        client.reloadStopWords();
+        break;
+      }
+      return null;
+    } catch (StatusRuntimeException e) {
+      return e.getStatus().getCode();
+    } catch (RuntimeException e) {
+      return Status.Code.UNKNOWN;
+    }
+  }
+
+}
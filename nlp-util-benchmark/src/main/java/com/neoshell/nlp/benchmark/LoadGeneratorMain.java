@@ -0,0 +1,130 @@
+package com.neoshell.nlp.benchmark;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.neoshell.nlp.benchmark.LoadGenerator.Rpc;
+import com.neoshell.nlp.client.NLPUtilClient;
+
+// Command line entry of the load generator. Options are given as
+// --name=value:
+//   --target      host:port of a running server, or "in-process" (default) to
+//                 start one in this JVM with the stub segmenter.
+//   --concurrency number of load threads. Default: 8.
+//   --warmup      seconds of load that are not reported. Default: 5.
+//   --duration    seconds of load that are reported. Default: 30.
+//   --mix         RPC weights, e.g. Segment:4,GetKeywordInfo:1. Default: all
+//                 the RPCs, with ReloadStopWords 10 times less often.
+//   --texts       texts per request. Default: 10.
+//   --words       words per text or message. Default: 20.
+//   --messages    messages per MergeMessagesAndComputeKeywords request.
+//                 Default: 200.
+//   --seed        seed of the synthetic corpus. Default: 0.
+//   --server-metrics
+//                 true to also print the metrics of the in-process server,
+//                 including the time spent in each stage. Default: false.
+public class LoadGeneratorMain {
+
+  private static final String IN_PROCESS_TARGET = "in-process";
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseOptions(args);
+    String target = getOption(options, "target", IN_PROCESS_TARGET);
+    int concurrency = Integer.parseInt(getOption(options, "concurrency", "8"));
+    long warmupSeconds = Long.parseLong(getOption(options, "warmup", "5"));
+    long durationSeconds = Long.parseLong(getOption(options, "duration", "30"));
+    String mixString = options.remove("mix");
+    Map<Rpc, Integer> mix = mixString == null ? getDefaultMix()
+        : parseMix(mixString);
+    int numTexts = Integer.parseInt(getOption(options, "texts", "10"));
+    int numWords = Integer.parseInt(getOption(options, "words", "20"));
+    int numMessages = Integer.parseInt(getOption(options, "messages", "200"));
+    long seed = Long.parseLong(getOption(options, "seed", "0"));
+    boolean printServerMetrics = Boolean
+        .parseBoolean(getOption(options, "server-metrics", "false"));
+    if (numTexts <= 0 || numWords <= 0 || numMessages <= 0) {
+      throw new IllegalArgumentException(
+          "texts, words and messages must be positive");
+    }
+    if (!options.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Unknown options: " + options.keySet());
+    }
+
+    Workload workload = new Workload(seed, numTexts, numWords, numMessages);
+    InProcessNLPUtilServer inProcessServer = null;
+    NLPUtilClient client;
+    if (target.equals(IN_PROCESS_TARGET)) {
+      inProcessServer = new InProcessNLPUtilServer();
+      client = inProcessServer.createClient();
+    } else {
+      int colon = target.lastIndexOf(':');
+      client = new NLPUtilClient(target.substring(0, colon),
+          Integer.parseInt(target.substring(colon + 1)));
+    }
+    try {
+      System.out.println("Target " + target + ", " + concurrency
+          + " threads, mix " + mix + ", warm-up " + warmupSeconds
+          + " s, duration " + durationSeconds + " s");
+      LoadReport report = new LoadGenerator(client, workload, mix,
+          concurrency).run(warmupSeconds * 1000L, durationSeconds * 1000L);
+      System.out.print(report.toText());
+      if (inProcessServer != null && printServerMetrics) {
+        // Includes the warm-up.
+        System.out.println();
+        System.out.println("Server metrics:");
+        System.out.print(inProcessServer.getMetrics().toText());
+      }
+    } finally {
+      client.shutdown();
+      if (inProcessServer != null) {
+        inProcessServer.close();
+      }
+    }
+  }
+
+  // Every RPC once per 10 calls, except ReloadStopWords which is an admin
+  // call.
+  static Map<Rpc, Integer> getDefaultMix() {
+    Map<Rpc, Integer> mix = new EnumMap<>(Rpc.class);
+    for (Rpc rpc : Rpc.values()) {
+      mix.put(rpc, rpc == Rpc.RELOAD_STOP_WORDS ? 1 : 10);
+    }
+    return mix;
+  }
+
+  // Parses "Method:weight,Method:weight,...".
+  static Map<Rpc, Integer> parseMix(String mixString) {
+    Map<Rpc, Integer> mix = new EnumMap<>(Rpc.class);
+    for (String item : mixString.split(",")) {
+      String[] parts = item.trim().split(":");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid mix item: " + item);
+      }
+      mix.put(Rpc.forMethodName(parts[0].trim()),
+          Integer.parseInt(parts[1].trim()));
+    }
+    return mix;
+  }
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (!arg.startsWith("--") || equals < 0) {
+        throw new IllegalArgumentException("Invalid option: " + arg);
+      }
+      options.put(arg.substring(2, equals), arg.substring(equals + 1));
+    }
+    return options;
+  }
+
+  // Removes the option, so that unknown options can be detected.
+  private static String getOption(Map<String, String> options, String name,
+      String defaultValue) {
+    String value = options.remove(name);
+    return value == null ? defaultValue : value;
+  }
+
+}
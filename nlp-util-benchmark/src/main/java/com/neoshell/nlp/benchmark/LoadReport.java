@@ -0,0 +1,117 @@
+package com.neoshell.nlp.benchmark;
+
+import io.grpc.Status;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.neoshell.nlp.benchmark.LoadGenerator.Rpc;
+import com.neoshell.nlp.server.Histogram;
+
+// Client side results of a load run. Filled in concurrently by the load
+// threads.
+public class LoadReport {
+
+  private final Map<Rpc, Histogram> latencies = new EnumMap<>(Rpc.class);
+  private final Map<Rpc, LongAdder> errors = new EnumMap<>(Rpc.class);
+  private final ConcurrentMap<Status.Code, LongAdder> errorCodes;
+  private volatile long elapsedNanos;
+
+  LoadReport() {
+    errorCodes = new ConcurrentHashMap<>();
+    // Created up front, so that the maps are only read by the load threads.
+    for (Rpc rpc : Rpc.values()) {
+      latencies.put(rpc, new Histogram());
+      errors.put(rpc, new LongAdder());
+    }
+  }
+
+  void record(Rpc rpc, long elapsedNanos, Status.Code errorCode) {
+    latencies.get(rpc).record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    if (errorCode != null) {
+      errors.get(rpc).increment();
+      LongAdder count = errorCodes.get(errorCode);
+      if (count == null) {
+        errorCodes.putIfAbsent(errorCode, new LongAdder());
+        count = errorCodes.get(errorCode);
+      }
+      count.increment();
+    }
+  }
+
+  void setElapsedNanos(long elapsedNanos) {
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public double getElapsedSeconds() {
+    return elapsedNanos / 1e9;
+  }
+
+  // Number of calls made, including the failed ones.
+  public long getCalls(Rpc rpc) {
+    return latencies.get(rpc).getCount();
+  }
+
+  public long getErrors(Rpc rpc) {
+    return errors.get(rpc).sum();
+  }
+
+  public long getErrors(Status.Code code) {
+    LongAdder count = errorCodes.get(code);
+    return count == null ? 0L : count.sum();
+  }
+
+  // Latency of all the calls in micro seconds.
+  public Histogram getLatency(Rpc rpc) {
+    return latencies.get(rpc);
+  }
+
+  public long getTotalCalls() {
+    long calls = 0L;
+    for (Rpc rpc : Rpc.values()) {
+      calls += getCalls(rpc);
+    }
+    return calls;
+  }
+
+  public long getTotalErrors() {
+    long total = 0L;
+    for (Rpc rpc : Rpc.values()) {
+      total += getErrors(rpc);
+    }
+    return total;
+  }
+
+  public String toText() {
+    StringBuilder sb = new StringBuilder();
+    double seconds = Math.max(getElapsedSeconds(), 1e-9);
+    sb.append(String.format("%-32s %10s %10s %8s %9s %9s %9s %9s%n", "rpc",
+        "calls", "calls/s", "errors%", "p50(us)", "p90(us)", "p99(us)",
+        "max(us)"));
+    for (Rpc rpc : Rpc.values()) {
+      long calls = getCalls(rpc);
+      if (calls == 0) {
+        continue;
+      }
+      Histogram latency = latencies.get(rpc);
+      sb.append(String.format("%-32s %10d %10.1f %8.2f %9d %9d %9d %9d%n",
+          rpc.getMethodName(), calls, calls / seconds,
+          100.0 * getErrors(rpc) / calls, latency.getP50(), latency.getP90(),
+          latency.getP99(), latency.getMax()));
+    }
+    long totalCalls = getTotalCalls();
+    sb.append(String.format("%-32s %10d %10.1f %8.2f%n", "total", totalCalls,
+        totalCalls / seconds,
+        totalCalls == 0 ? 0.0 : 100.0 * getTotalErrors() / totalCalls));
+    for (Map.Entry<Status.Code, LongAdder> entry : errorCodes.entrySet()) {
+      sb.append(String.format("errors %s: %d%n", entry.getKey(),
+          entry.getValue().sum()));
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,68 @@
+package com.neoshell.nlp.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.messaging.Conversation;
+import com.neoshell.nlp.messaging.Message;
+import com.neoshell.nlp.messaging.MessageAnalysisContext;
+import com.neoshell.nlp.messaging.MessageAnalysisUtil;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageAnalysisUtilBenchmark {
+
+  private static final int NUM_WORDS_PER_MESSAGE = 15;
+  private static final int MESSAGE_INTERVAL_SECONDS = 30;
+
+  @Param({ "100", "1000", "10000" })
+  public int numMessages;
+
+  // 0 merges by number of common keywords.
+  @Param({ "0", "0.1" })
+  public double similarityThreshold;
+
+  private MessageAnalysisUtil messageAnalysisUtil;
+  private List<Message> messages;
+  private MessageAnalysisContext context;
+
+  @Setup
+  public void setUp() {
+    SyntheticCorpus corpus = new SyntheticCorpus(0L);
+    NLPUtil nlpUtil = new NLPUtil(new StubSegmenter());
+    nlpUtil.addStopwords(SyntheticCorpus.STOP_WORDS);
+    messageAnalysisUtil = new MessageAnalysisUtil(nlpUtil);
+    messages = corpus.nextMessages(numMessages, NUM_WORDS_PER_MESSAGE,
+        MESSAGE_INTERVAL_SECONDS);
+    context = MessageAnalysisContext.newBuilder()
+        .setNlpContext(nlpUtil.generateNLPContext(SyntheticCorpus.countWords(
+            nlpUtil.segment(corpus.nextTexts(10000, NUM_WORDS_PER_MESSAGE)))))
+        .setTimeBucketSeconds(600).setCommonKeywordThreshold(2)
+        .setKeywordLimit(10).setMinMessagesPerConversation(2)
+        .setSimilarityThreshold(similarityThreshold).build();
+  }
+
+  @Benchmark
+  public List<Conversation> mergeMessagesAndComputeKeywords() {
+    return messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages,
+        context);
+  }
+
+}
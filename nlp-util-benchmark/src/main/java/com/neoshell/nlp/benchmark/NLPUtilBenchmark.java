@@ -0,0 +1,117 @@
+package com.neoshell.nlp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.neoshell.nlp.core.CancellationSignal;
+import com.neoshell.nlp.core.Document;
+import com.neoshell.nlp.core.NLPContext;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.core.WordInfo;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NLPUtilBenchmark {
+
+  private static final int NUM_WORDS_PER_TEXT = 20;
+  private static final int KEYWORD_LIMIT = 20;
+
+  @Param({ "100", "1000", "10000" })
+  public int numTexts;
+
+  private NLPUtil nlpUtil;
+  private List<String> texts;
+  private List<String> words;
+  private Map<String, Long> globalWordCount;
+  private NLPContext context;
+  private List<Document> documents;
+  private ExecutorService executor;
+
+  @Setup
+  public void setUp() {
+    SyntheticCorpus corpus = new SyntheticCorpus(0L);
+    nlpUtil = new NLPUtil(new StubSegmenter());
+    nlpUtil.addStopwords(SyntheticCorpus.STOP_WORDS);
+    texts = corpus.nextTexts(numTexts, NUM_WORDS_PER_TEXT);
+    words = nlpUtil.segment(texts);
+    globalWordCount = SyntheticCorpus.countWords(
+        nlpUtil.segment(corpus.nextTexts(numTexts * 10, NUM_WORDS_PER_TEXT)));
+    context = nlpUtil.generateNLPContext(globalWordCount);
+    documents = new ArrayList<>();
+    for (String text : texts) {
+      documents.add(Document.newBuilder().setText(text).build());
+    }
+    executor = Executors
+        .newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public List<String> segment() {
+    return nlpUtil.segment(texts);
+  }
+
+  @Benchmark
+  public List<String> removeStopWords() {
+    return nlpUtil.removeStopWords(words);
+  }
+
+  @Benchmark
+  public List<WordInfo> countWords() {
+    return nlpUtil.countWords(texts, false, KEYWORD_LIMIT);
+  }
+
+  @Benchmark
+  public List<WordInfo> getKeywordInfo() {
+    return nlpUtil.getKeywordInfo(words, context, KEYWORD_LIMIT);
+  }
+
+  // One text after the other, as with a GetKeywordInfo call per text.
+  @Benchmark
+  public List<List<WordInfo>> getKeywordInfoPerText() {
+    List<List<WordInfo>> keywordInfoLists = new ArrayList<>();
+    for (String text : texts) {
+      keywordInfoLists.add(nlpUtil.getKeywordInfo(
+          nlpUtil.removeStopWords(nlpUtil.segment(text)), context,
+          KEYWORD_LIMIT));
+    }
+    return keywordInfoLists;
+  }
+
+  @Benchmark
+  public List<List<WordInfo>> getKeywordInfoBatch() {
+    return nlpUtil.getKeywordInfoBatch(documents, context, KEYWORD_LIMIT,
+        executor, CancellationSignal.NONE);
+  }
+
+  @Benchmark
+  public NLPContext generateNLPContext() {
+    return nlpUtil.generateNLPContext(globalWordCount);
+  }
+
+}
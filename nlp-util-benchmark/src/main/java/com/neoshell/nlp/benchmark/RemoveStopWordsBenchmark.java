@@ -0,0 +1,79 @@
+package com.neoshell.nlp.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.grpc.RemoveStopWordsReply;
+import com.neoshell.nlp.grpc.RemoveStopWordsRequest;
+
+// What the server does for a RemoveStopWords call, from the request bytes to
+// the reply bytes, with words as strings or as UTF-8 bytes.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RemoveStopWordsBenchmark {
+
+  private static final int NUM_WORDS_PER_TEXT = 20;
+
+  @Param({ "100", "1000", "10000" })
+  public int numTexts;
+
+  private NLPUtil nlpUtil;
+  private byte[] stringRequest;
+  private byte[] utf8Request;
+
+  @Setup
+  public void setUp() {
+    SyntheticCorpus corpus = new SyntheticCorpus(0L);
+    nlpUtil = new NLPUtil(new StubSegmenter());
+    nlpUtil.addStopwords(SyntheticCorpus.STOP_WORDS);
+    List<String> words = nlpUtil
+        .segment(corpus.nextTexts(numTexts, NUM_WORDS_PER_TEXT));
+    RemoveStopWordsRequest.Builder stringRequestBuilder = RemoveStopWordsRequest
+        .newBuilder().addAllWord(words);
+    RemoveStopWordsRequest.Builder utf8RequestBuilder = RemoveStopWordsRequest
+        .newBuilder();
+    for (String word : words) {
+      utf8RequestBuilder.addWordUtf8(ByteString.copyFromUtf8(word));
+    }
+    stringRequest = stringRequestBuilder.build().toByteArray();
+    utf8Request = utf8RequestBuilder.build().toByteArray();
+  }
+
+  @Benchmark
+  public byte[] removeStopWords() throws InvalidProtocolBufferException {
+    RemoveStopWordsRequest request = RemoveStopWordsRequest
+        .parseFrom(stringRequest);
+    return RemoveStopWordsReply.newBuilder()
+        .addAllWord(nlpUtil.removeStopWords(request.getWordList())).build()
+        .toByteArray();
+  }
+
+  @Benchmark
+  public byte[] removeStopWordsUtf8() throws InvalidProtocolBufferException {
+    RemoveStopWordsRequest request = RemoveStopWordsRequest
+        .parseFrom(utf8Request);
+    return RemoveStopWordsReply.newBuilder()
+        .addAllWordUtf8(nlpUtil.removeStopWordsUtf8(request.getWordUtf8List()))
+        .build().toByteArray();
+  }
+
+}
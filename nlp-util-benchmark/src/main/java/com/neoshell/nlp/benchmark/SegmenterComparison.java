@@ -0,0 +1,144 @@
+package com.neoshell.nlp.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.neoshell.nlp.core.CRFSegmenter;
+import com.neoshell.nlp.core.DictionarySegmenter;
+import com.neoshell.nlp.core.ScriptAwareSegmenter;
+import com.neoshell.nlp.core.Segmenter;
+
+// Compares the speed and accuracy of DictionarySegmenter with the CRF model,
+// taking the CRF output as the truth. Both only see the Chinese parts of the
+// texts, through ScriptAwareSegmenter, so that the rest is split the same way
+// on both sides. Usage:
+//   SegmenterComparison <stanford segmenter dir> <corpus file>
+//       [dictionary file]
+// The corpus has one text per line. Without a dictionary file, the
+// dictionary is made of the words the CRF model finds in the first half of
+// the corpus, and only the second half is compared.
+public class SegmenterComparison {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: SegmenterComparison <stanford segmenter dir>"
+          + " <corpus file> [dictionary file]");
+      System.exit(1);
+    }
+    Segmenter crfSegmenter = new ScriptAwareSegmenter(
+        CRFSegmenter.load(args[0]));
+    List<String> texts = readLines(args[1]);
+    DictionarySegmenter dictionarySegmenter;
+    if (args.length == 3) {
+      dictionarySegmenter = DictionarySegmenter.load(new File(args[2]));
+    } else {
+      List<String> trainingTexts = texts.subList(0, texts.size() / 2);
+      texts = texts.subList(texts.size() / 2, texts.size());
+      Set<String> words = new HashSet<>();
+      for (String text : trainingTexts) {
+        words.addAll(crfSegmenter.segment(text));
+      }
+      dictionarySegmenter = new DictionarySegmenter(words);
+    }
+    System.out.println(dictionarySegmenter.getNumWords()
+        + " dictionary words, " + texts.size() + " texts");
+    Segmenter fastSegmenter = new ScriptAwareSegmenter(dictionarySegmenter);
+
+    // Once to warm up, once to measure.
+    segmentAll(crfSegmenter, texts);
+    segmentAll(fastSegmenter, texts);
+    long startNanos = System.nanoTime();
+    List<List<String>> expectedResults = segmentAll(crfSegmenter, texts);
+    long crfNanos = System.nanoTime() - startNanos;
+    startNanos = System.nanoTime();
+    List<List<String>> results = segmentAll(fastSegmenter, texts);
+    long dictionaryNanos = System.nanoTime() - startNanos;
+
+    long numChars = 0L;
+    long numExpectedWords = 0L;
+    long numWords = 0L;
+    long numCorrectWords = 0L;
+    for (int i = 0; i < texts.size(); i++) {
+      numChars += texts.get(i).length();
+      numExpectedWords += expectedResults.get(i).size();
+      numWords += results.get(i).size();
+      numCorrectWords += countCommonWords(expectedResults.get(i),
+          results.get(i));
+    }
+    double precision = numWords == 0L ? 0.0
+        : (double) numCorrectWords / numWords;
+    double recall = numExpectedWords == 0L ? 0.0
+        : (double) numCorrectWords / numExpectedWords;
+    double f1 = precision + recall == 0.0 ? 0.0
+        : 2.0 * precision * recall / (precision + recall);
+    System.out.printf("%-26s %14s %14s%n", "Engine", "ns/char",
+        "chars/s");
+    printSpeed("CRF (script-aware)", crfNanos, numChars);
+    printSpeed("Dictionary (script-aware)", dictionaryNanos, numChars);
+    System.out.printf("Precision %.4f, recall %.4f, F1 %.4f%n", precision,
+        recall, f1);
+  }
+
+  // Number of words of result at the same position as a word of
+  // expectedResult, i.e. same begin and end in the text without whitespace.
+  static long countCommonWords(List<String> expectedResult,
+      List<String> result) {
+    long numCommonWords = 0L;
+    int expectedIndex = 0;
+    int expectedBegin = 0;
+    int begin = 0;
+    for (String word : result) {
+      while (expectedIndex < expectedResult.size() && expectedBegin < begin) {
+        expectedBegin += expectedResult.get(expectedIndex++).length();
+      }
+      if (expectedBegin == begin && expectedIndex < expectedResult.size()
+          && expectedResult.get(expectedIndex).length() == word.length()) {
+        numCommonWords++;
+      }
+      begin += word.length();
+    }
+    return numCommonWords;
+  }
+
+  private static List<List<String>> segmentAll(Segmenter segmenter,
+      List<String> texts) {
+    List<List<String>> results = new ArrayList<>(texts.size());
+    for (String text : texts) {
+      results.add(segmenter.segment(text));
+    }
+    return results;
+  }
+
+  private static void printSpeed(String engine, long elapsedNanos,
+      long numChars) {
+    System.out.printf("%-26s %14.1f %14.0f%n", engine,
+        (double) elapsedNanos / Math.max(numChars, 1L),
+        numChars * 1e9 / Math.max(elapsedNanos, 1L));
+  }
+
+  private static List<String> readLines(String filePath) throws IOException {
+    List<String> lines = new ArrayList<>();
+    BufferedReader br = new BufferedReader(new InputStreamReader(
+        new FileInputStream(filePath), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          lines.add(line);
+        }
+      }
+    } finally {
+      br.close();
+    }
+    return lines;
+  }
+
+}
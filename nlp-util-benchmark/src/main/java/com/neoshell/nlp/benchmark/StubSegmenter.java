@@ -0,0 +1,46 @@
+package com.neoshell.nlp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.neoshell.nlp.core.Segmenter;
+
+// Cheap stand-in for the CRF segmenter, so benchmarks run without the Stanford
+// model. Splits on whitespace, and splits runs of Chinese characters into
+// 2-character words, which is how SyntheticCorpus builds Chinese words.
+public class StubSegmenter implements Segmenter {
+
+  @Override
+  public List<String> segment(String text) {
+    List<String> words = new ArrayList<>();
+    int length = text.length();
+    int i = 0;
+    while (i < length) {
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (isChinese(c)) {
+        int end = i + 1;
+        if (end < length && isChinese(text.charAt(end))) {
+          end++;
+        }
+        words.add(text.substring(i, end));
+        i = end;
+      } else {
+        int end = i + 1;
+        while (end < length && !Character.isWhitespace(text.charAt(end))
+            && !isChinese(text.charAt(end))) {
+          end++;
+        }
+        words.add(text.substring(i, end));
+        i = end;
+      }
+    }
+    return words;
+  }
+
+  private static boolean isChinese(char c) {
+    return c >= '一' && c <= '鿿';
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.neoshell.nlp.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.neoshell.nlp.messaging.Message;
+
+// Generates reproducible Chinese/English texts whose word frequencies follow a
+// Zipf distribution, like natural language.
+public class SyntheticCorpus {
+
+  public static final List<String> STOP_WORDS = Arrays.asList("the", "is",
+      "a", "of", "and", "to", "我们", "他们", "这个", "什么", "没有", "一个");
+
+  private static final int VOCABULARY_SIZE = 20000;
+  private static final double CHINESE_RATIO = 0.5;
+
+  private final Random random;
+  private final String[] chineseWords;
+  private final String[] englishWords;
+  // cumulativeWeights[i] = sum of 1 / (rank + 1) for rank <= i.
+  private final double[] cumulativeWeights;
+
+  public SyntheticCorpus(long seed) {
+    random = new Random(seed);
+    chineseWords = new String[VOCABULARY_SIZE];
+    englishWords = new String[VOCABULARY_SIZE];
+    int numStopWords = STOP_WORDS.size() / 2;
+    // Stop words are the most frequent ones.
+    for (int i = 0; i < VOCABULARY_SIZE; i++) {
+      englishWords[i] = i < numStopWords ? STOP_WORDS.get(i)
+          : createEnglishWord();
+      chineseWords[i] = i < numStopWords ? STOP_WORDS.get(numStopWords + i)
+          : createChineseWord();
+    }
+    cumulativeWeights = new double[VOCABULARY_SIZE];
+    double sum = 0.0;
+    for (int i = 0; i < VOCABULARY_SIZE; i++) {
+      sum += 1.0 / (i + 1);
+      cumulativeWeights[i] = sum;
+    }
+  }
+
+  public String nextText(int numWords) {
+    boolean isChinese = random.nextDouble() < CHINESE_RATIO;
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < numWords; i++) {
+      int rank = nextRank();
+      if (isChinese) {
+        sb.append(chineseWords[rank]);
+      } else {
+        if (i > 0) {
+          sb.append(' ');
+        }
+        sb.append(englishWords[rank]);
+      }
+    }
+    return sb.toString();
+  }
+
+  public List<String> nextTexts(int numTexts, int numWordsPerText) {
+    List<String> texts = new ArrayList<>(numTexts);
+    for (int i = 0; i < numTexts; i++) {
+      texts.add(nextText(numWordsPerText));
+    }
+    return texts;
+  }
+
+  // Messages are sorted by timestamp, intervalSeconds apart on average.
+  public List<Message> nextMessages(int numMessages, int numWordsPerMessage,
+      int intervalSeconds) {
+    List<Message> messages = new ArrayList<>(numMessages);
+    long timestampSeconds = 1500000000L;
+    for (int i = 0; i < numMessages; i++) {
+      timestampSeconds += random.nextInt(intervalSeconds * 2 + 1);
+      messages.add(Message.newBuilder().setId(i)
+          .setTimestampSeconds(timestampSeconds)
+          .setFromUserId("user" + random.nextInt(100))
+          .setToUserId("user" + random.nextInt(100))
+          .setContent(nextText(numWordsPerMessage)).build());
+    }
+    return messages;
+  }
+
+  public static Map<String, Long> countWords(List<String> words) {
+    Map<String, Long> wordCount = new HashMap<>();
+    for (String word : words) {
+      Long count = wordCount.get(word);
+      wordCount.put(word, count == null ? 1L : count + 1L);
+    }
+    return wordCount;
+  }
+
+  private int nextRank() {
+    double target = random.nextDouble()
+        * cumulativeWeights[VOCABULARY_SIZE - 1];
+    int rank = Arrays.binarySearch(cumulativeWeights, target);
+    return rank >= 0 ? rank : Math.min(-rank - 1, VOCABULARY_SIZE - 1);
+  }
+
+  private String createEnglishWord() {
+    int length = 3 + random.nextInt(6);
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) ('a' + random.nextInt(26));
+    }
+    return new String(chars);
+  }
+
+  private String createChineseWord() {
+    // Common Chinese characters.
+    char c0 = (char) (0x4e00 + random.nextInt(0x1000));
+    char c1 = (char) (0x4e00 + random.nextInt(0x1000));
+    return new String(new char[] { c0, c1 });
+  }
+
+}
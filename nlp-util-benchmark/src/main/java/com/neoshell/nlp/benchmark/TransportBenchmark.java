@@ -0,0 +1,88 @@
+package com.neoshell.nlp.benchmark;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.neoshell.nlp.client.NLPUtilClient;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.server.NLPUtilServer;
+
+// Latency of small calls to a server on the same host, over loopback TCP and
+// over a Unix domain socket. The stub segmenter keeps the work of each call
+// small, so that the transport dominates.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+  private static final int NUM_WORDS_PER_TEXT = 20;
+
+  @Param({ "tcp", "unix" })
+  public String transport;
+
+  @Param({ "1", "100" })
+  public int numTexts;
+
+  private File socketDir;
+  private Server server;
+  private NLPUtilClient client;
+  private List<String> texts;
+
+  @Setup
+  public void setUp() throws IOException {
+    NLPUtil nlpUtil = new NLPUtil(new StubSegmenter());
+    NLPUtilServer.NLPUtilImpl service = new NLPUtilServer.NLPUtilImpl(
+        nlpUtil);
+    if (transport.equals("unix")) {
+      socketDir = Files.createTempDirectory("nlp-util-transport").toFile();
+      File socketFile = new File(socketDir, "nlp-util.sock");
+      server = NLPUtilServer.unixSocketServerBuilder(socketFile)
+          .addService(service).build().start();
+      client = new NLPUtilClient(socketFile);
+    } else {
+      server = ServerBuilder.forPort(0).addService(service).build().start();
+      client = new NLPUtilClient("localhost", server.getPort());
+    }
+    texts = new SyntheticCorpus(0L).nextTexts(numTexts, NUM_WORDS_PER_TEXT);
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    client.shutdown();
+    server.shutdownNow().awaitTermination();
+    if (socketDir != null) {
+      for (File file : socketDir.listFiles()) {
+        file.delete();
+      }
+      socketDir.delete();
+    }
+  }
+
+  @Benchmark
+  public List<String> segment() {
+    return client.segment(texts);
+  }
+
+}
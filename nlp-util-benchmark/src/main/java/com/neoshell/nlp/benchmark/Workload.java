@@ -0,0 +1,106 @@
+package com.neoshell.nlp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.neoshell.nlp.core.Document;
+import com.neoshell.nlp.core.NLPContext;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.messaging.Message;
+import com.neoshell.nlp.messaging.MessageAnalysisContext;
+
+// Request payloads for the load generator. They are generated up front, so
+// that generating them doesn't slow down the load. Immutable, so it can be
+// shared by all the load threads.
+public class Workload {
+
+  private static final int NUM_PAYLOADS = 64;
+  private static final int NUM_CONTEXT_TEXTS = 1000;
+  private static final int MESSAGE_INTERVAL_SECONDS = 30;
+
+  private final List<List<String>> textLists;
+  private final List<List<String>> wordLists;
+  private final List<List<Document>> documentLists;
+  private final List<Map<String, Long>> wordCountDeltas;
+  private final List<List<Message>> messageLists;
+  private final Map<String, Long> globalWordCount;
+  private final NLPContext nlpContext;
+  private final MessageAnalysisContext messageAnalysisContext;
+
+  public Workload(long seed, int numTextsPerRequest, int numWordsPerText,
+      int numMessagesPerRequest) {
+    SyntheticCorpus corpus = new SyntheticCorpus(seed);
+    NLPUtil nlpUtil = new NLPUtil(new StubSegmenter());
+    textLists = new ArrayList<>(NUM_PAYLOADS);
+    wordLists = new ArrayList<>(NUM_PAYLOADS);
+    documentLists = new ArrayList<>(NUM_PAYLOADS);
+    wordCountDeltas = new ArrayList<>(NUM_PAYLOADS);
+    messageLists = new ArrayList<>(NUM_PAYLOADS);
+    for (int i = 0; i < NUM_PAYLOADS; i++) {
+      List<String> texts = corpus.nextTexts(numTextsPerRequest,
+          numWordsPerText);
+      textLists.add(texts);
+      List<String> words = nlpUtil.segment(texts);
+      wordLists.add(words);
+      List<Document> documents = new ArrayList<>(numTextsPerRequest);
+      for (String text : texts) {
+        documents.add(Document.newBuilder().setText(text).build());
+      }
+      documentLists.add(documents);
+      wordCountDeltas.add(SyntheticCorpus.countWords(words));
+      messageLists.add(corpus.nextMessages(numMessagesPerRequest,
+          numWordsPerText, MESSAGE_INTERVAL_SECONDS));
+    }
+    globalWordCount = SyntheticCorpus.countWords(nlpUtil
+        .segment(corpus.nextTexts(NUM_CONTEXT_TEXTS, numWordsPerText)));
+    nlpContext = nlpUtil.generateNLPContext(globalWordCount);
+    messageAnalysisContext = MessageAnalysisContext.newBuilder()
+        .setNlpContext(nlpContext).setTimeBucketSeconds(600)
+        .setCommonKeywordThreshold(2).setKeywordLimit(10)
+        .setMinMessagesPerConversation(2).build();
+  }
+
+  // All the getters take any non-negative index, so that callers can simply
+  // count up.
+  public List<String> getTexts(int index) {
+    return textLists.get(index % NUM_PAYLOADS);
+  }
+
+  // Segmentation result of getTexts(index).
+  public List<String> getWords(int index) {
+    return wordLists.get(index % NUM_PAYLOADS);
+  }
+
+  public String getWord(int index) {
+    List<String> words = getWords(index);
+    return words.get(index % words.size());
+  }
+
+  // One document with the raw text for each text of getTexts(index).
+  public List<Document> getDocuments(int index) {
+    return documentLists.get(index % NUM_PAYLOADS);
+  }
+
+  // Counts of the words of getWords(index), to add to the NLP context.
+  public Map<String, Long> getWordCountDeltas(int index) {
+    return wordCountDeltas.get(index % NUM_PAYLOADS);
+  }
+
+  public List<Message> getMessages(int index) {
+    return messageLists.get(index % NUM_PAYLOADS);
+  }
+
+  public Map<String, Long> getGlobalWordCount() {
+    return globalWordCount;
+  }
+
+  public NLPContext getNLPContext() {
+    return nlpContext;
+  }
+
+  public MessageAnalysisContext getMessageAnalysisContext() {
+    return messageAnalysisContext;
+  }
+
+}
@@ -0,0 +1,122 @@
+package com.neoshell.nlp.benchmark;
+
+import static org.junit.Assert.*;
+
+import io.grpc.MethodDescriptor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.neoshell.nlp.benchmark.LoadGenerator.Rpc;
+import com.neoshell.nlp.client.NLPUtilClient;
+import com.neoshell.nlp.client.SegmentedText;
+import com.neoshell.nlp.core.CancellationSignal;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.grpc.NLPUtilGrpc;
+import com.neoshell.nlp.messaging.Conversation;
+
+public class LoadGeneratorTest {
+
+  private InProcessNLPUtilServer server;
+  private NLPUtilClient client;
+  private Workload workload;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new InProcessNLPUtilServer();
+    client = server.createClient();
+    workload = new Workload(0L, 5, 10, 50);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.shutdown();
+    server.close();
+  }
+
+  @Test
+  public void endToEnd() {
+    NLPUtil nlpUtil = new NLPUtil(new StubSegmenter());
+    nlpUtil.addStopwords(SyntheticCorpus.STOP_WORDS);
+    List<String> texts = workload.getTexts(0);
+    List<String> words = nlpUtil.segment(texts);
+    assertEquals(words, client.segment(texts));
+    List<SegmentedText> segmentedTexts = client.segmentOffsets(texts, true);
+    assertEquals(nlpUtil.segment(texts.get(0)),
+        segmentedTexts.get(0).getWords());
+    assertEquals(nlpUtil.removeStopWords(words),
+        client.removeStopWords(words));
+    assertTrue(client.isStopWord(SyntheticCorpus.STOP_WORDS.get(0)));
+    assertEquals(SyntheticCorpus.STOP_WORDS.size(), client.reloadStopWords());
+    assertEquals(nlpUtil.countWords(texts, false, 10),
+        client.countWords(texts, false, 10));
+    assertEquals(
+        nlpUtil.getKeywordInfo(words, workload.getNLPContext(), 10),
+        client.getKeywordInfo(words, workload.getNLPContext(), 10));
+    assertEquals(
+        nlpUtil.getKeywordInfoBatch(workload.getDocuments(0),
+            workload.getNLPContext(), 10, null, CancellationSignal.NONE),
+        client.getKeywordInfoBatch(workload.getDocuments(0),
+            workload.getNLPContext(), 10));
+    assertEquals(
+        nlpUtil.updateNLPContext(workload.getNLPContext(),
+            workload.getWordCountDeltas(0), new ArrayList<String>()),
+        client.updateNLPContext(workload.getNLPContext(),
+            workload.getWordCountDeltas(0)));
+    List<Conversation> conversations = client.mergeMessagesAndComputeKeywords(
+        workload.getMessages(0), workload.getMessageAnalysisContext());
+    assertFalse(conversations.isEmpty());
+    List<Conversation> streamedConversations = new ArrayList<>();
+    Iterator<Conversation> iterator = client
+        .mergeMessagesAndComputeKeywordsStream(workload.getMessages(0),
+            workload.getMessageAnalysisContext(), false);
+    while (iterator.hasNext()) {
+      streamedConversations.add(iterator.next());
+    }
+    assertEquals(conversations, streamedConversations);
+  }
+
+  @Test
+  public void run() throws Exception {
+    int concurrency = 4;
+    LoadReport report = new LoadGenerator(client, workload,
+        LoadGeneratorMain.getDefaultMix(), concurrency).run(100L, 1000L);
+    for (Rpc rpc : Rpc.values()) {
+      assertTrue(rpc.getMethodName(), report.getCalls(rpc) > 0);
+      assertEquals(rpc.getMethodName(), 0L, report.getErrors(rpc));
+    }
+    assertTrue(report.getElapsedSeconds() >= 1.0);
+    // A call is finished on the server after the client gets its result.
+    long deadlineNanos = System.nanoTime() + 5000000000L;
+    while (server.getMetrics().getInFlight() > 0
+        && System.nanoTime() < deadlineNanos) {
+      Thread.sleep(10L);
+    }
+    assertEquals(0, server.getMetrics().getInFlight());
+    // The server saw the same calls plus the warm-up.
+    assertTrue(server.getMetrics()
+        .getRpcMetrics(MethodDescriptor
+            .generateFullMethodName(NLPUtilGrpc.SERVICE_NAME, "Segment"))
+        .getCount() >= report.getCalls(Rpc.SEGMENT));
+  }
+
+  @Test
+  public void parseMix() {
+    assertEquals(2, LoadGeneratorMain.parseMix("Segment:4, getKeywordInfo:1")
+        .size());
+    assertEquals(Integer.valueOf(3),
+        LoadGeneratorMain.parseMix("MergeMessagesAndComputeKeywordsStream:3")
+            .get(Rpc.MERGE_MESSAGES_AND_COMPUTE_KEYWORDS_STREAM));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parseMixUnknownRpc() {
+    LoadGeneratorMain.parseMix("Foo:1");
+  }
+
+}
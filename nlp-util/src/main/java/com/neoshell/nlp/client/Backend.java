@@ -0,0 +1,102 @@
+package com.neoshell.nlp.client;
+
+import io.grpc.ManagedChannel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.neoshell.nlp.grpc.MessageAnalysisUtilGrpc;
+import com.neoshell.nlp.grpc.NLPUtilAdminGrpc;
+import com.neoshell.nlp.grpc.NLPUtilGrpc;
+
+// One of the servers NLPUtilClient talks to. Tracks the number of calls in
+// flight and whether the server is ejected after failures.
+class Backend {
+
+  // Ejection time doubles with each consecutive failure, up to the max.
+  private static final long BASE_EJECTION_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long MAX_EJECTION_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private final String name;
+  private final ManagedChannel channel;
+  private final NLPUtilGrpc.NLPUtilBlockingStub nlpUtilBlockingStub;
+  private final MessageAnalysisUtilGrpc.MessageAnalysisUtilBlockingStub messageAnalysisUtilBlockingStub;
+  private final NLPUtilAdminGrpc.NLPUtilAdminBlockingStub nlpUtilAdminBlockingStub;
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private int consecutiveFailures;
+  private volatile long ejectedUntilNanos;
+  private volatile boolean isEjected;
+
+  // The name places the backend on the hash ring.
+  Backend(String name, ManagedChannel channel) {
+    this.name = name;
+    this.channel = channel;
+    nlpUtilBlockingStub = NLPUtilGrpc.newBlockingStub(channel);
+    messageAnalysisUtilBlockingStub = MessageAnalysisUtilGrpc
+        .newBlockingStub(channel);
+    nlpUtilAdminBlockingStub = NLPUtilAdminGrpc.newBlockingStub(channel);
+  }
+
+  String getName() {
+    return name;
+  }
+
+  ManagedChannel getChannel() {
+    return channel;
+  }
+
+  NLPUtilGrpc.NLPUtilBlockingStub getNLPUtilStub() {
+    return nlpUtilBlockingStub;
+  }
+
+  MessageAnalysisUtilGrpc.MessageAnalysisUtilBlockingStub getMessageAnalysisUtilStub() {
+    return messageAnalysisUtilBlockingStub;
+  }
+
+  NLPUtilAdminGrpc.NLPUtilAdminBlockingStub getNLPUtilAdminStub() {
+    return nlpUtilAdminBlockingStub;
+  }
+
+  int getOutstanding() {
+    return outstanding.get();
+  }
+
+  void onStart() {
+    outstanding.incrementAndGet();
+  }
+
+  void onFinish() {
+    outstanding.decrementAndGet();
+  }
+
+  // An ejected backend gets calls again once the ejection time is over. The
+  // next failure ejects it for longer.
+  boolean isHealthy(long nowNanos) {
+    return !isEjected || nowNanos - ejectedUntilNanos >= 0;
+  }
+
+  void onSuccess() {
+    // Called after every call, so only lock after failures.
+    if (isEjected) {
+      synchronized (this) {
+        consecutiveFailures = 0;
+        isEjected = false;
+      }
+    }
+  }
+
+  synchronized void onFailure(long nowNanos) {
+    // 2^5 seconds is already over the max.
+    long ejectionNanos = BASE_EJECTION_NANOS << Math.min(consecutiveFailures,
+        5);
+    consecutiveFailures++;
+    ejectedUntilNanos = nowNanos + Math.min(ejectionNanos, MAX_EJECTION_NANOS);
+    isEjected = true;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+}
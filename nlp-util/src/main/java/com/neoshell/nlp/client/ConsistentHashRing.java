@@ -0,0 +1,62 @@
+package com.neoshell.nlp.client;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.neoshell.nlp.core.Hashing;
+
+// Maps keys to backends, so that the same key always goes to the same backend
+// and adding or removing a backend only moves the keys of that backend. Each
+// backend is placed at a number of points on the ring, and a key belongs to
+// the first point at or after its hash.
+class ConsistentHashRing {
+
+  private static final int POINTS_PER_BACKEND = 160;
+
+  private final long[] points;
+  private final Backend[] owners;
+
+  ConsistentHashRing(List<Backend> backends) {
+    int numPoints = backends.size() * POINTS_PER_BACKEND;
+    long[][] entries = new long[numPoints][];
+    int n = 0;
+    for (int i = 0; i < backends.size(); i++) {
+      // Points only depend on the name, so that they are the same in all the
+      // clients whatever the order of the backends.
+      String name = backends.get(i).getName();
+      for (int j = 0; j < POINTS_PER_BACKEND; j++) {
+        entries[n++] = new long[] { Hashing.hash64(name + "#" + j), i };
+      }
+    }
+    Arrays.sort(entries, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] o1, long[] o2) {
+        return Long.compare(o1[0], o2[0]);
+      }
+    });
+    points = new long[numPoints];
+    owners = new Backend[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      points[i] = entries[i][0];
+      owners[i] = backends.get((int) entries[i][1]);
+    }
+  }
+
+  // Returns the first healthy backend from the point of the key on. If all
+  // the backends are ejected, returns the owner of the key anyway.
+  Backend get(String key, long nowNanos) {
+    int start = Arrays.binarySearch(points, Hashing.hash64(key));
+    if (start < 0) {
+      start = -start - 1;
+    }
+    for (int i = 0; i < points.length; i++) {
+      Backend backend = owners[(start + i) % points.length];
+      if (backend.isHealthy(nowNanos)) {
+        return backend;
+      }
+    }
+    return owners[start % points.length];
+  }
+
+}
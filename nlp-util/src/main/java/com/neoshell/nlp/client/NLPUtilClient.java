@@ -2,112 +2,649 @@ package com.neoshell.nlp.client;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.netty.NettyChannelBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
+import com.google.protobuf.ByteString;
+import com.neoshell.nlp.core.ApproximateCountOptions;
+import com.neoshell.nlp.core.Document;
 import com.neoshell.nlp.core.NLPContext;
 import com.neoshell.nlp.core.WordInfo;
+import com.neoshell.nlp.grpc.CountWordShardReply;
+import com.neoshell.nlp.grpc.CountWordShardRequest;
 import com.neoshell.nlp.grpc.CountWordsReply;
 import com.neoshell.nlp.grpc.CountWordsRequest;
+import com.neoshell.nlp.grpc.DocumentKeywordInfo;
 import com.neoshell.nlp.grpc.GenerateNLPContextReply;
 import com.neoshell.nlp.grpc.GenerateNLPContextRequest;
+import com.neoshell.nlp.grpc.GetKeywordInfoBatchReply;
+import com.neoshell.nlp.grpc.GetKeywordInfoBatchRequest;
 import com.neoshell.nlp.grpc.GetKeywordInfoReply;
 import com.neoshell.nlp.grpc.GetKeywordInfoRequest;
 import com.neoshell.nlp.grpc.IsStopWordReply;
 import com.neoshell.nlp.grpc.IsStopWordRequest;
 import com.neoshell.nlp.grpc.MergeMessagesAndComputeKeywordsReply;
 import com.neoshell.nlp.grpc.MergeMessagesAndComputeKeywordsRequest;
-import com.neoshell.nlp.grpc.MessageAnalysisUtilGrpc;
-import com.neoshell.nlp.grpc.NLPUtilGrpc;
+import com.neoshell.nlp.grpc.MergeMessagesAndComputeKeywordsStreamReply;
+import com.neoshell.nlp.grpc.ReloadStopWordsReply;
+import com.neoshell.nlp.grpc.ReloadStopWordsRequest;
 import com.neoshell.nlp.grpc.RemoveStopWordsReply;
 import com.neoshell.nlp.grpc.RemoveStopWordsRequest;
+import com.neoshell.nlp.grpc.SegmentOffsetsReply;
+import com.neoshell.nlp.grpc.SegmentOffsetsRequest;
 import com.neoshell.nlp.grpc.SegmentReply;
 import com.neoshell.nlp.grpc.SegmentRequest;
+import com.neoshell.nlp.grpc.TextSegmentation;
+import com.neoshell.nlp.grpc.UpdateNLPContextReply;
+import com.neoshell.nlp.grpc.UpdateNLPContextRequest;
 import com.neoshell.nlp.messaging.Conversation;
 import com.neoshell.nlp.messaging.Message;
 import com.neoshell.nlp.messaging.MessageAnalysisContext;
 
+// Client of one or more NLPUtilServers. With several servers:
+// - Segmentation calls are routed by a consistent hash of each text, so that
+//   the same text always goes to the same server.
+// - Other calls go to the server with the fewest calls in flight.
+// - A server that is UNAVAILABLE is ejected for a while, and the call is
+//   retried on another server.
 public class NLPUtilClient {
 
-  private final ManagedChannel channel;
-  private final NLPUtilGrpc.NLPUtilBlockingStub nlpUtilBlockingStub;
-  private final MessageAnalysisUtilGrpc.MessageAnalysisUtilBlockingStub messageAnalysisUtilBlockingStub;
+  private static final String UNIX_SOCKET_PREFIX = "unix:";
+
+  // Created on first use of a Unix socket, and shared by all the channels.
+  private static class UnixSocketEventLoop {
+    static final EventLoopGroup GROUP = new EpollEventLoopGroup(0,
+        new DefaultThreadFactory("nlp-util-client-unix", true));
+  }
+
+  private final List<Backend> backends;
+  private final ConsistentHashRing ring;
+  // Runs the calls of the texts owned by different servers in parallel. Null
+  // with a single server.
+  private final ExecutorService executor;
 
   public NLPUtilClient(String host, int port) {
-    this(ManagedChannelBuilder.forAddress(host, port).usePlaintext(true)
-        .build());
+    this(createChannel(host, port));
+  }
+
+  // Connects to a server on the same host through its Unix domain socket
+  // (UnixSocketPath in its config). Linux only.
+  public NLPUtilClient(File unixSocketFile) {
+    this(createUnixSocketChannel(unixSocketFile));
+  }
+
+  // Each address is host:port, or unix:<path> for a Unix domain socket.
+  public NLPUtilClient(List<String> addresses) {
+    this(createChannels(addresses));
   }
 
-  NLPUtilClient(ManagedChannel channel) {
-    this.channel = channel;
-    nlpUtilBlockingStub = NLPUtilGrpc.newBlockingStub(channel);
-    messageAnalysisUtilBlockingStub = MessageAnalysisUtilGrpc
-        .newBlockingStub(channel);
+  public NLPUtilClient(ManagedChannel... channels) {
+    if (channels.length == 0) {
+      throw new IllegalArgumentException("No server");
+    }
+    List<Backend> backends = new ArrayList<>(channels.length);
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < channels.length; i++) {
+      // Channels to the same authority, e.g. in-process ones, need distinct
+      // names to get distinct places on the hash ring.
+      String name = channels[i].authority();
+      if (!names.add(name)) {
+        name = name + "#" + i;
+        names.add(name);
+      }
+      backends.add(new Backend(name, channels[i]));
+    }
+    this.backends = Collections.unmodifiableList(backends);
+    ring = new ConsistentHashRing(backends);
+    executor = backends.size() > 1
+        ? Executors.newCachedThreadPool(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "nlp-util-client");
+            thread.setDaemon(true);
+            return thread;
+          }
+        }) : null;
   }
 
   public void shutdown() throws InterruptedException {
-    channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    if (executor != null) {
+      executor.shutdown();
+    }
+    for (Backend backend : backends) {
+      backend.getChannel().shutdown();
+    }
+    for (Backend backend : backends) {
+      backend.getChannel().awaitTermination(5, TimeUnit.SECONDS);
+    }
   }
 
   public NLPContext generateNLPContext(Map<String, Long> globalWordCount)
       throws StatusRuntimeException {
-    GenerateNLPContextRequest request = GenerateNLPContextRequest.newBuilder()
-        .putAllGlobalWordCount(globalWordCount).build();
-    GenerateNLPContextReply reply = nlpUtilBlockingStub
-        .generateNLPContext(request);
+    final GenerateNLPContextRequest request = GenerateNLPContextRequest
+        .newBuilder().putAllGlobalWordCount(globalWordCount).build();
+    GenerateNLPContextReply reply = callLeastOutstanding(
+        new Call<GenerateNLPContextReply>() {
+          @Override
+          public GenerateNLPContextReply call(Backend backend) {
+            return backend.getNLPUtilStub().generateNLPContext(request);
+          }
+        });
+    return reply.getNlpContext();
+  }
+
+  // Adds the deltas to the word counts of the context. See
+  // NLPUtil.updateNLPContext().
+  public NLPContext updateNLPContext(NLPContext context,
+      Map<String, Long> wordCountDeltas) throws StatusRuntimeException {
+    final UpdateNLPContextRequest request = UpdateNLPContextRequest
+        .newBuilder().setNlpContext(context)
+        .putAllWordCountDelta(wordCountDeltas).build();
+    UpdateNLPContextReply reply = callLeastOutstanding(
+        new Call<UpdateNLPContextReply>() {
+          @Override
+          public UpdateNLPContextReply call(Backend backend) {
+            return backend.getNLPUtilStub().updateNLPContext(request);
+          }
+        });
     return reply.getNlpContext();
   }
 
   public List<String> segment(List<String> textList)
       throws StatusRuntimeException {
-    SegmentRequest request = SegmentRequest.newBuilder().addAllText(textList)
-        .build();
-    SegmentReply reply = nlpUtilBlockingStub.segment(request);
-    return reply.getWordList();
+    final SegmentRequest request = SegmentRequest.newBuilder()
+        .addAllText(textList).build();
+    Backend owner = getOwner(textList);
+    if (owner != null) {
+      try {
+        SegmentReply reply = invoke(owner, new Call<SegmentReply>() {
+          @Override
+          public SegmentReply call(Backend backend) {
+            return backend.getNLPUtilStub().segment(request);
+          }
+        });
+        return reply.getWordList();
+      } catch (StatusRuntimeException e) {
+        if (!isBackendFailure(e) || backends.size() == 1) {
+          throw e;
+        }
+        // The owner is ejected now. Route the texts again.
+      }
+    }
+    // The words of each text are needed to put them back in order.
+    List<String> words = new ArrayList<>();
+    for (SegmentedText segmentedText : segmentOnOwners(textList, false)) {
+      words.addAll(segmentedText.getWords());
+    }
+    return words;
+  }
+
+  // Same as segment() but the words are not sent over the wire. They are
+  // materialized from the input texts only when asked for.
+  public List<SegmentedText> segmentOffsets(List<String> textList,
+      boolean includeWordIds) throws StatusRuntimeException {
+    return segmentOnOwners(textList, includeWordIds);
   }
 
   public boolean isStopWord(String word) throws StatusRuntimeException {
-    IsStopWordRequest request = IsStopWordRequest.newBuilder().setWord(word)
-        .build();
-    IsStopWordReply reply = nlpUtilBlockingStub.isStopWord(request);
+    final IsStopWordRequest request = IsStopWordRequest.newBuilder()
+        .setWord(word).build();
+    IsStopWordReply reply = callLeastOutstanding(new Call<IsStopWordReply>() {
+      @Override
+      public IsStopWordReply call(Backend backend) {
+        return backend.getNLPUtilStub().isStopWord(request);
+      }
+    });
     return reply.getIsStopWord();
   }
 
   public List<String> removeStopWords(List<String> words)
       throws StatusRuntimeException {
-    RemoveStopWordsRequest request = RemoveStopWordsRequest.newBuilder()
+    final RemoveStopWordsRequest request = RemoveStopWordsRequest.newBuilder()
         .addAllWord(words).build();
-    RemoveStopWordsReply reply = nlpUtilBlockingStub.removeStopWords(request);
+    RemoveStopWordsReply reply = callLeastOutstanding(
+        new Call<RemoveStopWordsReply>() {
+          @Override
+          public RemoveStopWordsReply call(Backend backend) {
+            return backend.getNLPUtilStub().removeStopWords(request);
+          }
+        });
     return reply.getWordList();
   }
 
+  // Same as removeStopWords(), for UTF-8 encoded words, which the server
+  // checks without decoding them.
+  public List<ByteString> removeStopWordsUtf8(List<ByteString> words)
+      throws StatusRuntimeException {
+    final RemoveStopWordsRequest request = RemoveStopWordsRequest.newBuilder()
+        .addAllWordUtf8(words).build();
+    RemoveStopWordsReply reply = callLeastOutstanding(
+        new Call<RemoveStopWordsReply>() {
+          @Override
+          public RemoveStopWordsReply call(Backend backend) {
+            return backend.getNLPUtilStub().removeStopWords(request);
+          }
+        });
+    return reply.getWordUtf8List();
+  }
+
   public List<WordInfo> countWords(List<String> texts, boolean countStopWords,
       int limit) {
-    CountWordsRequest request = CountWordsRequest.newBuilder().addAllText(texts)
-        .setCountStopWords(countStopWords).setLimit(limit).build();
-    CountWordsReply reply = nlpUtilBlockingStub.countWords(request);
+    return countWords(CountWordsRequest.newBuilder().addAllText(texts)
+        .setCountStopWords(countStopWords).setLimit(limit).build());
+  }
+
+  // Counts the top limit words approximately, with bounded memory on the
+  // server.
+  public List<WordInfo> countWords(List<String> texts, boolean countStopWords,
+      int limit, ApproximateCountOptions options) {
+    return countWords(CountWordsRequest.newBuilder().addAllText(texts)
+        .setCountStopWords(countStopWords).setLimit(limit)
+        .setApproximate(options).build());
+  }
+
+  private List<WordInfo> countWords(final CountWordsRequest request) {
+    CountWordsReply reply = callLeastOutstanding(new Call<CountWordsReply>() {
+      @Override
+      public CountWordsReply call(Backend backend) {
+        return backend.getNLPUtilStub().countWords(request);
+      }
+    });
+    return reply.getWordCountList();
+  }
+
+  // Returns the counts of all the words sorted by word. Feed them to a
+  // WordCountShardWriter to count a corpus too big for a single call.
+  public List<WordInfo> countWordShard(List<String> texts,
+      boolean countStopWords) throws StatusRuntimeException {
+    final CountWordShardRequest request = CountWordShardRequest.newBuilder()
+        .addAllText(texts).setCountStopWords(countStopWords).build();
+    CountWordShardReply reply = callLeastOutstanding(
+        new Call<CountWordShardReply>() {
+          @Override
+          public CountWordShardReply call(Backend backend) {
+            return backend.getNLPUtilStub().countWordShard(request);
+          }
+        });
     return reply.getWordCountList();
   }
 
   public List<WordInfo> getKeywordInfo(List<String> words, NLPContext context,
       int limit) throws StatusRuntimeException {
-    GetKeywordInfoRequest request = GetKeywordInfoRequest.newBuilder()
+    final GetKeywordInfoRequest request = GetKeywordInfoRequest.newBuilder()
         .addAllWord(words).setNlpContext(context).setLimit(limit).build();
-    GetKeywordInfoReply reply = nlpUtilBlockingStub.getKeywordInfo(request);
+    GetKeywordInfoReply reply = callLeastOutstanding(
+        new Call<GetKeywordInfoReply>() {
+          @Override
+          public GetKeywordInfoReply call(Backend backend) {
+            return backend.getNLPUtilStub().getKeywordInfo(request);
+          }
+        });
     return reply.getKeywordInfoList();
   }
 
+  // Keywords of each document, in the same order.
+  public List<List<WordInfo>> getKeywordInfoBatch(List<Document> documents,
+      NLPContext context, int limit) throws StatusRuntimeException {
+    final GetKeywordInfoBatchRequest request = GetKeywordInfoBatchRequest
+        .newBuilder().addAllDocument(documents).setNlpContext(context)
+        .setLimit(limit).build();
+    GetKeywordInfoBatchReply reply = callLeastOutstanding(
+        new Call<GetKeywordInfoBatchReply>() {
+          @Override
+          public GetKeywordInfoBatchReply call(Backend backend) {
+            return backend.getNLPUtilStub().getKeywordInfoBatch(request);
+          }
+        });
+    List<List<WordInfo>> keywordInfoLists = new ArrayList<>();
+    for (DocumentKeywordInfo document : reply.getDocumentList()) {
+      keywordInfoLists.add(document.getKeywordInfoList());
+    }
+    return keywordInfoLists;
+  }
+
   public List<Conversation> mergeMessagesAndComputeKeywords(
       List<Message> messages, MessageAnalysisContext context)
           throws StatusRuntimeException {
-    MergeMessagesAndComputeKeywordsRequest request = MergeMessagesAndComputeKeywordsRequest
+    final MergeMessagesAndComputeKeywordsRequest request = MergeMessagesAndComputeKeywordsRequest
         .newBuilder().addAllMessage(messages).setContext(context).build();
-    MergeMessagesAndComputeKeywordsReply reply = messageAnalysisUtilBlockingStub
-        .mergeMessagesAndComputeKeywords(request);
+    MergeMessagesAndComputeKeywordsReply reply = callLeastOutstanding(
+        new Call<MergeMessagesAndComputeKeywordsReply>() {
+          @Override
+          public MergeMessagesAndComputeKeywordsReply call(Backend backend) {
+            return backend.getMessageAnalysisUtilStub()
+                .mergeMessagesAndComputeKeywords(request);
+          }
+        });
     return reply.getConversationList();
   }
 
+  // Same as mergeMessagesAndComputeKeywords(), but the conversations are
+  // streamed, so that the result is not limited by the max message size. If
+  // summaryOnly is true, conversations have message ids instead of messages.
+  // Only the call is retried on another server. Errors after the first
+  // conversation are thrown by the iterator.
+  public Iterator<Conversation> mergeMessagesAndComputeKeywordsStream(
+      List<Message> messages, MessageAnalysisContext context,
+      boolean summaryOnly) throws StatusRuntimeException {
+    final MergeMessagesAndComputeKeywordsRequest request = MergeMessagesAndComputeKeywordsRequest
+        .newBuilder().addAllMessage(messages).setContext(context)
+        .setSummaryOnly(summaryOnly).build();
+    final Iterator<MergeMessagesAndComputeKeywordsStreamReply> replies = callLeastOutstanding(
+        new Call<Iterator<MergeMessagesAndComputeKeywordsStreamReply>>() {
+          @Override
+          public Iterator<MergeMessagesAndComputeKeywordsStreamReply> call(
+              Backend backend) {
+            Iterator<MergeMessagesAndComputeKeywordsStreamReply> replies = backend
+                .getMessageAnalysisUtilStub()
+                .mergeMessagesAndComputeKeywordsStream(request);
+            // Waits for the first conversation, so that failing to reach the
+            // server can be retried.
+            replies.hasNext();
+            return replies;
+          }
+        });
+    return new Iterator<Conversation>() {
+      @Override
+      public boolean hasNext() {
+        return replies.hasNext();
+      }
+
+      @Override
+      public Conversation next() {
+        return replies.next().getConversation();
+      }
+    };
+  }
+
+  // Reloads the stop words on all the servers. Returns the smallest number of
+  // stop words after reloading. Servers normally share the same stop word
+  // files.
+  public int reloadStopWords() throws StatusRuntimeException {
+    int numStopWords = Integer.MAX_VALUE;
+    StatusRuntimeException error = null;
+    for (Backend backend : backends) {
+      try {
+        ReloadStopWordsReply reply = invoke(backend,
+            new Call<ReloadStopWordsReply>() {
+              @Override
+              public ReloadStopWordsReply call(Backend backend) {
+                return backend.getNLPUtilAdminStub().reloadStopWords(
+                    ReloadStopWordsRequest.getDefaultInstance());
+              }
+            });
+        numStopWords = Math.min(numStopWords, reply.getNumStopWords());
+      } catch (StatusRuntimeException e) {
+        // Still reload the other servers.
+        if (error == null) {
+          error = e;
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    return numStopWords;
+  }
+
+  private interface Call<T> {
+    T call(Backend backend);
+  }
+
+  private <T> T invoke(Backend backend, Call<T> call) {
+    backend.onStart();
+    try {
+      T result = call.call(backend);
+      backend.onSuccess();
+      return result;
+    } catch (StatusRuntimeException e) {
+      if (isBackendFailure(e)) {
+        backend.onFailure(System.nanoTime());
+      }
+      throw e;
+    } finally {
+      backend.onFinish();
+    }
+  }
+
+  // Tries each server at most once.
+  private <T> T callLeastOutstanding(Call<T> call) {
+    List<Backend> tried = new ArrayList<>();
+    while (true) {
+      Backend backend = getLeastOutstanding(tried);
+      try {
+        return invoke(backend, call);
+      } catch (StatusRuntimeException e) {
+        tried.add(backend);
+        if (!isBackendFailure(e) || tried.size() == backends.size()) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  // Healthy servers come first. Ties are broken at random.
+  private Backend getLeastOutstanding(List<Backend> excluded) {
+    long nowNanos = System.nanoTime();
+    int start = ThreadLocalRandom.current().nextInt(backends.size());
+    Backend best = null;
+    boolean isBestHealthy = false;
+    for (int i = 0; i < backends.size(); i++) {
+      Backend backend = backends.get((start + i) % backends.size());
+      if (excluded.contains(backend)) {
+        continue;
+      }
+      boolean isHealthy = backend.isHealthy(nowNanos);
+      if (best == null || (isHealthy && !isBestHealthy)
+          || (isHealthy == isBestHealthy
+              && backend.getOutstanding() < best.getOutstanding())) {
+        best = backend;
+        isBestHealthy = isHealthy;
+      }
+    }
+    return best;
+  }
+
+  // Returns the server owning all the texts, or null if they are owned by
+  // different servers.
+  private Backend getOwner(List<String> texts) {
+    if (texts.isEmpty()) {
+      return getLeastOutstanding(Collections.<Backend> emptyList());
+    }
+    long nowNanos = System.nanoTime();
+    Backend owner = ring.get(texts.get(0), nowNanos);
+    for (int i = 1; i < texts.size(); i++) {
+      if (ring.get(texts.get(i), nowNanos) != owner) {
+        return null;
+      }
+    }
+    return owner;
+  }
+
+  // Sends each text to its owner. Texts of an ejected server are routed again
+  // to the next server on the ring.
+  private List<SegmentedText> segmentOnOwners(List<String> texts,
+      final boolean includeWordIds) {
+    SegmentedText[] result = new SegmentedText[texts.size()];
+    // Word ids of the replies are mapped to a single vocabulary.
+    List<String> vocabulary = new ArrayList<>();
+    Map<String, Integer> wordIds = new HashMap<>();
+    List<Integer> pending = new ArrayList<>(texts.size());
+    for (int i = 0; i < texts.size(); i++) {
+      pending.add(i);
+    }
+    StatusRuntimeException lastError = null;
+    for (int attempt = 0; !pending.isEmpty(); attempt++) {
+      if (attempt == backends.size()) {
+        throw lastError;
+      }
+      long nowNanos = System.nanoTime();
+      Map<Backend, List<Integer>> groups = new LinkedHashMap<>();
+      for (int index : pending) {
+        Backend owner = ring.get(texts.get(index), nowNanos);
+        List<Integer> group = groups.get(owner);
+        if (group == null) {
+          group = new ArrayList<>();
+          groups.put(owner, group);
+        }
+        group.add(index);
+      }
+      Map<Backend, Call<SegmentOffsetsReply>> calls = new HashMap<>();
+      for (Map.Entry<Backend, List<Integer>> group : groups.entrySet()) {
+        SegmentOffsetsRequest.Builder requestBuilder = SegmentOffsetsRequest
+            .newBuilder().setIncludeWordIds(includeWordIds);
+        for (int index : group.getValue()) {
+          requestBuilder.addText(texts.get(index));
+        }
+        final SegmentOffsetsRequest request = requestBuilder.build();
+        calls.put(group.getKey(), new Call<SegmentOffsetsReply>() {
+          @Override
+          public SegmentOffsetsReply call(Backend backend) {
+            return backend.getNLPUtilStub().segmentOffsets(request);
+          }
+        });
+      }
+      Map<Backend, Future<SegmentOffsetsReply>> futures = new HashMap<>();
+      if (groups.size() > 1) {
+        for (final Map.Entry<Backend, Call<SegmentOffsetsReply>> entry : calls
+            .entrySet()) {
+          futures.put(entry.getKey(),
+              executor.submit(new Callable<SegmentOffsetsReply>() {
+                @Override
+                public SegmentOffsetsReply call() {
+                  return invoke(entry.getKey(), entry.getValue());
+                }
+              }));
+        }
+      }
+      pending = new ArrayList<>();
+      for (Map.Entry<Backend, List<Integer>> group : groups.entrySet()) {
+        Backend backend = group.getKey();
+        List<Integer> indices = group.getValue();
+        SegmentOffsetsReply reply;
+        try {
+          reply = futures.isEmpty() ? invoke(backend, calls.get(backend))
+              : getResult(futures.get(backend));
+        } catch (StatusRuntimeException e) {
+          if (!isBackendFailure(e)) {
+            throw e;
+          }
+          lastError = e;
+          pending.addAll(indices);
+          continue;
+        }
+        for (int i = 0; i < indices.size(); i++) {
+          TextSegmentation segmentation = reply.getSegmentation(i);
+          if (includeWordIds) {
+            segmentation = mapWordIds(segmentation, reply.getVocabularyList(),
+                vocabulary, wordIds);
+          }
+          int index = indices.get(i);
+          result[index] = new SegmentedText(texts.get(index), segmentation,
+              vocabulary);
+        }
+      }
+    }
+    return Arrays.asList(result);
+  }
+
+  private static TextSegmentation mapWordIds(TextSegmentation segmentation,
+      List<String> replyVocabulary, List<String> vocabulary,
+      Map<String, Integer> wordIds) {
+    TextSegmentation.Builder builder = segmentation.toBuilder().clearWordId();
+    for (int replyWordId : segmentation.getWordIdList()) {
+      String word = replyVocabulary.get(replyWordId);
+      Integer wordId = wordIds.get(word);
+      if (wordId == null) {
+        wordId = vocabulary.size();
+        wordIds.put(word, wordId);
+        vocabulary.add(word);
+      }
+      builder.addWordId(wordId);
+    }
+    return builder.build();
+  }
+
+  private static <T> T getResult(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Status.CANCELLED.withCause(e).asRuntimeException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw Status.UNKNOWN.withCause(e.getCause()).asRuntimeException();
+    }
+  }
+
+  // The server can't take calls, e.g. it is down or still loading models.
+  private static boolean isBackendFailure(StatusRuntimeException e) {
+    return e.getStatus().getCode() == Status.Code.UNAVAILABLE;
+  }
+
+  private static ManagedChannel createChannel(String host, int port) {
+    return ManagedChannelBuilder.forAddress(host, port).usePlaintext(true)
+        .build();
+  }
+
+  private static ManagedChannel createUnixSocketChannel(File socketFile) {
+    if (!Epoll.isAvailable()) {
+      throw new IllegalStateException("Unix sockets need Netty epoll",
+          Epoll.unavailabilityCause());
+    }
+    return NettyChannelBuilder.forAddress(new DomainSocketAddress(socketFile))
+        .channelType(EpollDomainSocketChannel.class)
+        .eventLoopGroup(UnixSocketEventLoop.GROUP).usePlaintext(true)
+        .build();
+  }
+
+  private static ManagedChannel[] createChannels(List<String> addresses) {
+    ManagedChannel[] channels = new ManagedChannel[addresses.size()];
+    for (int i = 0; i < addresses.size(); i++) {
+      String address = addresses.get(i);
+      if (address.startsWith(UNIX_SOCKET_PREFIX)) {
+        channels[i] = createUnixSocketChannel(
+            new File(address.substring(UNIX_SOCKET_PREFIX.length())));
+        continue;
+      }
+      int colon = address.lastIndexOf(':');
+      if (colon < 0) {
+        throw new IllegalArgumentException("Not host:port: " + address);
+      }
+      channels[i] = createChannel(address.substring(0, colon),
+          Integer.parseInt(address.substring(colon + 1)));
+    }
+    return channels;
+  }
+
 }
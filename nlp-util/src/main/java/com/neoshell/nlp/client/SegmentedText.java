@@ -0,0 +1,78 @@
+package com.neoshell.nlp.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.neoshell.nlp.grpc.TextSegmentation;
+
+// Segmentation result of a single text as returned by SegmentOffsets. Words
+// are only materialized when they are asked for.
+public class SegmentedText {
+
+  private final String text;
+  private final TextSegmentation segmentation;
+  private final List<String> vocabulary;
+
+  SegmentedText(String text, TextSegmentation segmentation,
+      List<String> vocabulary) {
+    this.text = text;
+    this.segmentation = segmentation;
+    this.vocabulary = vocabulary;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public int getNumWords() {
+    if (hasOffsets()) {
+      return segmentation.getOffsetCount() / 2;
+    }
+    return segmentation.getWordCount();
+  }
+
+  public boolean hasOffsets() {
+    return segmentation.getWordCount() == 0;
+  }
+
+  // Returns -1 if the words can't be mapped back to the text.
+  public int getWordBegin(int index) {
+    return hasOffsets() ? segmentation.getOffset(index * 2) : -1;
+  }
+
+  // Returns -1 if the words can't be mapped back to the text.
+  public int getWordEnd(int index) {
+    return hasOffsets() ? segmentation.getOffset(index * 2 + 1) : -1;
+  }
+
+  public boolean hasWordIds() {
+    return segmentation.getWordIdCount() > 0;
+  }
+
+  // Returns -1 if word ids were not requested.
+  public int getWordId(int index) {
+    return hasWordIds() ? segmentation.getWordId(index) : -1;
+  }
+
+  public String getWord(int index) {
+    if (hasWordIds()) {
+      // Shared by all the occurrences of the word.
+      return vocabulary.get(segmentation.getWordId(index));
+    }
+    if (hasOffsets()) {
+      return text.substring(segmentation.getOffset(index * 2),
+          segmentation.getOffset(index * 2 + 1));
+    }
+    return segmentation.getWord(index);
+  }
+
+  public List<String> getWords() {
+    int numWords = getNumWords();
+    List<String> words = new ArrayList<>(numWords);
+    for (int i = 0; i < numWords; i++) {
+      words.add(getWord(i));
+    }
+    return words;
+  }
+
+}
@@ -0,0 +1,134 @@
+package com.neoshell.nlp.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Finds the most frequent words of a stream in bounded memory. All the words
+// are counted in a CountMinSketch, and the numTrackedWords words with the
+// highest estimates are kept as candidates. A new word replaces the candidate
+// with the lowest estimate once it has a higher one. Not thread safe.
+public class ApproximateWordCounter {
+
+  private static final double DEFAULT_MAX_ERROR = 0.0001;
+  private static final double DEFAULT_ERROR_PROBABILITY = 0.01;
+  private static final int TRACKED_WORDS_PER_RESULT = 10;
+  private static final int MIN_NUM_TRACKED_WORDS = 1000;
+
+  private static class Candidate {
+    final String word;
+    final long count;
+
+    Candidate(String word, long count) {
+      this.word = word;
+      this.count = count;
+    }
+  }
+
+  private final CountMinSketch sketch;
+  private final int numTrackedWords;
+  // Estimate of each candidate when it was last counted.
+  private final Map<String, Long> candidates;
+  // One entry per candidate, ordered by count. An entry is stale if the
+  // candidate was counted since it was queued. Stale entries are only updated
+  // when they reach the head, so that counting a candidate is cheap.
+  private final PriorityQueue<Candidate> queue;
+
+  public ApproximateWordCounter(double maxError, double errorProbability,
+      int numTrackedWords) {
+    if (numTrackedWords <= 0) {
+      throw new IllegalArgumentException(
+          "numTrackedWords must be positive: " + numTrackedWords);
+    }
+    this.sketch = new CountMinSketch(maxError, errorProbability);
+    this.numTrackedWords = numTrackedWords;
+    this.candidates = new HashMap<>();
+    this.queue = new PriorityQueue<>(numTrackedWords,
+        new Comparator<Candidate>() {
+          @Override
+          public int compare(Candidate o1, Candidate o2) {
+            return Long.compare(o1.count, o2.count);
+          }
+        });
+  }
+
+  // Fills in the defaults of the options for the top limit words.
+  public static ApproximateWordCounter create(ApproximateCountOptions options,
+      int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive: " + limit);
+    }
+    double maxError = options.getMaxError() > 0.0 ? options.getMaxError()
+        : DEFAULT_MAX_ERROR;
+    double errorProbability = options.getErrorProbability() > 0.0
+        ? options.getErrorProbability() : DEFAULT_ERROR_PROBABILITY;
+    int numTrackedWords = options.getNumTrackedWords() > 0
+        ? options.getNumTrackedWords()
+        : Math.max(limit * TRACKED_WORDS_PER_RESULT, MIN_NUM_TRACKED_WORDS);
+    return new ApproximateWordCounter(maxError, errorProbability,
+        numTrackedWords);
+  }
+
+  public void add(String word) {
+    long estimate = sketch.add(word, 1L);
+    if (candidates.containsKey(word)) {
+      candidates.put(word, estimate);
+      return;
+    }
+    if (candidates.size() < numTrackedWords) {
+      candidates.put(word, estimate);
+      queue.add(new Candidate(word, estimate));
+      return;
+    }
+    Candidate min = pollMin();
+    if (estimate > min.count) {
+      candidates.remove(min.word);
+      candidates.put(word, estimate);
+      queue.add(new Candidate(word, estimate));
+    } else {
+      queue.add(min);
+    }
+  }
+
+  // Sorted by count in descending order and then by word. Empty if
+  // limit <= 0, like NLPUtil.countWords().
+  public List<WordInfo> getTopWords(int limit) {
+    if (limit <= 0) {
+      return new ArrayList<>();
+    }
+    List<WordInfo> wordCountList = new ArrayList<>(candidates.size());
+    for (String word : candidates.keySet()) {
+      wordCountList.add(WordInfo.newBuilder().setWord(word)
+          .setCount(sketch.estimate(word)).build());
+    }
+    Collections.sort(wordCountList, new Comparator<WordInfo>() {
+      @Override
+      public int compare(WordInfo arg0, WordInfo arg1) {
+        int result = Long.compare(arg1.getCount(), arg0.getCount());
+        return result != 0 ? result
+            : arg0.getWord().compareTo(arg1.getWord());
+      }
+    });
+    if (limit < wordCountList.size()) {
+      return wordCountList.subList(0, limit);
+    }
+    return wordCountList;
+  }
+
+  // Removes the candidate with the lowest current count from the queue.
+  private Candidate pollMin() {
+    while (true) {
+      Candidate head = queue.poll();
+      long count = candidates.get(head.word);
+      if (count == head.count) {
+        return head;
+      }
+      queue.add(new Candidate(head.word, count));
+    }
+  }
+
+}
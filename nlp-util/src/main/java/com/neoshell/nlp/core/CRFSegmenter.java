@@ -0,0 +1,36 @@
+package com.neoshell.nlp.core;
+
+import java.util.List;
+import java.util.Properties;
+
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+
+// Segmenter backed by Stanford Word Segmenter.
+public class CRFSegmenter implements Segmenter {
+
+  private CRFClassifier<CoreLabel> classifier;
+
+  public CRFSegmenter(CRFClassifier<CoreLabel> classifier) {
+    this.classifier = classifier;
+  }
+
+  // Loads the Chinese Penn Treebank model of the Stanford Word Segmenter
+  // from its data dir.
+  public static CRFSegmenter load(String segmenterDir) {
+    Properties props = new Properties();
+    props.setProperty("sighanCorporaDict", segmenterDir);
+    props.setProperty("serDictionary", segmenterDir + "/dict-chris6.ser.gz");
+    props.setProperty("inputEncoding", "UTF-8");
+    props.setProperty("sighanPostProcessing", "true");
+    CRFClassifier<CoreLabel> classifier = new CRFClassifier<>(props);
+    classifier.loadClassifierNoExceptions(segmenterDir + "/ctb.gz", props);
+    return new CRFSegmenter(classifier);
+  }
+
+  @Override
+  public List<String> segment(String text) {
+    return classifier.segmentString(text);
+  }
+
+}
@@ -0,0 +1,17 @@
+package com.neoshell.nlp.core;
+
+// Tells long-running work that its result is no longer needed, e.g. because
+// the client went away or the deadline passed. Work checks it between units
+// of work and throws CancelledException. Implementations must be thread safe.
+public interface CancellationSignal {
+
+  CancellationSignal NONE = new CancellationSignal() {
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+  };
+
+  boolean isCancelled();
+
+}
@@ -0,0 +1,18 @@
+package com.neoshell.nlp.core;
+
+// Thrown when work stops early because its CancellationSignal was cancelled.
+public class CancelledException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public CancelledException() {
+    super("Cancelled");
+  }
+
+  public static void throwIfCancelled(CancellationSignal signal) {
+    if (signal.isCancelled()) {
+      throw new CancelledException();
+    }
+  }
+
+}
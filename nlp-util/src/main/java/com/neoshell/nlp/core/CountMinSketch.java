@@ -0,0 +1,71 @@
+package com.neoshell.nlp.core;
+
+// Approximate counts of words in fixed memory. A word is counted in one cell
+// of each row, and its estimate is the smallest of its cells. With
+// width = e / maxError and depth = ln(1 / errorProbability), an estimate
+// exceeds the true count by more than maxError * (sum of all counts) with
+// probability at most errorProbability. Estimates are never too low.
+public class CountMinSketch {
+
+  // Smaller errors take too much memory.
+  private static final double MIN_MAX_ERROR = 1e-6;
+
+  private final int width;
+  private final int depth;
+  private final long[][] cells;
+
+  public CountMinSketch(double maxError, double errorProbability) {
+    if (maxError < MIN_MAX_ERROR || maxError >= 1.0) {
+      throw new IllegalArgumentException("maxError must be in ["
+          + MIN_MAX_ERROR + ", 1): " + maxError);
+    }
+    if (errorProbability <= 0.0 || errorProbability >= 1.0) {
+      throw new IllegalArgumentException(
+          "errorProbability must be in (0, 1): " + errorProbability);
+    }
+    width = (int) Math.ceil(Math.E / maxError);
+    depth = (int) Math.ceil(Math.log(1.0 / errorProbability));
+    cells = new long[depth][width];
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  // Returns the new estimate of the word.
+  public long add(String word, long count) {
+    long hash = Hashing.hash64(word);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+    long estimate = Long.MAX_VALUE;
+    for (int i = 0; i < depth; i++) {
+      long[] row = cells[i];
+      int column = getColumn(hash1, hash2, i);
+      row[column] += count;
+      estimate = Math.min(estimate, row[column]);
+    }
+    return estimate;
+  }
+
+  public long estimate(String word) {
+    long hash = Hashing.hash64(word);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+    long estimate = Long.MAX_VALUE;
+    for (int i = 0; i < depth; i++) {
+      estimate = Math.min(estimate, cells[i][getColumn(hash1, hash2, i)]);
+    }
+    return estimate;
+  }
+
+  // The columns of the rows are derived from 2 hashes, which is as good as
+  // independent hashes (Kirsch and Mitzenmacher).
+  private int getColumn(int hash1, int hash2, int row) {
+    return ((hash1 + row * hash2) & Integer.MAX_VALUE) % width;
+  }
+
+}
@@ -0,0 +1,214 @@
+package com.neoshell.nlp.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+
+// Global word counts that decay exponentially over time, so that words which
+// were frequent but are not anymore, e.g. of a topic that stopped trending,
+// become rare again without regenerating an NLPContext. Counts are only
+// decayed when they are accessed. Time is given by the callers in seconds,
+// e.g. message timestamps, and may go backwards a little. At most maxWords
+// words are kept. Beyond that, the words with the lowest decayed counts are
+// evicted. Thread safe. Each addition, of a word or of all the keywords of a
+// conversation, is atomic, and the count of a word is always read together
+// with the total as of the same additions. A caller looking up many words
+// while others add, e.g. concurrent MessageAnalysisUtil calls, may still see
+// additions made between its lookups, so its scores depend on the timing of
+// the other callers.
+public class DecayedWordStats implements WordFrequencyModel {
+
+  // Words are evicted down to this fraction of maxWords at once, so that
+  // evicting is amortized over many additions.
+  private static final double EVICTION_TARGET = 0.9;
+  // Words decayed below this count are treated as unknown.
+  private static final double MIN_COUNT = 0.01;
+
+  // A count as of timestamp. Immutable.
+  private static class DecayedCount {
+    final double count;
+    final long timestamp;
+
+    DecayedCount(double count, long timestamp) {
+      this.count = count;
+      this.timestamp = timestamp;
+    }
+  }
+
+  private final double decayRate;
+  private final int maxWords;
+  private final ConcurrentHashMap<String, DecayedCount> counts;
+  // Decayed count of all the words added, evicted ones included, as of the
+  // latest timestamp added.
+  private volatile DecayedCount total;
+  // Held for writing while the counts and the total are updated, so that
+  // readers validate that they didn't read in the middle of an addition.
+  private final StampedLock lock;
+  private final Object evictionLock;
+
+  // A count is halved every halfLifeSeconds.
+  public DecayedWordStats(double halfLifeSeconds, int maxWords) {
+    if (!(halfLifeSeconds > 0.0)) {
+      throw new IllegalArgumentException(
+          "halfLifeSeconds must be positive: " + halfLifeSeconds);
+    }
+    if (maxWords <= 0) {
+      throw new IllegalArgumentException(
+          "maxWords must be positive: " + maxWords);
+    }
+    this.decayRate = Math.log(2.0) / halfLifeSeconds;
+    this.maxWords = maxWords;
+    this.counts = new ConcurrentHashMap<>();
+    this.total = new DecayedCount(0.0, Long.MIN_VALUE);
+    this.lock = new StampedLock();
+    this.evictionLock = new Object();
+  }
+
+  public void add(String word, long count, long timestampSeconds) {
+    long stamp = lock.writeLock();
+    try {
+      addWord(word, count, timestampSeconds);
+      total = add(total, count, timestampSeconds);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    evictIfFull();
+  }
+
+  // Adds the counts of all the keywords, e.g. of a conversation.
+  public void add(KeywordList keywords, Vocabulary vocabulary,
+      long timestampSeconds) {
+    long stamp = lock.writeLock();
+    try {
+      long numWords = 0L;
+      for (int i = 0; i < keywords.size(); i++) {
+        addWord(vocabulary.getWord(keywords.getWordId(i)),
+            keywords.getCount(i), timestampSeconds);
+        numWords += keywords.getCount(i);
+      }
+      total = add(total, numWords, timestampSeconds);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    evictIfFull();
+  }
+
+  // Decayed count of the word as of the latest timestamp added.
+  public double getCount(String word) {
+    DecayedCount[] countAndTotal = read(word);
+    return countAndTotal[0] != null
+        ? decay(countAndTotal[0], countAndTotal[1].timestamp) : 0.0;
+  }
+
+  public int getNumWords() {
+    return counts.size();
+  }
+
+  @Override
+  public double getNumAllWords() {
+    return total.count;
+  }
+
+  // Same as NLPUtil.getFrequencyScore(), with decayed counts.
+  @Override
+  public double getFrequencyScore(String word) {
+    DecayedCount[] countAndTotal = read(word);
+    DecayedCount count = countAndTotal[0];
+    if (count == null) {
+      return Double.NaN;
+    }
+    DecayedCount total = countAndTotal[1];
+    double decayedCount = decay(count, total.timestamp);
+    return decayedCount >= MIN_COUNT ? Math.log(total.count / decayedCount)
+        : Double.NaN;
+  }
+
+  // The count of the word, null if unknown, and the total, as of the same
+  // additions.
+  private DecayedCount[] read(String word) {
+    long stamp = lock.tryOptimisticRead();
+    DecayedCount[] countAndTotal = { counts.get(word), total };
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        countAndTotal[0] = counts.get(word);
+        countAndTotal[1] = total;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return countAndTotal;
+  }
+
+  private void addWord(String word, final long count,
+      final long timestampSeconds) {
+    counts.compute(word,
+        new BiFunction<String, DecayedCount, DecayedCount>() {
+          @Override
+          public DecayedCount apply(String key, DecayedCount oldCount) {
+            return add(oldCount, count, timestampSeconds);
+          }
+        });
+  }
+
+  // Keeps the later timestamp of the two, so that counts only decay forward.
+  private DecayedCount add(DecayedCount oldCount, long count,
+      long timestampSeconds) {
+    if (oldCount == null) {
+      return new DecayedCount(count, timestampSeconds);
+    }
+    if (timestampSeconds >= oldCount.timestamp) {
+      return new DecayedCount(decay(oldCount, timestampSeconds) + count,
+          timestampSeconds);
+    }
+    double decayedCount = count * Math
+        .exp(-decayRate * ((double) oldCount.timestamp - timestampSeconds));
+    return new DecayedCount(oldCount.count + decayedCount,
+        oldCount.timestamp);
+  }
+
+  // The count as of the given time.
+  private double decay(DecayedCount count, long timestampSeconds) {
+    if (timestampSeconds <= count.timestamp) {
+      return count.count;
+    }
+    return count.count * Math
+        .exp(-decayRate * ((double) timestampSeconds - count.timestamp));
+  }
+
+  private void evictIfFull() {
+    if (counts.size() <= maxWords) {
+      return;
+    }
+    synchronized (evictionLock) {
+      int size = counts.size();
+      if (size <= maxWords) {
+        return;
+      }
+      int targetSize = (int) (maxWords * EVICTION_TARGET);
+      long timestamp = total.timestamp;
+      double[] decayedCounts = new double[size];
+      int i = 0;
+      for (DecayedCount count : counts.values()) {
+        if (i == size) {
+          break;
+        }
+        decayedCounts[i++] = decay(count, timestamp);
+      }
+      Arrays.sort(decayedCounts, 0, i);
+      double threshold = decayedCounts[Math.min(Math.max(i - targetSize, 0),
+          i - 1)];
+      for (Map.Entry<String, DecayedCount> entry : counts.entrySet()) {
+        double decayedCount = decay(entry.getValue(), timestamp);
+        if (decayedCount < threshold || (decayedCount == threshold
+            && counts.size() > targetSize)) {
+          // Not removed if it was counted again in the meantime.
+          counts.remove(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+  }
+
+}
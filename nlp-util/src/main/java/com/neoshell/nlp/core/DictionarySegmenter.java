@@ -0,0 +1,130 @@
+package com.neoshell.nlp.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Segmenter matching the words of a dictionary, much faster but less accurate
+// than the CRF model. Texts are segmented by forward and backward maximum
+// matching, and the result with fewer words, then fewer single char words, is
+// kept, preferring backward matching. Chars not starting any word are words by
+// themselves and whitespace is skipped. Meant for Chinese text only.
+public class DictionarySegmenter implements Segmenter {
+
+  private final DoubleArrayTrie trie;
+  // Built from the reversed words, for backward matching.
+  private final DoubleArrayTrie reversedTrie;
+
+  public DictionarySegmenter(Collection<String> words) {
+    List<String> reversedWords = new ArrayList<>(words.size());
+    for (String word : words) {
+      // Char by char, since text is read backward char by char too.
+      char[] chars = new char[word.length()];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = word.charAt(chars.length - 1 - i);
+      }
+      reversedWords.add(new String(chars));
+    }
+    trie = new DoubleArrayTrie(words);
+    reversedTrie = new DoubleArrayTrie(reversedWords);
+  }
+
+  // Reads a UTF-8 file with one word per line. Anything after the first
+  // whitespace of a line, e.g. a frequency, is ignored.
+  public static DictionarySegmenter load(File file) throws IOException {
+    List<String> words = new ArrayList<>();
+    BufferedReader br = new BufferedReader(new InputStreamReader(
+        new FileInputStream(file), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        String[] fields = line.trim().split("\\s+", 2);
+        if (!fields[0].isEmpty()) {
+          words.add(fields[0]);
+        }
+      }
+    } finally {
+      br.close();
+    }
+    return new DictionarySegmenter(words);
+  }
+
+  public int getNumWords() {
+    return trie.getNumWords();
+  }
+
+  @Override
+  public List<String> segment(String text) {
+    List<String> words = new ArrayList<>();
+    int length = text.length();
+    int position = 0;
+    while (position < length) {
+      while (position < length
+          && Character.isWhitespace(text.charAt(position))) {
+        position++;
+      }
+      int begin = position;
+      while (position < length
+          && !Character.isWhitespace(text.charAt(position))) {
+        position++;
+      }
+      if (begin < position) {
+        segmentRun(text, begin, position, words);
+      }
+    }
+    return words;
+  }
+
+  // Segments text[begin, end), which has no whitespace.
+  private void segmentRun(String text, int begin, int end,
+      List<String> words) {
+    // Word ends of forward matching, and word begins of backward matching in
+    // reverse order.
+    List<Integer> forwardEnds = new ArrayList<>();
+    int numForwardSingleChars = 0;
+    for (int position = begin; position < end;) {
+      int wordLength = Math.max(trie.getLongestMatch(text, position, end), 1);
+      if (wordLength == 1) {
+        numForwardSingleChars++;
+      }
+      position += wordLength;
+      forwardEnds.add(position);
+    }
+    List<Integer> backwardBegins = new ArrayList<>();
+    int numBackwardSingleChars = 0;
+    for (int position = end; position > begin;) {
+      int wordLength = Math.max(
+          reversedTrie.getLongestMatchBackward(text, begin, position), 1);
+      if (wordLength == 1) {
+        numBackwardSingleChars++;
+      }
+      position -= wordLength;
+      backwardBegins.add(position);
+    }
+    if (forwardEnds.size() < backwardBegins.size()
+        || (forwardEnds.size() == backwardBegins.size()
+            && numForwardSingleChars < numBackwardSingleChars)) {
+      int wordBegin = begin;
+      for (int wordEnd : forwardEnds) {
+        words.add(text.substring(wordBegin, wordEnd));
+        wordBegin = wordEnd;
+      }
+    } else {
+      int wordEnd = end;
+      int firstWord = words.size();
+      for (int wordBegin : backwardBegins) {
+        words.add(text.substring(wordBegin, wordEnd));
+        wordEnd = wordBegin;
+      }
+      Collections.reverse(words.subList(firstWord, words.size()));
+    }
+  }
+
+}
@@ -0,0 +1,191 @@
+package com.neoshell.nlp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+// Immutable set of words for fast prefix matching, stored in 2 int arrays.
+// The child of node s for char c is t = base[s] + c + 1 if check[t] == s + 1.
+// Code 0 marks the end of a word. Thread safe.
+public class DoubleArrayTrie {
+
+  private static final int END_OF_WORD = 0;
+
+  private static class Sibling {
+    final int code;
+    // Range of words under this node, sorted.
+    final int left;
+    final int right;
+
+    Sibling(int code, int left, int right) {
+      this.code = code;
+      this.left = left;
+      this.right = right;
+    }
+  }
+
+  private int[] base;
+  private int[] check;
+  private final int numWords;
+  // Only used while building.
+  private List<String> words;
+  private int size;
+  private int nextCheckPosition;
+
+  public DoubleArrayTrie(Collection<String> words) {
+    this.words = new ArrayList<>(new TreeSet<>(words));
+    this.words.remove("");
+    numWords = this.words.size();
+    base = new int[1024];
+    check = new int[1024];
+    size = 1;
+    nextCheckPosition = 1;
+    if (numWords > 0) {
+      int rootBase = insert(0, fetch(0, numWords, 0), 0);
+      base[0] = rootBase;
+    }
+    base = Arrays.copyOf(base, size);
+    check = Arrays.copyOf(check, size);
+    this.words = null;
+  }
+
+  public int getNumWords() {
+    return numWords;
+  }
+
+  // Number of array slots, 2 ints each.
+  public int getSize() {
+    return size;
+  }
+
+  public boolean contains(String word) {
+    int node = 0;
+    for (int i = 0; i < word.length(); i++) {
+      node = getChild(node, word.charAt(i) + 1);
+      if (node < 0) {
+        return false;
+      }
+    }
+    return !word.isEmpty() && getChild(node, END_OF_WORD) >= 0;
+  }
+
+  // Length of the longest word that text[begin, end) starts with, or 0.
+  public int getLongestMatch(String text, int begin, int end) {
+    int node = 0;
+    int length = 0;
+    for (int i = begin; i < end; i++) {
+      node = getChild(node, text.charAt(i) + 1);
+      if (node < 0) {
+        break;
+      }
+      if (getChild(node, END_OF_WORD) >= 0) {
+        length = i - begin + 1;
+      }
+    }
+    return length;
+  }
+
+  // Same as getLongestMatch(), but reading text[begin, end) from the end. The
+  // trie must be built from reversed words.
+  public int getLongestMatchBackward(String text, int begin, int end) {
+    int node = 0;
+    int length = 0;
+    for (int i = end - 1; i >= begin; i--) {
+      node = getChild(node, text.charAt(i) + 1);
+      if (node < 0) {
+        break;
+      }
+      if (getChild(node, END_OF_WORD) >= 0) {
+        length = end - i;
+      }
+    }
+    return length;
+  }
+
+  private int getChild(int node, int code) {
+    int child = base[node] + code;
+    return child < check.length && check[child] == node + 1 ? child : -1;
+  }
+
+  // Children of the node of words[left, right), which share their first depth
+  // chars. A shorter word comes first, so END_OF_WORD is the first code.
+  private List<Sibling> fetch(int left, int right, int depth) {
+    List<Sibling> siblings = new ArrayList<>();
+    int previousCode = -1;
+    for (int i = left; i < right; i++) {
+      String word = words.get(i);
+      int code = word.length() == depth ? END_OF_WORD
+          : word.charAt(depth) + 1;
+      if (code != previousCode) {
+        if (!siblings.isEmpty()) {
+          Sibling last = siblings.remove(siblings.size() - 1);
+          siblings.add(new Sibling(last.code, last.left, i));
+        }
+        siblings.add(new Sibling(code, i, right));
+        previousCode = code;
+      }
+    }
+    return siblings;
+  }
+
+  // Finds a base for the children of the node, claims their slots, then
+  // inserts their own children. Returns the base.
+  private int insert(int node, List<Sibling> siblings, int depth) {
+    int firstCode = siblings.get(0).code;
+    int lastCode = siblings.get(siblings.size() - 1).code;
+    // begin = position - firstCode must be positive.
+    int position = Math.max(nextCheckPosition, firstCode + 1);
+    boolean isDense = position == nextCheckPosition;
+    int begin;
+    while (true) {
+      ensureCapacity(position + 1);
+      if (check[position] != 0) {
+        position++;
+        continue;
+      }
+      if (isDense) {
+        // All the slots before it are used.
+        nextCheckPosition = position;
+        isDense = false;
+      }
+      begin = position - firstCode;
+      ensureCapacity(begin + lastCode + 1);
+      boolean isFree = true;
+      for (Sibling sibling : siblings) {
+        if (check[begin + sibling.code] != 0) {
+          isFree = false;
+          break;
+        }
+      }
+      if (isFree) {
+        break;
+      }
+      position++;
+    }
+    for (Sibling sibling : siblings) {
+      check[begin + sibling.code] = node + 1;
+    }
+    size = Math.max(size, begin + lastCode + 1);
+    for (Sibling sibling : siblings) {
+      if (sibling.code != END_OF_WORD) {
+        int child = begin + sibling.code;
+        // Not assigned directly, since insert() may replace the arrays.
+        int childBase = insert(child,
+            fetch(sibling.left, sibling.right, depth + 1), depth + 1);
+        base[child] = childBase;
+      }
+    }
+    return begin;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > base.length) {
+      int newLength = Math.max(capacity, base.length * 2);
+      base = Arrays.copyOf(base, newLength);
+      check = Arrays.copyOf(check, newLength);
+    }
+  }
+
+}
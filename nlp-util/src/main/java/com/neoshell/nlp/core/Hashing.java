@@ -0,0 +1,25 @@
+package com.neoshell.nlp.core;
+
+// Fast non-cryptographic hashing of strings.
+public final class Hashing {
+
+  private Hashing() {
+  }
+
+  // 64-bit FNV-1a followed by the MurmurHash3 finalizer, which spreads
+  // similar strings over all the bits.
+  public static long hash64(String s) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      h ^= s.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+}
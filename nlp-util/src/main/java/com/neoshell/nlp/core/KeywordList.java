@@ -0,0 +1,155 @@
+package com.neoshell.nlp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Keywords as word ids of a Vocabulary with their counts and scores, sorted
+// by score in descending order and then by word. Immutable.
+public class KeywordList {
+
+  public static final KeywordList EMPTY = new KeywordList(new int[0],
+      new long[0], new double[0]);
+
+  private final int[] wordIds;
+  private final long[] counts;
+  private final double[] scores;
+
+  private KeywordList(int[] wordIds, long[] counts, double[] scores) {
+    this.wordIds = wordIds;
+    this.counts = counts;
+    this.scores = scores;
+  }
+
+  // Keeps the order of the list.
+  public static KeywordList fromWordInfoList(List<WordInfo> keywords,
+      Vocabulary vocabulary) {
+    int size = keywords.size();
+    int[] wordIds = new int[size];
+    long[] counts = new long[size];
+    double[] scores = new double[size];
+    for (int i = 0; i < size; i++) {
+      WordInfo keyword = keywords.get(i);
+      wordIds[i] = vocabulary.add(keyword.getWord());
+      counts[i] = keyword.getCount();
+      scores[i] = keyword.getScore();
+    }
+    return new KeywordList(wordIds, counts, scores);
+  }
+
+  // Sorts the first size entries of the arrays by score in descending order,
+  // and ties by word, so that the order doesn't depend on the order the words
+  // were added in.
+  static KeywordList sort(final int[] wordIds, final long[] counts,
+      final double[] scores, final int size, final Vocabulary vocabulary) {
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        int result = Double.compare(scores[o2], scores[o1]);
+        return result != 0 ? result
+            : vocabulary.getWord(wordIds[o1])
+                .compareTo(vocabulary.getWord(wordIds[o2]));
+      }
+    });
+    int[] sortedWordIds = new int[size];
+    long[] sortedCounts = new long[size];
+    double[] sortedScores = new double[size];
+    for (int i = 0; i < size; i++) {
+      sortedWordIds[i] = wordIds[order[i]];
+      sortedCounts[i] = counts[order[i]];
+      sortedScores[i] = scores[order[i]];
+    }
+    return new KeywordList(sortedWordIds, sortedCounts, sortedScores);
+  }
+
+  public int size() {
+    return wordIds.length;
+  }
+
+  public int getWordId(int index) {
+    return wordIds[index];
+  }
+
+  public long getCount(int index) {
+    return counts[index];
+  }
+
+  public double getScore(int index) {
+    return scores[index];
+  }
+
+  // The first limit keywords, or all of them if limit <= 0.
+  public KeywordList truncate(int limit) {
+    if (limit <= 0 || limit >= wordIds.length) {
+      return this;
+    }
+    return new KeywordList(Arrays.copyOf(wordIds, limit),
+        Arrays.copyOf(counts, limit), Arrays.copyOf(scores, limit));
+  }
+
+  // Whether at least threshold keywords of other are in this list. Counts
+  // are checked after each keyword of other, so it is false if other is
+  // empty.
+  public boolean hasCommonWords(KeywordList other, int threshold,
+      Vocabulary vocabulary) {
+    vocabulary.clearScratch();
+    for (int wordId : wordIds) {
+      vocabulary.setScratch(wordId, 0);
+    }
+    int count = 0;
+    for (int wordId : other.wordIds) {
+      if (vocabulary.getScratch(wordId) >= 0) {
+        count++;
+      }
+      if (count >= threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Adds up the counts and scores of the keywords in both lists and keeps
+  // the first limit keywords by score, or all of them if limit <= 0.
+  public static KeywordList merge(KeywordList keywords1,
+      KeywordList keywords2, int limit, Vocabulary vocabulary) {
+    int maxSize = keywords1.size() + keywords2.size();
+    int[] wordIds = new int[maxSize];
+    long[] counts = new long[maxSize];
+    double[] scores = new double[maxSize];
+    vocabulary.clearScratch();
+    int size = 0;
+    for (KeywordList keywords : new KeywordList[] { keywords1, keywords2 }) {
+      for (int i = 0; i < keywords.size(); i++) {
+        int wordId = keywords.wordIds[i];
+        int index = vocabulary.getScratch(wordId);
+        if (index < 0) {
+          vocabulary.setScratch(wordId, size);
+          wordIds[size] = wordId;
+          counts[size] = keywords.counts[i];
+          scores[size] = keywords.scores[i];
+          size++;
+        } else {
+          counts[index] += keywords.counts[i];
+          scores[index] += keywords.scores[i];
+        }
+      }
+    }
+    return sort(wordIds, counts, scores, size, vocabulary).truncate(limit);
+  }
+
+  public List<WordInfo> toWordInfoList(Vocabulary vocabulary) {
+    List<WordInfo> keywords = new ArrayList<>(wordIds.length);
+    for (int i = 0; i < wordIds.length; i++) {
+      keywords.add(WordInfo.newBuilder()
+          .setWord(vocabulary.getWord(wordIds[i])).setCount(counts[i])
+          .setScore(scores[i]).build());
+    }
+    return keywords;
+  }
+
+}
@@ -0,0 +1,105 @@
+package com.neoshell.nlp.core;
+
+import java.util.Arrays;
+
+// The keywords of a KeywordList as a sparse vector of their scores (TF-IDF
+// when scored against an NLP context) by word id, normalized to unit length,
+// so that the dot product of two vectors is their cosine similarity. Ids are
+// sorted, so that the dot product is a single pass over primitive arrays.
+// Immutable.
+public class KeywordVector {
+
+  public static final KeywordVector EMPTY = new KeywordVector(new int[0],
+      new double[0]);
+
+  // Beyond this size ratio, the ids of the smaller vector are searched in the
+  // larger one instead of walking both.
+  private static final int SEARCH_SIZE_RATIO = 16;
+
+  private final int[] wordIds;
+  private final double[] weights;
+
+  private KeywordVector(int[] wordIds, double[] weights) {
+    this.wordIds = wordIds;
+    this.weights = weights;
+  }
+
+  // EMPTY if all the scores are 0.
+  public static KeywordVector fromKeywords(KeywordList keywords) {
+    int size = keywords.size();
+    // Id in the high bits, index in the low bits, so that sorting the keys
+    // sorts the indexes by id.
+    long[] keys = new long[size];
+    double sumOfSquares = 0.0;
+    for (int i = 0; i < size; i++) {
+      keys[i] = ((long) keywords.getWordId(i) << 32) | i;
+      sumOfSquares += keywords.getScore(i) * keywords.getScore(i);
+    }
+    if (!(sumOfSquares > 0.0)) {
+      return EMPTY;
+    }
+    Arrays.sort(keys);
+    double norm = Math.sqrt(sumOfSquares);
+    int[] wordIds = new int[size];
+    double[] weights = new double[size];
+    for (int i = 0; i < size; i++) {
+      int index = (int) keys[i];
+      wordIds[i] = (int) (keys[i] >>> 32);
+      weights[i] = keywords.getScore(index) / norm;
+    }
+    return new KeywordVector(wordIds, weights);
+  }
+
+  public int size() {
+    return wordIds.length;
+  }
+
+  // Cosine similarity of the keyword scores of both lists. 0 if they have no
+  // keyword in common.
+  public double dot(KeywordVector other) {
+    if (wordIds.length > other.wordIds.length) {
+      return other.dot(this);
+    }
+    if (wordIds.length * SEARCH_SIZE_RATIO < other.wordIds.length) {
+      return searchDot(other);
+    }
+    int[] otherWordIds = other.wordIds;
+    double[] otherWeights = other.weights;
+    double dot = 0.0;
+    int i = 0;
+    int j = 0;
+    while (i < wordIds.length && j < otherWordIds.length) {
+      int wordId = wordIds[i];
+      int otherWordId = otherWordIds[j];
+      if (wordId == otherWordId) {
+        dot += weights[i++] * otherWeights[j++];
+      } else if (wordId < otherWordId) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return dot;
+  }
+
+  // Same as dot(), for another vector much larger than this one.
+  private double searchDot(KeywordVector other) {
+    double dot = 0.0;
+    int from = 0;
+    for (int i = 0; i < wordIds.length; i++) {
+      int j = Arrays.binarySearch(other.wordIds, from, other.wordIds.length,
+          wordIds[i]);
+      if (j >= 0) {
+        dot += weights[i] * other.weights[j];
+        from = j + 1;
+      } else {
+        from = -j - 1;
+      }
+      if (from == other.wordIds.length) {
+        break;
+      }
+    }
+    return dot;
+  }
+
+}
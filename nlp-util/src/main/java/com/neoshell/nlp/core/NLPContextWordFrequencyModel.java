@@ -0,0 +1,24 @@
+package com.neoshell.nlp.core;
+
+// The global word stats of an NLPContext.
+public class NLPContextWordFrequencyModel implements WordFrequencyModel {
+
+  private final NLPContext context;
+
+  public NLPContextWordFrequencyModel(NLPContext context) {
+    this.context = context;
+  }
+
+  @Override
+  public double getNumAllWords() {
+    return context.getNumAllWords();
+  }
+
+  @Override
+  public double getFrequencyScore(String word) {
+    WordInfo globalWordStats = context.getGlobalWordStatsOrDefault(word, null);
+    return globalWordStats != null
+        ? NLPUtil.getFrequencyScore(context, globalWordStats) : Double.NaN;
+  }
+
+}
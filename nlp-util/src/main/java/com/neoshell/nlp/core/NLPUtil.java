@@ -1,14 +1,20 @@
 package com.neoshell.nlp.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.protobuf.ByteString;
 import com.neoshell.nlp.core.NLPContext.Builder;
 
 import edu.stanford.nlp.ie.crf.CRFClassifier;
@@ -16,116 +22,444 @@ import edu.stanford.nlp.ling.CoreLabel;
 
 public class NLPUtil {
 
-  private CRFClassifier<CoreLabel> segmenter;
-  private HashSet<String> stopwords;
+  // Documents of a batch handed to a thread at once.
+  private static final int BATCH_CHUNK_SIZE = 64;
+  // By count in descending order, and ties by word.
+  private static final Comparator<WordInfo> BY_COUNT =
+      new Comparator<WordInfo>() {
+        @Override
+        public int compare(WordInfo arg0, WordInfo arg1) {
+          int result = Long.compare(arg1.getCount(), arg0.getCount());
+          return result != 0 ? result
+              : arg0.getWord().compareTo(arg1.getWord());
+        }
+      };
+
+  private Segmenter segmenter;
+  // Never modified once assigned. Updates swap in a new set, so that readers
+  // don't need any locking.
+  private volatile Set<String> stopwords;
+  // Always built from the current stop words.
+  private volatile Utf8StopWordMatcher stopWordMatcher;
+  private volatile long stopWordsVersion;
+  private StageRecorder stageRecorder;
 
   public NLPUtil(CRFClassifier<CoreLabel> segmenter) {
+    this(new CRFSegmenter(segmenter));
+  }
+
+  public NLPUtil(Segmenter segmenter) {
     this.segmenter = segmenter;
-    this.stopwords = new HashSet<>();
+    this.stageRecorder = StageTimings.forwardingTo(StageRecorder.NONE);
+    clearStopwords();
+  }
+
+  public void setStageRecorder(StageRecorder stageRecorder) {
+    this.stageRecorder = StageTimings.forwardingTo(stageRecorder);
+  }
+
+  public synchronized void addStopwords(Collection<String> stopwords) {
+    Set<String> newStopwords = new HashSet<>(this.stopwords);
+    newStopwords.addAll(stopwords);
+    swapStopwords(newStopwords);
+  }
+
+  // Replaces all the stop words at once.
+  public synchronized void setStopwords(Collection<String> stopwords) {
+    swapStopwords(new HashSet<>(stopwords));
+  }
+
+  public synchronized void clearStopwords() {
+    swapStopwords(Collections.<String> emptySet());
+  }
+
+  private void swapStopwords(Set<String> stopwords) {
+    Set<String> newStopwords = Collections.unmodifiableSet(stopwords);
+    stopWordMatcher = new Utf8StopWordMatcher(newStopwords);
+    this.stopwords = newStopwords;
+    stopWordsVersion++;
   }
 
-  public void addStopwords(Collection<String> stopwords) {
-    this.stopwords.addAll(stopwords);
+  public int getNumStopwords() {
+    return stopwords.size();
   }
 
-  public void clearStopwords() {
-    stopwords.clear();
+  // Changes whenever the stop words change, e.g. to invalidate results that
+  // depend on them.
+  public long getStopWordsVersion() {
+    return stopWordsVersion;
   }
 
   public List<String> segment(String text) {
-    return segmenter.segmentString(text);
+    long startNanos = System.nanoTime();
+    List<String> words = segmenter.segment(text);
+    stageRecorder.record(StageRecorder.SEGMENT, System.nanoTime() - startNanos,
+        text.length());
+    return words;
   }
 
   public List<String> segment(List<String> textList) {
+    return segment(textList, CancellationSignal.NONE);
+  }
+
+  // Throws CancelledException if the signal is cancelled before all the texts
+  // are segmented.
+  public List<String> segment(List<String> textList,
+      CancellationSignal signal) {
     List<String> words = new ArrayList<>();
     for (String text : textList) {
+      CancelledException.throwIfCancelled(signal);
       words.addAll(segment(text));
     }
     return words;
   }
 
+  // Given the segmentation result of a text, returns the begin (inclusive) and
+  // end (exclusive) offsets of each word in the text as
+  // [begin0, end0, begin1, end1, ...], or null if the words can't be mapped
+  // back to the text.
+  public static int[] getWordOffsets(String text, List<String> words) {
+    int[] offsets = new int[words.size() * 2];
+    int position = 0;
+    for (int i = 0; i < words.size(); i++) {
+      String word = words.get(i);
+      int begin = text.indexOf(word, position);
+      if (begin < 0) {
+        return null;
+      }
+      // Only whitespace is allowed to be skipped between words.
+      for (int j = position; j < begin; j++) {
+        if (!Character.isWhitespace(text.charAt(j))) {
+          return null;
+        }
+      }
+      position = begin + word.length();
+      offsets[i * 2] = begin;
+      offsets[i * 2 + 1] = position;
+    }
+    return offsets;
+  }
+
   public boolean isStopWord(String word) {
     return stopwords.contains(word.toLowerCase());
   }
 
   // It doesn't modify the input list.
   public List<String> removeStopWords(List<String> words) {
+    long startNanos = System.nanoTime();
+    // Use the same stop words for the whole list.
+    Set<String> stopwords = this.stopwords;
     List<String> result = new ArrayList<>();
     for (String word : words) {
-      if (!isStopWord(word)) {
+      if (!stopwords.contains(word.toLowerCase())) {
+        result.add(word);
+      }
+    }
+    stageRecorder.record(StageRecorder.REMOVE_STOP_WORDS,
+        System.nanoTime() - startNanos, words.size());
+    return result;
+  }
+
+  // Same as above, for word ids of the vocabulary. Each distinct word is
+  // checked once.
+  public int[] removeStopWords(int[] wordIds, Vocabulary vocabulary) {
+    long startNanos = System.nanoTime();
+    Set<String> stopwords = this.stopwords;
+    int[] result = new int[wordIds.length];
+    int size = 0;
+    for (int wordId : wordIds) {
+      if (!vocabulary.isStopWord(wordId, stopwords)) {
+        result[size++] = wordId;
+      }
+    }
+    stageRecorder.record(StageRecorder.REMOVE_STOP_WORDS,
+        System.nanoTime() - startNanos, wordIds.length);
+    return Arrays.copyOf(result, size);
+  }
+
+  // Same as above, for UTF-8 encoded words, which are not decoded. The
+  // remaining words are the same ByteString objects.
+  public List<ByteString> removeStopWordsUtf8(List<ByteString> words) {
+    long startNanos = System.nanoTime();
+    Utf8StopWordMatcher stopWordMatcher = this.stopWordMatcher;
+    byte[] buffer = new byte[64];
+    List<ByteString> result = new ArrayList<>(words.size());
+    for (ByteString word : words) {
+      if (word.size() * 2 > buffer.length) {
+        buffer = new byte[word.size() * 2];
+      }
+      if (!stopWordMatcher.isStopWord(word, buffer)) {
         result.add(word);
       }
     }
+    stageRecorder.record(StageRecorder.REMOVE_STOP_WORDS,
+        System.nanoTime() - startNanos, words.size());
     return result;
   }
 
+  // Sorted by count in descending order and then by word. Empty if
+  // limit <= 0. Words are counted by id, like in getKeywordInfo().
   public List<WordInfo> countWords(List<String> texts, boolean countStopWords,
       int limit) {
-    Map<String, Long> wordCountMap = new HashMap<>();
-    List<String> words = segment(texts);
-    if (!countStopWords) {
-      words = removeStopWords(words);
+    if (limit <= 0) {
+      return new ArrayList<>();
     }
-    for (String word : words) {
-      if (wordCountMap.containsKey(word)) {
-        wordCountMap.put(word, wordCountMap.get(word) + 1L);
-      } else {
-        wordCountMap.put(word, 1L);
+    Vocabulary vocabulary = new Vocabulary();
+    List<WordInfo> wordCountList = toWordInfoList(
+        countWordIds(texts, countStopWords, vocabulary), vocabulary);
+    Collections.sort(wordCountList, BY_COUNT);
+    if (limit < wordCountList.size()) {
+      return wordCountList.subList(0, limit);
+    }
+    return wordCountList;
+  }
+
+  // Same as countWords(), but for all the texts of a corpus, which are not
+  // segmented again. Words are counted by id, and each word of the vocabulary
+  // is checked against the stop words once.
+  public List<WordInfo> countWords(TokenizedCorpus corpus,
+      boolean countStopWords, int limit) {
+    if (limit <= 0) {
+      return new ArrayList<>();
+    }
+    int vocabularySize = corpus.getVocabularySize();
+    long[] counts = new long[vocabularySize];
+    for (int i = 0; i < corpus.getNumTexts(); i++) {
+      int length = corpus.getLength(i);
+      for (int j = 0; j < length; j++) {
+        counts[corpus.getWordId(i, j)]++;
       }
     }
     List<WordInfo> wordCountList = new ArrayList<>();
-    for (Map.Entry<String, Long> mapEntry : wordCountMap.entrySet()) {
-      wordCountList.add(WordInfo.newBuilder().setWord(mapEntry.getKey())
-          .setCount(mapEntry.getValue()).build());
+    for (int wordId = 0; wordId < vocabularySize; wordId++) {
+      String word = corpus.getWord(wordId);
+      if (counts[wordId] > 0L && (countStopWords || !isStopWord(word))) {
+        wordCountList.add(WordInfo.newBuilder().setWord(word)
+            .setCount(counts[wordId]).build());
+      }
+    }
+    Collections.sort(wordCountList, BY_COUNT);
+    if (limit < wordCountList.size()) {
+      return wordCountList.subList(0, limit);
     }
+    return wordCountList;
+  }
+
+  // Same as countWords(), but only the top limit words are counted,
+  // approximately and with bounded memory. See ApproximateCountOptions.
+  public List<WordInfo> countWords(List<String> texts, boolean countStopWords,
+      int limit, ApproximateCountOptions options) {
+    if (limit <= 0) {
+      return new ArrayList<>();
+    }
+    ApproximateWordCounter counter = ApproximateWordCounter.create(options,
+        limit);
+    // Text by text, so that the words of all the texts are never held at once.
+    for (String text : texts) {
+      List<String> words = segment(text);
+      if (!countStopWords) {
+        words = removeStopWords(words);
+      }
+      for (String word : words) {
+        counter.add(word);
+      }
+    }
+    return counter.getTopWords(limit);
+  }
+
+  // Counts all the words of the texts. The result is sorted by word, so that
+  // it can be merged with the counts of other texts by WordCountMerger.
+  public List<WordInfo> countWordShard(List<String> texts,
+      boolean countStopWords) {
+    Vocabulary vocabulary = new Vocabulary();
+    List<WordInfo> wordCountList = toWordInfoList(
+        countWordIds(texts, countStopWords, vocabulary), vocabulary);
     Collections.sort(wordCountList, new Comparator<WordInfo>() {
       @Override
       public int compare(WordInfo arg0, WordInfo arg1) {
-        return -Long.compare(arg0.getCount(), arg1.getCount());
+        return arg0.getWord().compareTo(arg1.getWord());
       }
     });
-    if (limit < wordCountList.size()) {
-      return wordCountList.subList(0, limit);
+    return wordCountList;
+  }
+
+  // Segments the texts into words of the vocabulary and returns the count of
+  // each word by id.
+  private long[] countWordIds(List<String> texts, boolean countStopWords,
+      Vocabulary vocabulary) {
+    int[] wordIds = vocabulary.addAll(segment(texts));
+    if (!countStopWords) {
+      wordIds = removeStopWords(wordIds, vocabulary);
+    }
+    long[] counts = new long[vocabulary.size()];
+    for (int wordId : wordIds) {
+      counts[wordId]++;
+    }
+    return counts;
+  }
+
+  // The words with a count, in the order of their ids.
+  private static List<WordInfo> toWordInfoList(long[] counts,
+      Vocabulary vocabulary) {
+    List<WordInfo> wordCountList = new ArrayList<>();
+    for (int wordId = 0; wordId < counts.length; wordId++) {
+      if (counts[wordId] > 0L) {
+        wordCountList.add(WordInfo.newBuilder()
+            .setWord(vocabulary.getWord(wordId)).setCount(counts[wordId])
+            .build());
+      }
     }
     return wordCountList;
   }
 
   public List<WordInfo> getKeywordInfo(List<String> words, NLPContext context,
       int limit) {
-    Map<String, Long> localWordCount = countWords(words);
-    List<WordInfo> wordInfoList = new ArrayList<>();
-    long numAllWords = context.getNumAllWords();
-    Map<String, WordInfo> globalWordStats = context.getGlobalWordStatsMap();
-    for (Map.Entry<String, Long> wordCount : localWordCount.entrySet()) {
-      String word = wordCount.getKey();
-      long count = wordCount.getValue();
+    Vocabulary vocabulary = new Vocabulary();
+    return getKeywordInfo(vocabulary.addAll(words), vocabulary, context, limit)
+        .toWordInfoList(vocabulary);
+  }
+
+  // Same as above, but scored against any word frequencies, e.g.
+  // DecayedWordStats.
+  public List<WordInfo> getKeywordInfo(List<String> words,
+      WordFrequencyModel model, int limit) {
+    Vocabulary vocabulary = new Vocabulary();
+    return getKeywordInfo(vocabulary.addAll(words), vocabulary, model, limit)
+        .toWordInfoList(vocabulary);
+  }
+
+  // Same as above, for word ids of the vocabulary.
+  public KeywordList getKeywordInfo(int[] wordIds, Vocabulary vocabulary,
+      NLPContext context, int limit) {
+    return getKeywordInfo(wordIds, vocabulary,
+        new NLPContextWordFrequencyModel(context), limit);
+  }
+
+  public KeywordList getKeywordInfo(int[] wordIds, Vocabulary vocabulary,
+      WordFrequencyModel model, int limit) {
+    long startNanos = System.nanoTime();
+    // Count the words in order of first occurrence.
+    int[] distinctWordIds = new int[wordIds.length];
+    long[] counts = new long[wordIds.length];
+    int size = 0;
+    vocabulary.clearScratch();
+    for (int wordId : wordIds) {
+      int index = vocabulary.getScratch(wordId);
+      if (index < 0) {
+        vocabulary.setScratch(wordId, size);
+        distinctWordIds[size] = wordId;
+        counts[size] = 1L;
+        size++;
+      } else {
+        counts[index]++;
+      }
+    }
+    double[] scores = new double[size];
+    double numAllWords = model.getNumAllWords();
+    for (int i = 0; i < size; i++) {
+      long count = counts[i];
       double score = count;
       if (numAllWords > 0) {
-        double frequencyScore = globalWordStats.containsKey(word)
-            ? globalWordStats.get(word).getScore()
-            : Math.log((double) numAllWords / count);
+        double frequencyScore = vocabulary
+            .getFrequencyScore(distinctWordIds[i], model);
+        if (Double.isNaN(frequencyScore)) {
+          frequencyScore = Math.log(numAllWords / count);
+        }
         score = count * frequencyScore;
       }
-      wordInfoList.add(WordInfo.newBuilder().setWord(word).setCount(count)
-          .setScore(score).build());
+      scores[i] = score;
     }
+    KeywordList keywords = KeywordList.sort(distinctWordIds, counts, scores,
+        size, vocabulary);
+    stageRecorder.record(StageRecorder.GET_KEYWORD_INFO,
+        System.nanoTime() - startNanos, wordIds.length);
+    return keywords.truncate(limit);
+  }
 
-    // Sort by score in descending order.
-    Collections.sort(wordInfoList, new Comparator<WordInfo>() {
+  // Same as getKeywordInfo() for each document, all scored against the same
+  // context. Documents are split into chunks, which are processed by the
+  // calling thread and by the threads of executor if it is not null. The
+  // result is in the order of the documents. Throws CancelledException if
+  // the signal is cancelled before all the documents are done.
+  public List<List<WordInfo>> getKeywordInfoBatch(
+      final List<Document> documents, NLPContext context, final int limit,
+      ExecutorService executor, final CancellationSignal signal) {
+    final WordFrequencyModel model = new NLPContextWordFrequencyModel(
+        context);
+    final int numChunks = (documents.size() + BATCH_CHUNK_SIZE - 1)
+        / BATCH_CHUNK_SIZE;
+    final AtomicInteger nextChunk = new AtomicInteger();
+    final List<List<WordInfo>> result = new ArrayList<>(
+        Collections.<List<WordInfo>> nCopies(documents.size(), null));
+    Runnable task = new Runnable() {
       @Override
-      public int compare(WordInfo o1, WordInfo o2) {
-        Double score1 = o1.getScore();
-        Double srore2 = o2.getScore();
-        return srore2.compareTo(score1);
+      public void run() {
+        getKeywordInfoChunks(documents, model, limit, signal, nextChunk,
+            numChunks, result);
+      }
+    };
+    List<Future<?>> futures = new ArrayList<>();
+    try {
+      if (executor != null) {
+        for (int i = 1; i < numChunks; i++) {
+          futures.add(executor.submit(task));
+        }
+      }
+      task.run();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancelledException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      // Running tasks stop after their current chunk.
+      nextChunk.set(numChunks);
+      for (Future<?> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return result;
+  }
+
+  // Takes chunks of documents until there is none left. The vocabulary is
+  // shared by all the documents of a thread, so that each distinct word is
+  // scored once.
+  private void getKeywordInfoChunks(List<Document> documents,
+      WordFrequencyModel model, int limit, CancellationSignal signal,
+      AtomicInteger nextChunk, int numChunks, List<List<WordInfo>> result) {
+    Vocabulary vocabulary = new Vocabulary();
+    int chunk;
+    while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
+      int end = Math.min((chunk + 1) * BATCH_CHUNK_SIZE, documents.size());
+      for (int i = chunk * BATCH_CHUNK_SIZE; i < end; i++) {
+        CancelledException.throwIfCancelled(signal);
+        Document document = documents.get(i);
+        int[] wordIds;
+        if (document.getWordCount() > 0) {
+          wordIds = vocabulary.addAll(document.getWordList());
+        } else {
+          wordIds = removeStopWords(
+              vocabulary.addAll(segment(document.getText())), vocabulary);
+        }
+        result.set(i, getKeywordInfo(wordIds, vocabulary, model, limit)
+            .toWordInfoList(vocabulary));
       }
-    });
-    if (limit > 0 && limit < wordInfoList.size()) {
-      return wordInfoList.subList(0, limit);
     }
-    return wordInfoList;
   }
 
   public NLPContext generateNLPContext(Map<String, Long> globalWordCount) {
+    return generateNLPContext(globalWordCount, false);
+  }
+
+  // No score is computed if lazyScores is true. See NLPContext.lazy_scores.
+  public NLPContext generateNLPContext(Map<String, Long> globalWordCount,
+      boolean lazyScores) {
     Builder nlpContextBuilder = NLPContext.newBuilder();
     long numAllWords = 0L;
     for (long count : globalWordCount.values()) {
@@ -134,23 +468,58 @@ public class NLPUtil {
     for (Map.Entry<String, Long> wordCount : globalWordCount.entrySet()) {
       String word = wordCount.getKey();
       long count = wordCount.getValue();
-      double frequencyScore = Math.log((double) numAllWords / count);
-      nlpContextBuilder.putGlobalWordStats(word, WordInfo.newBuilder()
-          .setWord(word).setCount(count).setScore(frequencyScore).build());
+      WordInfo.Builder wordInfoBuilder = WordInfo.newBuilder().setWord(word)
+          .setCount(count);
+      if (!lazyScores) {
+        wordInfoBuilder.setScore(getFrequencyScore(numAllWords, count));
+      }
+      nlpContextBuilder.putGlobalWordStats(word, wordInfoBuilder.build());
     }
-    return nlpContextBuilder.setNumAllWords(numAllWords).build();
+    return nlpContextBuilder.setNumAllWords(numAllWords)
+        .setLazyScores(lazyScores).build();
   }
 
-  private Map<String, Long> countWords(List<String> words) {
-    Map<String, Long> count = new HashMap<>();
-    for (String word : words) {
-      if (!count.containsKey(word)) {
-        count.put(word, 1L);
-      } else {
-        count.put(word, count.get(word) + 1L);
+  // Adds the deltas to the word counts of the context. Words whose count
+  // drops to 0 or below are removed, and added to removedWords if it is not
+  // null. The result has lazy scores, so that only the entries of the changed
+  // words are rewritten. The scores of the other entries are ignored from
+  // then on.
+  public NLPContext updateNLPContext(NLPContext context,
+      Map<String, Long> wordCountDeltas, Collection<String> removedWords) {
+    Builder nlpContextBuilder = context.toBuilder().setLazyScores(true);
+    long numAllWords = context.getNumAllWords();
+    for (Map.Entry<String, Long> wordCountDelta : wordCountDeltas
+        .entrySet()) {
+      String word = wordCountDelta.getKey();
+      WordInfo wordInfo = context.getGlobalWordStatsOrDefault(word, null);
+      long oldCount = wordInfo != null ? wordInfo.getCount() : 0L;
+      long count = Math.max(oldCount + wordCountDelta.getValue(), 0L);
+      numAllWords += count - oldCount;
+      if (count > 0L) {
+        nlpContextBuilder.putGlobalWordStats(word,
+            WordInfo.newBuilder().setWord(word).setCount(count).build());
+      } else if (wordInfo != null) {
+        nlpContextBuilder.removeGlobalWordStats(word);
+        if (removedWords != null) {
+          removedWords.add(word);
+        }
       }
     }
-    return count;
+    return nlpContextBuilder.setNumAllWords(numAllWords).build();
+  }
+
+  // The more frequent the word is, the lower the score is.
+  static double getFrequencyScore(long numAllWords, long count) {
+    return Math.log((double) numAllWords / count);
+  }
+
+  // Score of an entry of the global word stats of the context.
+  static double getFrequencyScore(NLPContext context,
+      WordInfo globalWordStats) {
+    return context.getLazyScores()
+        ? getFrequencyScore(context.getNumAllWords(),
+            globalWordStats.getCount())
+        : globalWordStats.getScore();
   }
 
 }
@@ -0,0 +1,148 @@
+package com.neoshell.nlp.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+// Segments long texts in chunks on several threads. Texts are only cut at the
+// end of a sentence or a line, where the wrapped segmenter ends a word anyway,
+// so that the result is the same as segmenting the whole text in the common
+// case. Shorter texts are passed through.
+public class ParallelSegmenter implements Segmenter {
+
+  // Sentence ends that don't need a following space, e.g. in Chinese.
+  private static final String FULL_WIDTH_SENTENCE_ENDS = "。！？；";
+  // Sentence ends that only count when followed by whitespace, so that
+  // "3.14" or "e.g." are not cut.
+  private static final String SENTENCE_ENDS = ".!?;";
+  // A quote or bracket closing a sentence belongs to it.
+  private static final String CLOSING_PUNCTUATION = "”’」』）》】\"')";
+
+  private final Segmenter segmenter;
+  private final int minTextLength;
+  private final int chunkLength;
+  private final ExecutorService executor;
+
+  // Texts of at least minTextLength chars are cut into chunks of at least
+  // chunkLength chars, which are segmented by numThreads threads.
+  public ParallelSegmenter(Segmenter segmenter, int minTextLength,
+      int chunkLength, int numThreads) {
+    if (chunkLength <= 0 || minTextLength < chunkLength) {
+      throw new IllegalArgumentException(
+          "Must have 0 < chunkLength <= minTextLength: chunkLength="
+              + chunkLength + ", minTextLength=" + minTextLength);
+    }
+    this.segmenter = segmenter;
+    this.minTextLength = minTextLength;
+    this.chunkLength = chunkLength;
+    this.executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "parallel-segmenter");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  @Override
+  public List<String> segment(String text) {
+    if (text.length() < minTextLength) {
+      return segmenter.segment(text);
+    }
+    List<String> chunks = split(text, chunkLength);
+    if (chunks.size() == 1) {
+      return segmenter.segment(text);
+    }
+    List<Future<List<String>>> futures = new ArrayList<>(chunks.size() - 1);
+    for (int i = 1; i < chunks.size(); i++) {
+      final String chunk = chunks.get(i);
+      futures.add(executor.submit(new Callable<List<String>>() {
+        @Override
+        public List<String> call() {
+          return segmenter.segment(chunk);
+        }
+      }));
+    }
+    // The first chunk is segmented by the calling thread.
+    List<String> words = new ArrayList<>(segmenter.segment(chunks.get(0)));
+    try {
+      for (Future<List<String>> future : futures) {
+        words.addAll(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancelledException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      for (Future<List<String>> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return words;
+  }
+
+  // Cuts the text after the first sentence end that is at least chunkLength
+  // chars after the previous cut. Whitespace after a sentence end stays in
+  // the previous chunk.
+  static List<String> split(String text, int chunkLength) {
+    List<String> chunks = new ArrayList<>();
+    int begin = 0;
+    int position = begin + chunkLength;
+    while (position < text.length()) {
+      if (!isSentenceEnd(text, position - 1)) {
+        position++;
+        continue;
+      }
+      while (position < text.length()
+          && Character.isWhitespace(text.charAt(position))) {
+        position++;
+      }
+      if (position < text.length()) {
+        chunks.add(text.substring(begin, position));
+        begin = position;
+        position = begin + chunkLength;
+      }
+    }
+    chunks.add(text.substring(begin));
+    return chunks;
+  }
+
+  private static boolean isSentenceEnd(String text, int index) {
+    if (text.charAt(index) == '\n') {
+      return true;
+    }
+    if (index + 1 >= text.length()) {
+      return false;
+    }
+    char next = text.charAt(index + 1);
+    if (CLOSING_PUNCTUATION.indexOf(next) >= 0) {
+      return false;
+    }
+    // Skip the quotes and brackets closing the sentence.
+    int end = index;
+    while (end > 0 && CLOSING_PUNCTUATION.indexOf(text.charAt(end)) >= 0) {
+      end--;
+    }
+    char c = text.charAt(end);
+    if (FULL_WIDTH_SENTENCE_ENDS.indexOf(c) >= 0) {
+      return true;
+    }
+    return SENTENCE_ENDS.indexOf(c) >= 0 && Character.isWhitespace(next);
+  }
+
+}
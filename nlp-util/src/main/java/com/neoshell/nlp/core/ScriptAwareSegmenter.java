@@ -0,0 +1,102 @@
+package com.neoshell.nlp.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Only sends the Chinese parts of a text to the wrapped segmenter. Other
+// parts, e.g. English, are split into words by a simple tokenizer, which is
+// much cheaper than the CRF model. The words are returned in text order.
+public class ScriptAwareSegmenter implements Segmenter {
+
+  private final Segmenter segmenter;
+
+  // segmenter is called with the Chinese parts only.
+  public ScriptAwareSegmenter(Segmenter segmenter) {
+    this.segmenter = segmenter;
+  }
+
+  @Override
+  public List<String> segment(String text) {
+    List<String> words = new ArrayList<>();
+    int length = text.length();
+    int position = 0;
+    while (position < length) {
+      int begin = position;
+      // Non-Chinese part.
+      while (position < length && !isChinese(text.charAt(position))) {
+        position++;
+      }
+      tokenize(text, begin, position, words);
+      if (position == length) {
+        break;
+      }
+      // Chinese part. Spaces between Chinese chars stay in it, so that the
+      // segmenter sees whole sentences.
+      begin = position;
+      int end = position;
+      while (position < length) {
+        char c = text.charAt(position);
+        if (isChinese(c)) {
+          end = position + 1;
+        } else if (!Character.isWhitespace(c)) {
+          break;
+        }
+        position++;
+      }
+      if (begin == 0 && end == length) {
+        return segmenter.segment(text);
+      }
+      words.addAll(segmenter.segment(text.substring(begin, end)));
+      position = end;
+    }
+    return words;
+  }
+
+  // Han chars and full width punctuation, letters and digits. Surrogates,
+  // e.g. rare Han chars, are left to the segmenter too.
+  static boolean isChinese(char c) {
+    if (c < 0x2E80) {
+      return false;
+    }
+    Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+    return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+        || block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+        || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS
+        || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+        || block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS
+        || block == Character.UnicodeBlock.CJK_RADICALS_SUPPLEMENT
+        || Character.isSurrogate(c);
+  }
+
+  // Adds the words of text[begin, end): runs of letters and digits, which may
+  // contain '.', '\'' or '-' between two letters or digits, e.g. "3.14" or
+  // "don't". Any other char except whitespace is a word by itself.
+  static void tokenize(String text, int begin, int end, List<String> words) {
+    int position = begin;
+    while (position < end) {
+      char c = text.charAt(position);
+      if (Character.isWhitespace(c)) {
+        position++;
+        continue;
+      }
+      int wordBegin = position;
+      position++;
+      if (Character.isLetterOrDigit(c)) {
+        while (position < end) {
+          char next = text.charAt(position);
+          if (Character.isLetterOrDigit(next)) {
+            position++;
+          } else if ((next == '.' || next == '\'' || next == '-')
+              && position + 1 < end
+              && Character.isLetterOrDigit(text.charAt(position + 1))) {
+            position += 2;
+          } else {
+            break;
+          }
+        }
+      }
+      words.add(text.substring(wordBegin, position));
+    }
+  }
+
+}
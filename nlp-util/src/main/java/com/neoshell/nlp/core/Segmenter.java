@@ -0,0 +1,10 @@
+package com.neoshell.nlp.core;
+
+import java.util.List;
+
+// Splits a text into words. Implementations must be thread safe.
+public interface Segmenter {
+
+  List<String> segment(String text);
+
+}
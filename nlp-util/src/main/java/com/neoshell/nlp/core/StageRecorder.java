@@ -0,0 +1,23 @@
+package com.neoshell.nlp.core;
+
+// Receives the time spent in each internal processing stage.
+// Implementations must be thread safe.
+public interface StageRecorder {
+
+  String SEGMENT = "segment";
+  String REMOVE_STOP_WORDS = "removeStopWords";
+  String GET_KEYWORD_INFO = "getKeywordInfo";
+  String MERGE_CONVERSATIONS = "mergeConversations";
+  String MERGE_PASS = "mergePass";
+  String BUILD_CONVERSATIONS = "buildConversations";
+
+  StageRecorder NONE = new StageRecorder() {
+    @Override
+    public void record(String stage, long elapsedNanos, long numItems) {
+    }
+  };
+
+  // numItems is the size of the stage input, e.g. number of chars or words.
+  void record(String stage, long elapsedNanos, long numItems);
+
+}
@@ -0,0 +1,88 @@
+package com.neoshell.nlp.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Collects the stages run by the current thread between start() and stop(),
+// e.g. to return the breakdown of a single request. The stage recorders of
+// NLPUtil and MessageAnalysisUtil report to it besides their own recorder.
+// Not thread safe.
+public class StageTimings implements StageRecorder {
+
+  private static final ThreadLocal<StageTimings> current = new ThreadLocal<>();
+
+  private static class Stage {
+    int numCalls;
+    long elapsedNanos;
+    long numItems;
+  }
+
+  // In order of first record.
+  private final Map<String, Stage> stages = new LinkedHashMap<>();
+  private final long startNanos;
+  private long elapsedNanos;
+
+  private StageTimings() {
+    this.startNanos = System.nanoTime();
+    this.elapsedNanos = -1L;
+  }
+
+  // Collects the stages of the current thread until stop() is called.
+  public static StageTimings start() {
+    StageTimings timings = new StageTimings();
+    current.set(timings);
+    return timings;
+  }
+
+  public void stop() {
+    if (current.get() == this) {
+      current.remove();
+    }
+    if (elapsedNanos < 0L) {
+      elapsedNanos = System.nanoTime() - startNanos;
+    }
+  }
+
+  // Records to the given recorder and to the timings of the current thread,
+  // if any.
+  public static StageRecorder forwardingTo(final StageRecorder recorder) {
+    return new StageRecorder() {
+      @Override
+      public void record(String stage, long elapsedNanos, long numItems) {
+        recorder.record(stage, elapsedNanos, numItems);
+        StageTimings timings = current.get();
+        if (timings != null) {
+          timings.record(stage, elapsedNanos, numItems);
+        }
+      }
+    };
+  }
+
+  @Override
+  public void record(String stage, long elapsedNanos, long numItems) {
+    Stage stageTiming = stages.get(stage);
+    if (stageTiming == null) {
+      stageTiming = new Stage();
+      stages.put(stage, stageTiming);
+    }
+    stageTiming.numCalls++;
+    stageTiming.elapsedNanos += elapsedNanos;
+    stageTiming.numItems += numItems;
+  }
+
+  // Stops the timings if they are not stopped yet.
+  public RequestTiming toRequestTiming() {
+    stop();
+    RequestTiming.Builder builder = RequestTiming.newBuilder()
+        .setElapsedMicros(elapsedNanos / 1000L);
+    for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+      Stage stage = entry.getValue();
+      builder.addStage(StageTiming.newBuilder().setStage(entry.getKey())
+          .setNumCalls(stage.numCalls)
+          .setElapsedMicros(stage.elapsedNanos / 1000L)
+          .setNumItems(stage.numItems));
+    }
+    return builder.build();
+  }
+
+}
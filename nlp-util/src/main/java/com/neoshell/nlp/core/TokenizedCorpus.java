@@ -0,0 +1,205 @@
+package com.neoshell.nlp.core;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+// Segmented texts written by TokenizedCorpusWriter, read without segmenting
+// them again. A corpus named name is made of 3 files:
+//   name.vocab   the words, one per line in UTF-8. The id of a word is its
+//                line number, starting from 0.
+//   name.tokens  the word ids of all the texts, as 32-bit ints.
+//   name.index   for each text, its 64-bit id, and the 32-bit offset and
+//                number of its word ids in name.tokens. Sorted by id.
+// All numbers are big endian. The tokens and index files are memory-mapped,
+// so a corpus can be larger than the heap, up to 2^31 words and fewer than
+// 2^27 texts in total. The tokens file is mapped in chunks, since a mapping
+// can't exceed 2 GB. Only the vocabulary is loaded. Thread safe.
+public class TokenizedCorpus implements Closeable {
+
+  static final int INDEX_ENTRY_SIZE = 16;
+  // 2^28 word ids, 1 GB, per mapped chunk of the tokens file.
+  private static final int CHUNK_SHIFT = 28;
+
+  private final String[] vocabulary;
+  private final IntBuffer[] tokens;
+  private final int chunkShift;
+  private final int chunkMask;
+  private final ByteBuffer index;
+  private final int numTexts;
+  private final RandomAccessFile tokensFile;
+  private final RandomAccessFile indexFile;
+
+  private TokenizedCorpus(String[] vocabulary, RandomAccessFile tokensFile,
+      RandomAccessFile indexFile, int chunkShift) throws IOException {
+    this.vocabulary = vocabulary;
+    this.tokensFile = tokensFile;
+    this.indexFile = indexFile;
+    this.chunkShift = chunkShift;
+    this.chunkMask = (1 << chunkShift) - 1;
+    this.tokens = mapTokens(tokensFile, chunkShift);
+    this.index = map(indexFile);
+    this.numTexts = index.capacity() / INDEX_ENTRY_SIZE;
+  }
+
+  public static TokenizedCorpus open(File dir, String name)
+      throws IOException {
+    return open(dir, name, CHUNK_SHIFT);
+  }
+
+  // With chunks of 2^chunkShift word ids, so that tests can use small ones.
+  static TokenizedCorpus open(File dir, String name, int chunkShift)
+      throws IOException {
+    List<String> words = new ArrayList<>();
+    BufferedReader br = new BufferedReader(new InputStreamReader(
+        new FileInputStream(getVocabularyFile(dir, name)),
+        StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        words.add(line);
+      }
+    } finally {
+      br.close();
+    }
+    RandomAccessFile tokensFile = new RandomAccessFile(
+        getTokensFile(dir, name), "r");
+    RandomAccessFile indexFile = null;
+    try {
+      indexFile = new RandomAccessFile(getIndexFile(dir, name), "r");
+      return new TokenizedCorpus(words.toArray(new String[words.size()]),
+          tokensFile, indexFile, chunkShift);
+    } catch (IOException | RuntimeException e) {
+      tokensFile.close();
+      if (indexFile != null) {
+        indexFile.close();
+      }
+      throw e;
+    }
+  }
+
+  static File getVocabularyFile(File dir, String name) {
+    return new File(dir, name + ".vocab");
+  }
+
+  static File getTokensFile(File dir, String name) {
+    return new File(dir, name + ".tokens");
+  }
+
+  static File getIndexFile(File dir, String name) {
+    return new File(dir, name + ".index");
+  }
+
+  public int getNumTexts() {
+    return numTexts;
+  }
+
+  public int getVocabularySize() {
+    return vocabulary.length;
+  }
+
+  public String getWord(int wordId) {
+    return vocabulary[wordId];
+  }
+
+  // Index of the text with the given id, or -1 if there is none. Texts are
+  // indexed in order of id.
+  public int find(long id) {
+    int low = 0;
+    int high = numTexts - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long middleId = getId(middle);
+      if (middleId < id) {
+        low = middle + 1;
+      } else if (middleId > id) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  public long getId(int textIndex) {
+    return index.getLong(textIndex * INDEX_ENTRY_SIZE);
+  }
+
+  // Number of words of the text.
+  public int getLength(int textIndex) {
+    return index.getInt(textIndex * INDEX_ENTRY_SIZE + 12);
+  }
+
+  public int getWordId(int textIndex, int position) {
+    return getToken(index.getInt(textIndex * INDEX_ENTRY_SIZE + 8)
+        + position);
+  }
+
+  // The words of the text, read from the file as they are accessed.
+  public List<String> getWords(final int textIndex) {
+    final int offset = index.getInt(textIndex * INDEX_ENTRY_SIZE + 8);
+    final int length = getLength(textIndex);
+    return new AbstractList<String>() {
+      @Override
+      public String get(int position) {
+        if (position < 0 || position >= length) {
+          throw new IndexOutOfBoundsException(
+              "position: " + position + ", length: " + length);
+        }
+        return vocabulary[getToken(offset + position)];
+      }
+
+      @Override
+      public int size() {
+        return length;
+      }
+    };
+  }
+
+  // The mapped files stay readable until they are garbage collected.
+  @Override
+  public void close() throws IOException {
+    try {
+      tokensFile.close();
+    } finally {
+      indexFile.close();
+    }
+  }
+
+  // The word id at the given offset in the tokens file.
+  private int getToken(int offset) {
+    return tokens[offset >>> chunkShift].get(offset & chunkMask);
+  }
+
+  private static IntBuffer[] mapTokens(RandomAccessFile file, int chunkShift)
+      throws IOException {
+    FileChannel channel = file.getChannel();
+    long size = channel.size();
+    long chunkBytes = 4L << chunkShift;
+    IntBuffer[] chunks = new IntBuffer[(int) ((size + chunkBytes - 1L)
+        / chunkBytes)];
+    for (int i = 0; i < chunks.length; i++) {
+      long position = i * chunkBytes;
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+          Math.min(chunkBytes, size - position)).asIntBuffer();
+    }
+    return chunks;
+  }
+
+  private static ByteBuffer map(RandomAccessFile file) throws IOException {
+    FileChannel channel = file.getChannel();
+    return channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+  }
+
+}
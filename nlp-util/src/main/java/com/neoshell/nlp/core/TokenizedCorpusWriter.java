@@ -0,0 +1,131 @@
+package com.neoshell.nlp.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes segmented texts, e.g. messages, to disk, so that they can be
+// analyzed again without segmenting them. See TokenizedCorpus for the format.
+// Not thread safe.
+public class TokenizedCorpusWriter implements Closeable {
+
+  private final File dir;
+  private final String name;
+  private final Map<String, Integer> vocabulary;
+  private final List<String> words;
+  private final DataOutputStream tokensOut;
+  private long[] ids;
+  private int[] offsets;
+  private int[] lengths;
+  private int numTexts;
+  private long numTokens;
+  private boolean isClosed;
+
+  // The files are written to dir and named after name.
+  public TokenizedCorpusWriter(File dir, String name) throws IOException {
+    this.dir = dir;
+    this.name = name;
+    this.vocabulary = new HashMap<>();
+    this.words = new ArrayList<>();
+    this.tokensOut = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(TokenizedCorpus.getTokensFile(dir, name))));
+    this.ids = new long[1024];
+    this.offsets = new int[1024];
+    this.lengths = new int[1024];
+  }
+
+  // id identifies the text, e.g. the message id. Each id may only be added
+  // once. Throws if the corpus would have more than Integer.MAX_VALUE words,
+  // or more texts than fit in a 2 GB index file.
+  public void add(long id, List<String> textWords) throws IOException {
+    if (numTokens + textWords.size() > Integer.MAX_VALUE) {
+      throw new IOException("Too many words in corpus " + name);
+    }
+    if (numTexts >= Integer.MAX_VALUE / TokenizedCorpus.INDEX_ENTRY_SIZE) {
+      throw new IOException("Too many texts in corpus " + name);
+    }
+    if (numTexts == ids.length) {
+      ids = Arrays.copyOf(ids, numTexts * 2);
+      offsets = Arrays.copyOf(offsets, numTexts * 2);
+      lengths = Arrays.copyOf(lengths, numTexts * 2);
+    }
+    ids[numTexts] = id;
+    offsets[numTexts] = (int) numTokens;
+    lengths[numTexts] = textWords.size();
+    numTexts++;
+    for (String word : textWords) {
+      Integer wordId = vocabulary.get(word);
+      if (wordId == null) {
+        wordId = words.size();
+        vocabulary.put(word, wordId);
+        words.add(word);
+      }
+      tokensOut.writeInt(wordId);
+    }
+    numTokens += textWords.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    tokensOut.close();
+    writeVocabulary();
+    writeIndex();
+  }
+
+  private void writeVocabulary() throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(TokenizedCorpus.getVocabularyFile(dir, name)),
+        StandardCharsets.UTF_8));
+    try {
+      for (String word : words) {
+        writer.write(word);
+        writer.write('\n');
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  // Sorted by id, for binary search.
+  private void writeIndex() throws IOException {
+    Integer[] order = new Integer[numTexts];
+    for (int i = 0; i < numTexts; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Long.compare(ids[o1], ids[o2]);
+      }
+    });
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(TokenizedCorpus.getIndexFile(dir, name))));
+    try {
+      for (int i : order) {
+        out.writeLong(ids[i]);
+        out.writeInt(offsets[i]);
+        out.writeInt(lengths[i]);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+package com.neoshell.nlp.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import com.google.protobuf.ByteString;
+
+// Checks if UTF-8 encoded words, e.g. of RPC payloads, are stop words without
+// decoding them into Strings. A word is lowercased code point by code point
+// into a buffer, which is looked up in a hash table of the UTF-8 bytes of the
+// stop words. Same result as NLPUtil.isStopWord(). The few words whose
+// lowercase depends on context or locale are checked as Strings. Invalid
+// UTF-8 is never a stop word. Immutable.
+class Utf8StopWordMatcher {
+
+  // Languages whose lowercasing rules differ from Character.toLowerCase().
+  private static final Set<String> SPECIAL_CASING_LANGUAGES = new HashSet<>(
+      Arrays.asList("tr", "az", "lt"));
+  // Lowercased differently by String.toLowerCase() in any locale.
+  private static final int CAPITAL_I_WITH_DOT = 0x130;
+  private static final int CAPITAL_SIGMA = 0x3A3;
+
+  private final Set<String> stopwords;
+  // Open addressing. null for empty slots.
+  private final byte[][] table;
+  private final int mask;
+  private final boolean isLocaleSensitive;
+
+  Utf8StopWordMatcher(Set<String> stopwords) {
+    this.stopwords = stopwords;
+    int capacity = Integer.highestOneBit(Math.max(stopwords.size(), 4) * 2)
+        * 2;
+    this.table = new byte[capacity][];
+    this.mask = capacity - 1;
+    for (String stopword : stopwords) {
+      byte[] bytes = stopword.getBytes(StandardCharsets.UTF_8);
+      int slot = hash(bytes, bytes.length) & mask;
+      while (table[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = bytes;
+    }
+    this.isLocaleSensitive = SPECIAL_CASING_LANGUAGES
+        .contains(Locale.getDefault().getLanguage());
+  }
+
+  // The word may be up to buffer.length / 2 bytes long, since lowercasing
+  // takes at most 3 bytes for 2.
+  boolean isStopWord(ByteString word, byte[] buffer) {
+    if (isLocaleSensitive) {
+      return isStopWordString(word);
+    }
+    int size = word.size();
+    int length = 0;
+    int i = 0;
+    while (i < size) {
+      int b = word.byteAt(i) & 0xFF;
+      if (b < 0x80) {
+        buffer[length++] = (byte) (b >= 'A' && b <= 'Z' ? b + ('a' - 'A')
+            : b);
+        i++;
+        continue;
+      }
+      int numBytes;
+      int codePoint;
+      if ((b & 0xE0) == 0xC0) {
+        numBytes = 2;
+        codePoint = b & 0x1F;
+      } else if ((b & 0xF0) == 0xE0) {
+        numBytes = 3;
+        codePoint = b & 0x0F;
+      } else if ((b & 0xF8) == 0xF0) {
+        numBytes = 4;
+        codePoint = b & 0x07;
+      } else {
+        return false;
+      }
+      if (i + numBytes > size) {
+        return false;
+      }
+      for (int j = 1; j < numBytes; j++) {
+        int continuation = word.byteAt(i + j) & 0xFF;
+        if ((continuation & 0xC0) != 0x80) {
+          return false;
+        }
+        codePoint = (codePoint << 6) | (continuation & 0x3F);
+      }
+      if (codePoint == CAPITAL_I_WITH_DOT || codePoint == CAPITAL_SIGMA) {
+        return isStopWordString(word);
+      }
+      length = encode(Character.toLowerCase(codePoint), buffer, length);
+      i += numBytes;
+    }
+    return contains(buffer, length);
+  }
+
+  private boolean isStopWordString(ByteString word) {
+    return stopwords.contains(word.toStringUtf8().toLowerCase());
+  }
+
+  private boolean contains(byte[] bytes, int length) {
+    int slot = hash(bytes, length) & mask;
+    byte[] candidate;
+    while ((candidate = table[slot]) != null) {
+      if (equals(candidate, bytes, length)) {
+        return true;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return false;
+  }
+
+  private static boolean equals(byte[] candidate, byte[] bytes, int length) {
+    if (candidate.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (candidate[i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(byte[] bytes, int length) {
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = hash * 31 + bytes[i];
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  // Returns the new length.
+  private static int encode(int codePoint, byte[] buffer, int length) {
+    if (codePoint < 0x80) {
+      buffer[length++] = (byte) codePoint;
+    } else if (codePoint < 0x800) {
+      buffer[length++] = (byte) (0xC0 | (codePoint >>> 6));
+      buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+    } else if (codePoint < 0x10000) {
+      buffer[length++] = (byte) (0xE0 | (codePoint >>> 12));
+      buffer[length++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+      buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+    } else {
+      buffer[length++] = (byte) (0xF0 | (codePoint >>> 18));
+      buffer[length++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+      buffer[length++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+      buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+    return length;
+  }
+
+}
@@ -0,0 +1,133 @@
+package com.neoshell.nlp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Maps words to dense int ids, starting from 0 in order of first addition, so
+// that each word of an analysis is hashed once and then handled as an int.
+// Also remembers what NLPUtil looked up for each word. Meant to live as long
+// as one analysis. Not thread safe.
+public class Vocabulary {
+
+  private static final byte UNKNOWN = 0;
+  private static final byte STOP_WORD = 1;
+  private static final byte NOT_STOP_WORD = 2;
+
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final List<String> words = new ArrayList<>();
+  // For the stop words of stopWordFlagsSource.
+  private byte[] stopWordFlags = new byte[0];
+  private Set<String> stopWordFlagsSource;
+  // For the frequency scores of frequencyScoresSource. Valid if the flag is
+  // set.
+  private double[] frequencyScores = new double[0];
+  private boolean[] hasFrequencyScores = new boolean[0];
+  private WordFrequencyModel frequencyScoresSource;
+  // Value per word id, valid if its stamp is the current one. Lets callers
+  // map ids to small ints without clearing an array each time.
+  private int[] scratchValues = new int[0];
+  private int[] scratchStamps = new int[0];
+  private int scratchStamp = 1;
+
+  public int add(String word) {
+    Integer id = ids.get(word);
+    if (id == null) {
+      id = words.size();
+      ids.put(word, id);
+      words.add(word);
+    }
+    return id;
+  }
+
+  public int[] addAll(List<String> words) {
+    int[] wordIds = new int[words.size()];
+    for (int i = 0; i < wordIds.length; i++) {
+      wordIds[i] = add(words.get(i));
+    }
+    return wordIds;
+  }
+
+  // -1 if the word was never added.
+  public int getId(String word) {
+    Integer id = ids.get(word);
+    return id == null ? -1 : id;
+  }
+
+  public String getWord(int id) {
+    return words.get(id);
+  }
+
+  public int size() {
+    return words.size();
+  }
+
+  // Checks each word against a given set of stop words once.
+  boolean isStopWord(int id, Set<String> stopwords) {
+    if (stopwords != stopWordFlagsSource) {
+      stopWordFlagsSource = stopwords;
+      Arrays.fill(stopWordFlags, UNKNOWN);
+    }
+    if (id >= stopWordFlags.length) {
+      stopWordFlags = Arrays.copyOf(stopWordFlags,
+          getCapacity(id, stopWordFlags.length));
+    }
+    if (stopWordFlags[id] == UNKNOWN) {
+      stopWordFlags[id] = stopwords.contains(getWord(id).toLowerCase())
+          ? STOP_WORD : NOT_STOP_WORD;
+    }
+    return stopWordFlags[id] == STOP_WORD;
+  }
+
+  // Looks each word up in a given model once. NaN if the word is unknown.
+  double getFrequencyScore(int id, WordFrequencyModel model) {
+    if (model != frequencyScoresSource) {
+      frequencyScoresSource = model;
+      Arrays.fill(hasFrequencyScores, false);
+    }
+    if (id >= frequencyScores.length) {
+      frequencyScores = Arrays.copyOf(frequencyScores,
+          getCapacity(id, frequencyScores.length));
+      hasFrequencyScores = Arrays.copyOf(hasFrequencyScores,
+          frequencyScores.length);
+    }
+    if (!hasFrequencyScores[id]) {
+      frequencyScores[id] = model.getFrequencyScore(getWord(id));
+      hasFrequencyScores[id] = true;
+    }
+    return frequencyScores[id];
+  }
+
+  // Forgets all the scratch values.
+  void clearScratch() {
+    scratchStamp++;
+    if (scratchStamp == Integer.MAX_VALUE) {
+      Arrays.fill(scratchStamps, 0);
+      scratchStamp = 1;
+    }
+  }
+
+  void setScratch(int id, int value) {
+    if (id >= scratchValues.length) {
+      scratchValues = Arrays.copyOf(scratchValues,
+          getCapacity(id, scratchValues.length));
+      scratchStamps = Arrays.copyOf(scratchStamps, scratchValues.length);
+    }
+    scratchValues[id] = value;
+    scratchStamps[id] = scratchStamp;
+  }
+
+  // -1 if not set since the last clearScratch().
+  int getScratch(int id) {
+    return id < scratchStamps.length && scratchStamps[id] == scratchStamp
+        ? scratchValues[id] : -1;
+  }
+
+  private int getCapacity(int id, int length) {
+    return Math.max(Math.max(id + 1, words.size()), length * 2);
+  }
+
+}
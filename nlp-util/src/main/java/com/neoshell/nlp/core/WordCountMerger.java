@@ -0,0 +1,194 @@
+package com.neoshell.nlp.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+// Merges the word count runs written by WordCountShardWriter into the global
+// word count, and generates the NLP context from it. At most maxFanIn runs are
+// merged at once, so memory use doesn't depend on the number of words. More
+// runs are merged in several passes through temporary files.
+public class WordCountMerger {
+
+  public static final int DEFAULT_MAX_FAN_IN = 64;
+
+  // Field numbers of the entries of a map field.
+  private static final int MAP_KEY_FIELD_NUMBER = 1;
+  private static final int MAP_VALUE_FIELD_NUMBER = 2;
+
+  private final File tempDir;
+  private final int maxFanIn;
+
+  public WordCountMerger(File tempDir) {
+    this(tempDir, DEFAULT_MAX_FAN_IN);
+  }
+
+  public WordCountMerger(File tempDir, int maxFanIn) {
+    if (maxFanIn < 2) {
+      throw new IllegalArgumentException(
+          "maxFanIn must be at least 2: " + maxFanIn);
+    }
+    this.tempDir = tempDir;
+    this.maxFanIn = maxFanIn;
+  }
+
+  // Merges the runs into a single run, summing up the counts of each word.
+  // Returns the number of all words. The input runs are kept.
+  public long merge(List<File> runFiles, File outputFile) throws IOException {
+    List<File> runs = new ArrayList<>(runFiles);
+    List<File> tempFiles = new ArrayList<>();
+    try {
+      while (runs.size() > maxFanIn) {
+        List<File> nextRuns = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i += maxFanIn) {
+          List<File> group = runs.subList(i,
+              Math.min(i + maxFanIn, runs.size()));
+          if (group.size() == 1) {
+            nextRuns.add(group.get(0));
+            continue;
+          }
+          File tempFile = File.createTempFile("merge-", ".run", tempDir);
+          tempFiles.add(tempFile);
+          mergeRuns(group, tempFile);
+          nextRuns.add(tempFile);
+        }
+        // Runs of the previous pass are not needed anymore.
+        for (File run : runs) {
+          if (!nextRuns.contains(run) && tempFiles.remove(run)) {
+            run.delete();
+          }
+        }
+        runs = nextRuns;
+      }
+      return mergeRuns(runs, outputFile);
+    } finally {
+      for (File tempFile : tempFiles) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  // Merges the runs and writes the NLP context of the global word count to
+  // contextFile. See writeNLPContext() for the format.
+  public void generateNLPContextFile(List<File> runFiles, File contextFile)
+      throws IOException {
+    File mergedRun = File.createTempFile("merged-", ".run", tempDir);
+    try {
+      long numAllWords = merge(runFiles, mergedRun);
+      OutputStream out = new BufferedOutputStream(
+          new FileOutputStream(contextFile));
+      try {
+        writeNLPContext(mergedRun, numAllWords, out);
+      } finally {
+        out.close();
+      }
+    } finally {
+      mergedRun.delete();
+    }
+  }
+
+  // Writes the NLP context of a merged run in the serialized form of
+  // NLPContext, one map entry at a time, so that the whole context is never
+  // held in memory. Scores are the same as NLPUtil.generateNLPContext().
+  public static void writeNLPContext(File mergedRun, long numAllWords,
+      OutputStream out) throws IOException {
+    CodedOutputStream output = CodedOutputStream.newInstance(out);
+    output.writeInt64(NLPContext.NUM_ALL_WORDS_FIELD_NUMBER, numAllWords);
+    WordCountRunReader reader = new WordCountRunReader(mergedRun);
+    try {
+      WordInfo wordCount;
+      while ((wordCount = reader.next()) != null) {
+        String word = wordCount.getWord();
+        WordInfo wordInfo = wordCount.toBuilder().setScore(NLPUtil
+            .getFrequencyScore(numAllWords, wordCount.getCount())).build();
+        output.writeTag(NLPContext.GLOBAL_WORD_STATS_FIELD_NUMBER,
+            WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(
+            CodedOutputStream.computeStringSize(MAP_KEY_FIELD_NUMBER, word)
+                + CodedOutputStream.computeMessageSize(MAP_VALUE_FIELD_NUMBER,
+                    wordInfo));
+        output.writeString(MAP_KEY_FIELD_NUMBER, word);
+        output.writeMessage(MAP_VALUE_FIELD_NUMBER, wordInfo);
+      }
+    } finally {
+      reader.close();
+    }
+    output.flush();
+  }
+
+  public static NLPContext readNLPContext(File contextFile)
+      throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(contextFile));
+    try {
+      CodedInputStream input = CodedInputStream.newInstance(in);
+      // The default limit is 64MB.
+      input.setSizeLimit(Integer.MAX_VALUE);
+      return NLPContext.parseFrom(input);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static long mergeRuns(List<File> runFiles, File outputFile)
+      throws IOException {
+    PriorityQueue<WordCountRunReader> queue = new PriorityQueue<>(
+        Math.max(runFiles.size(), 1), new Comparator<WordCountRunReader>() {
+          @Override
+          public int compare(WordCountRunReader o1, WordCountRunReader o2) {
+            return o1.peek().getWord().compareTo(o2.peek().getWord());
+          }
+        });
+    List<WordCountRunReader> readers = new ArrayList<>();
+    long numAllWords = 0L;
+    try {
+      for (File runFile : runFiles) {
+        WordCountRunReader reader = new WordCountRunReader(runFile);
+        readers.add(reader);
+        if (reader.peek() != null) {
+          queue.add(reader);
+        }
+      }
+      OutputStream out = new BufferedOutputStream(
+          new FileOutputStream(outputFile));
+      try {
+        while (!queue.isEmpty()) {
+          String word = queue.peek().peek().getWord();
+          long count = 0L;
+          // Sum up the counts of the word in all the runs.
+          while (!queue.isEmpty() && queue.peek().peek().getWord()
+              .equals(word)) {
+            WordCountRunReader reader = queue.poll();
+            count += reader.next().getCount();
+            if (reader.peek() != null) {
+              queue.add(reader);
+            }
+          }
+          WordInfo.newBuilder().setWord(word).setCount(count).build()
+              .writeDelimitedTo(out);
+          numAllWords += count;
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      for (WordCountRunReader reader : readers) {
+        reader.close();
+      }
+    }
+    return numAllWords;
+  }
+
+}
@@ -0,0 +1,39 @@
+package com.neoshell.nlp.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Reads a run file written by WordCountShardWriter or WordCountMerger.
+class WordCountRunReader implements Closeable {
+
+  private final InputStream in;
+  private WordInfo current;
+
+  WordCountRunReader(File runFile) throws IOException {
+    in = new BufferedInputStream(new FileInputStream(runFile));
+    current = WordInfo.parseDelimitedFrom(in);
+  }
+
+  // Returns null at the end of the run.
+  WordInfo peek() {
+    return current;
+  }
+
+  WordInfo next() throws IOException {
+    WordInfo result = current;
+    if (result != null) {
+      current = WordInfo.parseDelimitedFrom(in);
+    }
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+}
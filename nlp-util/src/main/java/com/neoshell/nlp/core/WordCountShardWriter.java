@@ -0,0 +1,98 @@
+package com.neoshell.nlp.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Counts the words of a worker with bounded memory. Once more than
+// maxWordsInMemory distinct words are counted, the counts are written to disk
+// as a run sorted by word, and counting starts over. The runs of all the
+// workers are merged by WordCountMerger.
+//
+// A run file is a sequence of length delimited WordInfo messages (word and
+// count) sorted by word, with each word appearing once.
+public class WordCountShardWriter implements Closeable {
+
+  private final File dir;
+  private final String name;
+  private final int maxWordsInMemory;
+  private final Map<String, Long> wordCount;
+  private final List<File> runFiles;
+  private boolean isClosed;
+
+  // Run files are written to dir and named after name, which must be unique
+  // among the writers sharing the dir.
+  public WordCountShardWriter(File dir, String name, int maxWordsInMemory) {
+    if (maxWordsInMemory <= 0) {
+      throw new IllegalArgumentException(
+          "maxWordsInMemory must be positive: " + maxWordsInMemory);
+    }
+    this.dir = dir;
+    this.name = name;
+    this.maxWordsInMemory = maxWordsInMemory;
+    this.wordCount = new HashMap<>();
+    this.runFiles = new ArrayList<>();
+  }
+
+  public void add(String word, long count) throws IOException {
+    Long oldCount = wordCount.get(word);
+    wordCount.put(word, oldCount == null ? count : oldCount + count);
+    if (wordCount.size() > maxWordsInMemory) {
+      writeRun();
+    }
+  }
+
+  public void addWords(List<String> words) throws IOException {
+    for (String word : words) {
+      add(word, 1L);
+    }
+  }
+
+  // E.g. the result of NLPUtil.countWordShard().
+  public void addWordCounts(List<WordInfo> wordCounts) throws IOException {
+    for (WordInfo wordInfo : wordCounts) {
+      add(wordInfo.getWord(), wordInfo.getCount());
+    }
+  }
+
+  // All the runs written so far. Call close() first to write the last one.
+  public List<File> getRunFiles() {
+    return Collections.unmodifiableList(runFiles);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!isClosed) {
+      isClosed = true;
+      if (!wordCount.isEmpty()) {
+        writeRun();
+      }
+    }
+  }
+
+  private void writeRun() throws IOException {
+    File runFile = new File(dir, name + "-" + runFiles.size() + ".run");
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(runFile));
+    try {
+      for (Map.Entry<String, Long> entry : new TreeMap<>(wordCount)
+          .entrySet()) {
+        WordInfo.newBuilder().setWord(entry.getKey())
+            .setCount(entry.getValue()).build().writeDelimitedTo(out);
+      }
+    } finally {
+      out.close();
+    }
+    runFiles.add(runFile);
+    wordCount.clear();
+  }
+
+}
@@ -0,0 +1,16 @@
+package com.neoshell.nlp.core;
+
+// Global word frequencies that keywords are scored against. See
+// NLPUtil.getKeywordInfo().
+public interface WordFrequencyModel {
+
+  // Number of all the words, or 0 if unknown, in which case keywords are only
+  // scored by their local counts.
+  double getNumAllWords();
+
+  // The more frequent the word is, the lower the score is. NaN if the word is
+  // unknown, in which case the score is computed from getNumAllWords() and
+  // its local count.
+  double getFrequencyScore(String word);
+
+}
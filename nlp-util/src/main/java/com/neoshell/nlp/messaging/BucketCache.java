@@ -0,0 +1,191 @@
+package com.neoshell.nlp.messaging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.CodedOutputStream;
+import com.neoshell.nlp.core.NLPContext;
+import com.neoshell.nlp.core.WordInfo;
+
+// Analyzed time buckets of MergeMessagesAndComputeKeywords, so that calls on
+// overlapping windows of messages, e.g. the last 24 hours every few minutes,
+// only analyze the buckets that are new or changed. A bucket is reused if it
+// has the same messages, NLP context, keyword limit and stop words. Buckets
+// are identified by a SHA-256 digest of all of these, so that the cache holds
+// neither the messages nor the contexts. At most maxBuckets buckets are kept,
+// the least recently used ones are evicted. Thread safe.
+public class BucketCache implements BucketCacheMXBean {
+
+  // Identifies a bucket and everything its analysis depends on. Immutable.
+  static class Key {
+    private final byte[] digest;
+    private final int hash;
+
+    private Key(byte[] digest) {
+      this.digest = digest;
+      this.hash = Arrays.hashCode(digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && Arrays.equals(digest, ((Key) obj).digest);
+    }
+  }
+
+  // The analysis of a bucket, with words instead of word ids, so that it
+  // doesn't depend on the vocabulary of a call. Immutable.
+  static class Bucket {
+    final long startTimestamp;
+    final long endTimestamp;
+    final long numWords;
+    final long numNonStopWords;
+    final List<WordInfo> keywords;
+
+    Bucket(long startTimestamp, long endTimestamp, long numWords,
+        long numNonStopWords, List<WordInfo> keywords) {
+      this.startTimestamp = startTimestamp;
+      this.endTimestamp = endTimestamp;
+      this.numWords = numWords;
+      this.numNonStopWords = numNonStopWords;
+      this.keywords = keywords;
+    }
+  }
+
+  private final int maxBuckets;
+  // Most recently used last.
+  private final LinkedHashMap<Key, Bucket> buckets;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public BucketCache(int maxBuckets) {
+    if (maxBuckets <= 0) {
+      throw new IllegalArgumentException(
+          "maxBuckets must be positive: " + maxBuckets);
+    }
+    this.maxBuckets = maxBuckets;
+    this.buckets = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  // Only the ids, timestamps and contents of the messages are used, which is
+  // all their analysis depends on. contextDigest is from digest(NLPContext).
+  Key createKey(List<Message> messages, byte[] contextDigest,
+      int keywordLimit, long stopWordsVersion) {
+    MessageDigest messageDigest = newMessageDigest();
+    ByteBuffer buffer = ByteBuffer.allocate(20);
+    messageDigest.update(contextDigest);
+    buffer.putInt(keywordLimit).putLong(stopWordsVersion);
+    messageDigest.update(buffer.array(), 0, buffer.position());
+    for (Message message : messages) {
+      buffer.clear();
+      // The length separates the content from the next message.
+      buffer.putLong(message.getId()).putLong(message.getTimestampSeconds())
+          .putInt(message.getContentBytes().size());
+      messageDigest.update(buffer.array(), 0, buffer.position());
+      messageDigest.update(message.getContentBytes().asReadOnlyByteBuffer());
+    }
+    return new Key(messageDigest.digest());
+  }
+
+  // Digest of the context, computed once per call instead of once per bucket.
+  // Map entries are serialized in a deterministic order, so that equal
+  // contexts have the same digest.
+  static byte[] digest(NLPContext context) {
+    final MessageDigest messageDigest = newMessageDigest();
+    CodedOutputStream output = CodedOutputStream
+        .newInstance(new OutputStream() {
+          @Override
+          public void write(int b) {
+            messageDigest.update((byte) b);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) {
+            messageDigest.update(b, off, len);
+          }
+        });
+    output.useDeterministicSerialization();
+    try {
+      context.writeTo(output);
+      output.flush();
+    } catch (IOException e) {
+      // Not thrown by the stream.
+      throw new IllegalStateException(e);
+    }
+    return messageDigest.digest();
+  }
+
+  private static MessageDigest newMessageDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // null if the bucket is not cached.
+  synchronized Bucket get(Key key) {
+    Bucket bucket = buckets.get(key);
+    if (bucket != null) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return bucket;
+  }
+
+  synchronized void put(Key key, Bucket bucket) {
+    buckets.put(key, bucket);
+    if (buckets.size() > maxBuckets) {
+      Iterator<Map.Entry<Key, Bucket>> iterator = buckets.entrySet()
+          .iterator();
+      iterator.next();
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  public synchronized void clear() {
+    buckets.clear();
+  }
+
+  @Override
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  @Override
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  @Override
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized int getSize() {
+    return buckets.size();
+  }
+
+  @Override
+  public int getMaxSize() {
+    return maxBuckets;
+  }
+
+}
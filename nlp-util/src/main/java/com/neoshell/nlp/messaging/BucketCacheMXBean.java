@@ -0,0 +1,15 @@
+package com.neoshell.nlp.messaging;
+
+public interface BucketCacheMXBean {
+
+  long getHits();
+
+  long getMisses();
+
+  long getEvictions();
+
+  int getSize();
+
+  int getMaxSize();
+
+}
@@ -1,138 +1,234 @@
 package com.neoshell.nlp.messaging;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.function.Consumer;
 
+import com.neoshell.nlp.core.CancellationSignal;
+import com.neoshell.nlp.core.CancelledException;
+import com.neoshell.nlp.core.DecayedWordStats;
+import com.neoshell.nlp.core.KeywordList;
+import com.neoshell.nlp.core.KeywordVector;
 import com.neoshell.nlp.core.NLPContext;
+import com.neoshell.nlp.core.NLPContextWordFrequencyModel;
 import com.neoshell.nlp.core.NLPUtil;
-import com.neoshell.nlp.core.WordInfo;
+import com.neoshell.nlp.core.StageRecorder;
+import com.neoshell.nlp.core.StageTimings;
+import com.neoshell.nlp.core.TokenizedCorpus;
+import com.neoshell.nlp.core.Vocabulary;
+import com.neoshell.nlp.core.WordFrequencyModel;
 
 public class MessageAnalysisUtil {
 
   private NLPUtil nlpUtil;
+  private StageRecorder stageRecorder;
+  private DecayedWordStats wordStats;
+  private BucketCache bucketCache;
 
   public MessageAnalysisUtil(NLPUtil nlpUtil) {
     this.nlpUtil = nlpUtil;
+    this.stageRecorder = StageTimings.forwardingTo(StageRecorder.NONE);
   }
 
-  private Conversation analyzeConversation(Conversation conversation,
-      NLPContext nlpContext, int keywordLimit) {
-    if (conversation.getMessageCount() == 0) {
-      return conversation;
+  public void setStageRecorder(StageRecorder stageRecorder) {
+    this.stageRecorder = StageTimings.forwardingTo(stageRecorder);
+  }
+
+  // If set, keywords are scored against these stats instead of the NLP
+  // context of the MessageAnalysisContext, and the words of the messages are
+  // added to them, at the end timestamp of their conversation, once all the
+  // conversations of the call are scored. null by default. Concurrent calls
+  // add their words while others score, so the keywords of a call may be
+  // scored partly before and partly after the words of another call are
+  // added. See DecayedWordStats.
+  public void setWordStats(DecayedWordStats wordStats) {
+    this.wordStats = wordStats;
+  }
+
+  // If set, the analysis of each time bucket is reused by later calls with
+  // the same bucket. Not used with word stats, which change with each call,
+  // or with a corpus. null by default.
+  public void setBucketCache(BucketCache bucketCache) {
+    this.bucketCache = bucketCache;
+  }
+
+  // A conversation being analyzed. Its keywords are kept as word ids of the
+  // vocabulary of the analysis until the result is built.
+  private static class AnalyzedConversation {
+    private final List<Message> messages;
+    private long startTimestamp;
+    private long endTimestamp;
+    private long numWords;
+    private long numNonStopWords;
+    private KeywordList keywords;
+    // Built from the keywords when needed. null if not built yet.
+    private KeywordVector keywordVector;
+    // All the non-stop words with their counts. Only kept until they are
+    // added to the word stats.
+    private KeywordList wordCounts;
+
+    private AnalyzedConversation(List<Message> messages) {
+      this.messages = messages;
+      this.keywords = KeywordList.EMPTY;
     }
-    Conversation.Builder conversationBuilder = conversation.toBuilder();
+
+    private static AnalyzedConversation fromBucket(List<Message> messages,
+        BucketCache.Bucket bucket, Vocabulary vocabulary) {
+      AnalyzedConversation result = new AnalyzedConversation(messages);
+      result.startTimestamp = bucket.startTimestamp;
+      result.endTimestamp = bucket.endTimestamp;
+      result.numWords = bucket.numWords;
+      result.numNonStopWords = bucket.numNonStopWords;
+      result.keywords = KeywordList.fromWordInfoList(bucket.keywords,
+          vocabulary);
+      return result;
+    }
+
+    private BucketCache.Bucket toBucket(Vocabulary vocabulary) {
+      return new BucketCache.Bucket(startTimestamp, endTimestamp, numWords,
+          numNonStopWords, keywords.toWordInfoList(vocabulary));
+    }
+
+    // A summary has the ids of the messages instead of the messages.
+    private Conversation toConversation(Vocabulary vocabulary,
+        boolean summaryOnly) {
+      Conversation.Builder conversationBuilder = Conversation.newBuilder();
+      if (summaryOnly) {
+        for (Message message : messages) {
+          conversationBuilder.addMessageId(message.getId());
+        }
+      } else {
+        conversationBuilder.addAllMessage(messages);
+      }
+      return conversationBuilder.setStartTimestampSeconds(startTimestamp)
+          .setEndTimestampSeconds(endTimestamp).setNumWords(numWords)
+          .setNumNonStopWords(numNonStopWords)
+          .addAllKeyword(keywords.toWordInfoList(vocabulary)).build();
+    }
+
+    private KeywordVector getKeywordVector() {
+      if (keywordVector == null) {
+        keywordVector = KeywordVector.fromKeywords(keywords);
+      }
+      return keywordVector;
+    }
+  }
+
+  // messages must not be empty. The word counts are only kept if
+  // keepWordCounts is true.
+  private AnalyzedConversation analyzeConversation(List<Message> messages,
+      WordFrequencyModel model, int keywordLimit, boolean keepWordCounts,
+      TokenizedCorpus corpus, Vocabulary vocabulary,
+      CancellationSignal signal) {
+    AnalyzedConversation conversation = new AnalyzedConversation(messages);
     long startTimestamp = Long.MAX_VALUE;
     long endTimestamp = 0L;
-    List<String> words = new ArrayList<>();
-    for (Message message : conversation.getMessageList()) {
+    // Concatenated once after the loop.
+    int[][] messageWordIds = new int[messages.size()][];
+    int numMessages = 0;
+    int numWords = 0;
+    for (Message message : messages) {
+      CancelledException.throwIfCancelled(signal);
       startTimestamp = Math.min(startTimestamp, message.getTimestampSeconds());
       endTimestamp = Math.max(endTimestamp, message.getTimestampSeconds());
-      words.addAll(nlpUtil.segment(message.getContent()));
-    }
-    long numWords = words.size();
-    words = nlpUtil.removeStopWords(words);
-    long numNonStopwords = words.size();
-    List<WordInfo> keywords = nlpUtil.getKeywordInfo(words, nlpContext,
-        keywordLimit);
-    return conversationBuilder.setStartTimestampSeconds(startTimestamp)
-        .setEndTimestampSeconds(endTimestamp).setNumWords(numWords)
-        .setNumNonStopWords(numNonStopwords).addAllKeyword(keywords).build();
-  }
-
-  private boolean hasCommonKeyword(Conversation conversation0,
-      Conversation conversation1, int threshold) {
-    Set<String> keywordsInConversation0 = new HashSet<>();
-    for (WordInfo keyword : conversation0.getKeywordList()) {
-      keywordsInConversation0.add(keyword.getWord());
+      int[] ids = vocabulary.addAll(getWords(message, corpus));
+      messageWordIds[numMessages++] = ids;
+      numWords += ids.length;
     }
-    int count = 0;
-    for (WordInfo keyword : conversation1.getKeywordList()) {
-      if (keywordsInConversation0.contains(keyword.getWord())) {
-        count++;
-      }
-      if (count >= threshold) {
-        return true;
-      }
+    int[] wordIds = new int[numWords];
+    int offset = 0;
+    for (int[] ids : messageWordIds) {
+      System.arraycopy(ids, 0, wordIds, offset, ids.length);
+      offset += ids.length;
+    }
+    conversation.startTimestamp = startTimestamp;
+    conversation.endTimestamp = endTimestamp;
+    conversation.numWords = wordIds.length;
+    wordIds = nlpUtil.removeStopWords(wordIds, vocabulary);
+    conversation.numNonStopWords = wordIds.length;
+    if (keepWordCounts) {
+      conversation.wordCounts = nlpUtil.getKeywordInfo(wordIds, vocabulary,
+          model, 0);
+      conversation.keywords = conversation.wordCounts.truncate(keywordLimit);
+    } else {
+      conversation.keywords = nlpUtil.getKeywordInfo(wordIds, vocabulary,
+          model, keywordLimit);
     }
-    return false;
+    return conversation;
   }
 
-  // It doesn't modify the input object.
-  private Conversation mergeConversation(Conversation conversation1,
-      Conversation conversation2, int keywordLimit) {
-    long startTimestamp = Math.min(conversation1.getStartTimestampSeconds(),
-        conversation2.getStartTimestampSeconds());
-    long endTimestamp = Math.max(conversation1.getEndTimestampSeconds(),
-        conversation2.getEndTimestampSeconds());
-    List<Message> messages = new ArrayList<>(conversation1.getMessageList());
-    messages.addAll(conversation2.getMessageList());
-    long numWords = conversation1.getNumWords() + conversation2.getNumWords();
-    long numNonStopwords = conversation1.getNumNonStopWords()
-        + conversation2.getNumNonStopWords();
-
-    // Merge keywords.
-    Map<String, WordInfo> keywordMap = new HashMap<>();
-    for (WordInfo keyword1 : conversation1.getKeywordList()) {
-      keywordMap.put(keyword1.getWord(), keyword1);
-    }
-    for (WordInfo keyword2 : conversation2.getKeywordList()) {
-      String word = keyword2.getWord();
-      if (keywordMap.containsKey(word)) {
-        WordInfo keyword1 = keywordMap.get(word);
-        long count = keyword1.getCount() + keyword2.getCount();
-        double score = keyword1.getScore() + keyword2.getScore();
-        keywordMap.put(word, WordInfo.newBuilder().setWord(word).setCount(count)
-            .setScore(score).build());
-      } else {
-        keywordMap.put(word, keyword2);
+  // Reads the words of the message from the corpus if it is there, or
+  // segments its content. corpus may be null.
+  private List<String> getWords(Message message, TokenizedCorpus corpus) {
+    if (corpus != null) {
+      int textIndex = corpus.find(message.getId());
+      if (textIndex >= 0) {
+        return corpus.getWords(textIndex);
       }
     }
+    return nlpUtil.segment(message.getContent());
+  }
 
-    // Sort keywords by score in descending order.
-    List<WordInfo> keywords = new ArrayList<>(keywordMap.values());
-    Collections.sort(keywords, new Comparator<WordInfo>() {
-      @Override
-      public int compare(WordInfo o1, WordInfo o2) {
-        Double score1 = o1.getScore();
-        Double srore2 = o2.getScore();
-        return srore2.compareTo(score1);
-      }
-    });
-    if (keywordLimit > 0 && keywordLimit < keywords.size()) {
-      keywords = keywords.subList(0, keywordLimit);
+  private boolean hasCommonKeyword(AnalyzedConversation conversation0,
+      AnalyzedConversation conversation1, int threshold,
+      Vocabulary vocabulary) {
+    return conversation0.keywords.hasCommonWords(conversation1.keywords,
+        threshold, vocabulary);
+  }
+
+  // By cosine similarity of the keyword scores if similarityThreshold > 0,
+  // by number of common keywords otherwise.
+  private boolean canMerge(AnalyzedConversation conversation0,
+      AnalyzedConversation conversation1, int commonKeywordThreshold,
+      double similarityThreshold, Vocabulary vocabulary) {
+    if (similarityThreshold > 0.0) {
+      return conversation0.getKeywordVector()
+          .dot(conversation1.getKeywordVector()) >= similarityThreshold;
     }
+    return hasCommonKeyword(conversation0, conversation1,
+        commonKeywordThreshold, vocabulary);
+  }
 
-    return Conversation.newBuilder().addAllMessage(messages)
-        .setStartTimestampSeconds(startTimestamp)
-        .setEndTimestampSeconds(endTimestamp).setNumWords(numWords)
-        .setNumNonStopWords(numNonStopwords).addAllKeyword(keywords).build();
+  // It modifies conversation1 and returns it.
+  private AnalyzedConversation mergeConversation(
+      AnalyzedConversation conversation1, AnalyzedConversation conversation2,
+      int keywordLimit, Vocabulary vocabulary) {
+    conversation1.startTimestamp = Math.min(conversation1.startTimestamp,
+        conversation2.startTimestamp);
+    conversation1.endTimestamp = Math.max(conversation1.endTimestamp,
+        conversation2.endTimestamp);
+    conversation1.messages.addAll(conversation2.messages);
+    conversation1.numWords += conversation2.numWords;
+    conversation1.numNonStopWords += conversation2.numNonStopWords;
+    conversation1.keywords = KeywordList.merge(conversation1.keywords,
+        conversation2.keywords, keywordLimit, vocabulary);
+    conversation1.keywordVector = null;
+    return conversation1;
   }
 
-  // It modifies the input object.
-  private LinkedList<Conversation> mergeConversations(
-      LinkedList<Conversation> conversations, int commonKeywordThreshold,
-      int keywordsLimit) {
-    if (conversations == null || conversations.size() < 2) {
+  // It modifies the input object. See canMerge() for the thresholds.
+  private LinkedList<AnalyzedConversation> mergeConversations(
+      LinkedList<AnalyzedConversation> conversations,
+      int commonKeywordThreshold, double similarityThreshold,
+      int keywordsLimit, Vocabulary vocabulary, CancellationSignal signal) {
+    if (conversations.size() < 2) {
       return conversations;
     }
-    LinkedList<Conversation> newConversations = new LinkedList<>();
+    LinkedList<AnalyzedConversation> newConversations = new LinkedList<>();
     boolean hasNewMergedConversation = true;
     while (hasNewMergedConversation) {
+      long startNanos = System.nanoTime();
+      int numConversations = conversations.size();
       hasNewMergedConversation = false;
-      Conversation conversation1 = conversations.removeFirst();
+      AnalyzedConversation conversation1 = conversations.removeFirst();
       while (!conversations.isEmpty()) {
-        Conversation conversation2 = conversations.removeFirst();
-        if (hasCommonKeyword(conversation1, conversation2,
-            commonKeywordThreshold)) {
+        CancelledException.throwIfCancelled(signal);
+        AnalyzedConversation conversation2 = conversations.removeFirst();
+        if (canMerge(conversation1, conversation2, commonKeywordThreshold,
+            similarityThreshold, vocabulary)) {
           conversation1 = mergeConversation(conversation1, conversation2,
-              keywordsLimit);
+              keywordsLimit, vocabulary);
           hasNewMergedConversation = true;
         } else {
           newConversations.addLast(conversation1);
@@ -142,50 +238,131 @@ public class MessageAnalysisUtil {
       newConversations.addLast(conversation1);
       conversations = newConversations;
       newConversations = new LinkedList<>();
+      stageRecorder.record(StageRecorder.MERGE_PASS,
+          System.nanoTime() - startNanos, numConversations);
     }
     return conversations;
   }
 
   public ArrayList<Conversation> mergeMessagesAndComputeKeywords(
       List<Message> messages, MessageAnalysisContext context) {
-    LinkedList<Conversation> conversations = new LinkedList<>();
+    return mergeMessagesAndComputeKeywords(messages, context,
+        CancellationSignal.NONE);
+  }
+
+  // Throws CancelledException if the signal is cancelled before the work is
+  // done.
+  public ArrayList<Conversation> mergeMessagesAndComputeKeywords(
+      List<Message> messages, MessageAnalysisContext context,
+      CancellationSignal signal) {
+    return mergeMessagesAndComputeKeywords(messages, context, null, signal);
+  }
+
+  // Same as above, but the words of the messages found in the corpus by id
+  // are read from it instead of segmenting their content, e.g. to try several
+  // contexts on the same messages. corpus may be null.
+  public ArrayList<Conversation> mergeMessagesAndComputeKeywords(
+      List<Message> messages, MessageAnalysisContext context,
+      TokenizedCorpus corpus, CancellationSignal signal) {
+    final ArrayList<Conversation> result = new ArrayList<>();
+    mergeMessagesAndComputeKeywords(messages, context, corpus, false, signal,
+        new Consumer<Conversation>() {
+          @Override
+          public void accept(Conversation conversation) {
+            result.add(conversation);
+          }
+        });
+    return result;
+  }
+
+  // Same as above, but the conversations are passed to the consumer one by
+  // one, in order, and each one is only built then. None is passed before
+  // merging is done for all the messages, i.e. until no adjacent
+  // conversations can be merged anymore, since any merge may make any of the
+  // previous ones mergeable again. If summaryOnly is true, conversations have
+  // message ids instead of messages.
+  public void mergeMessagesAndComputeKeywords(List<Message> messages,
+      MessageAnalysisContext context, TokenizedCorpus corpus,
+      boolean summaryOnly, CancellationSignal signal,
+      Consumer<Conversation> consumer) {
+    // Words are handled as ids of this vocabulary until the result is built.
+    Vocabulary vocabulary = new Vocabulary();
+    DecayedWordStats wordStats = this.wordStats;
+    WordFrequencyModel model = wordStats != null ? wordStats
+        : new NLPContextWordFrequencyModel(context.getNlpContext());
+    List<List<Message>> buckets = new ArrayList<>();
     long currentTimeBucketIndex = -1;
-    Conversation.Builder currentConversationBuilder = null;
+    List<Message> currentMessages = null;
     for (Message message : messages) {
       long timeBucketIndex = message.getTimestampSeconds()
           / context.getTimeBucketSeconds();
       if (timeBucketIndex != currentTimeBucketIndex) {
-        if (currentConversationBuilder != null) {
-          Conversation conversation = currentConversationBuilder.build();
-          conversation = analyzeConversation(conversation,
-              context.getNlpContext(), context.getKeywordLimit());
-          conversations.add(conversation);
-        }
-        currentConversationBuilder = Conversation.newBuilder();
+        currentMessages = new ArrayList<>();
+        buckets.add(currentMessages);
         currentTimeBucketIndex = timeBucketIndex;
       }
-      currentConversationBuilder.addMessage(message);
+      currentMessages.add(message);
+    }
+    BucketCache bucketCache = wordStats == null && corpus == null
+        ? this.bucketCache : null;
+    byte[] contextDigest = bucketCache != null
+        ? BucketCache.digest(context.getNlpContext()) : null;
+    // Read before analyzing, so that buckets analyzed while the stop words
+    // change are never reused.
+    long stopWordsVersion = nlpUtil.getStopWordsVersion();
+    LinkedList<AnalyzedConversation> conversations = new LinkedList<>();
+    for (List<Message> bucket : buckets) {
+      if (bucketCache == null) {
+        conversations.add(analyzeConversation(bucket, model,
+            context.getKeywordLimit(), wordStats != null, corpus, vocabulary,
+            signal));
+        continue;
+      }
+      BucketCache.Key key = bucketCache.createKey(bucket, contextDigest,
+          context.getKeywordLimit(), stopWordsVersion);
+      BucketCache.Bucket cachedBucket = bucketCache.get(key);
+      if (cachedBucket != null) {
+        CancelledException.throwIfCancelled(signal);
+        conversations.add(
+            AnalyzedConversation.fromBucket(bucket, cachedBucket, vocabulary));
+      } else {
+        AnalyzedConversation conversation = analyzeConversation(bucket, model,
+            context.getKeywordLimit(), false, null, vocabulary, signal);
+        bucketCache.put(key, conversation.toBucket(vocabulary));
+        conversations.add(conversation);
+      }
     }
-    // Handle the last one.
-    if (currentConversationBuilder != null) {
-      Conversation conversation = currentConversationBuilder.build();
-      conversation = analyzeConversation(conversation, context.getNlpContext(),
-          context.getKeywordLimit());
-      conversations.add(conversation);
+    if (wordStats != null) {
+      // Only once all the conversations are scored, so that they are scored
+      // against the same stats.
+      for (AnalyzedConversation conversation : conversations) {
+        wordStats.add(conversation.wordCounts, vocabulary,
+            conversation.endTimestamp);
+        conversation.wordCounts = null;
+      }
     }
+    long startNanos = System.nanoTime();
+    int numConversations = conversations.size();
     conversations = mergeConversations(conversations,
-        context.getCommonKeywordThreshold(), context.getKeywordLimit());
-    ArrayList<Conversation> result = new ArrayList<>();
+        context.getCommonKeywordThreshold(), context.getSimilarityThreshold(),
+        context.getKeywordLimit(), vocabulary, signal);
+    stageRecorder.record(StageRecorder.MERGE_CONVERSATIONS,
+        System.nanoTime() - startNanos, numConversations);
+    startNanos = System.nanoTime();
+    numConversations = conversations.size();
     // Remove the Conversations with too few messages or no keyword.
-    for (Conversation conversation : conversations) {
-      if (conversation.getMessageCount() < context
+    while (!conversations.isEmpty()) {
+      CancelledException.throwIfCancelled(signal);
+      AnalyzedConversation conversation = conversations.removeFirst();
+      if (conversation.messages.size() < context
           .getMinMessagesPerConversation()
-          || conversation.getKeywordCount() == 0) {
+          || conversation.keywords.size() == 0) {
         continue;
       }
-      result.add(conversation);
+      consumer.accept(conversation.toConversation(vocabulary, summaryOnly));
     }
-    return result;
+    stageRecorder.record(StageRecorder.BUILD_CONVERSATIONS,
+        System.nanoTime() - startNanos, numConversations);
   }
 
 }
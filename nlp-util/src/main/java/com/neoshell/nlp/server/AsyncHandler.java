@@ -0,0 +1,192 @@
+package com.neoshell.nlp.server;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+// Hands log records over to a single writer thread through a bounded
+// lock-free queue, so that logging threads never wait for disk I/O (unless
+// the queue is full and the overflow policy is BLOCK). The writer publishes
+// records to the target handler in batches and flushes once per batch. It
+// parks while the queue is empty and is unparked by the next record.
+public class AsyncHandler extends Handler implements AsyncHandlerMXBean {
+
+  public enum OverflowPolicy {
+    // Drops the record and counts it.
+    DROP,
+    // Waits until there is room in the queue.
+    BLOCK
+  }
+
+  private static final int MAX_BATCH_SIZE = 256;
+  private static final long CLOSE_TIMEOUT_MILLIS = 5000L;
+
+  private final Handler target;
+  private final OverflowPolicy overflowPolicy;
+  private final RingBuffer<LogRecord> queue;
+  private final LongAdder droppedCount = new LongAdder();
+  private final Thread writerThread;
+  private volatile boolean isClosed = false;
+  // Set by the writer before it parks, so that publish() only unparks it
+  // when it may be idle.
+  private volatile boolean isWriterParked = false;
+  // Waited on by flush() and by blocked producers, notified by the writer
+  // after each batch.
+  private final Object writtenMonitor = new Object();
+  // Records written and flushed so far. Guarded by writtenMonitor.
+  private long writtenCount = 0L;
+  private boolean isWriterDone = false;
+
+  public AsyncHandler(Handler target, int queueCapacity,
+      OverflowPolicy overflowPolicy) {
+    this.target = target;
+    this.overflowPolicy = overflowPolicy;
+    this.queue = new RingBuffer<>(queueCapacity);
+    setLevel(target.getLevel());
+    writerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeLoop();
+      }
+    }, "async-log-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  @Override
+  public void publish(LogRecord record) {
+    if (isClosed || !isLoggable(record)) {
+      return;
+    }
+    // The caller is inferred lazily from the stack, which would be the writer
+    // thread's stack if it was done later.
+    record.getSourceMethodName();
+    if (!queue.offer(record) && !offerWhenFull(record)) {
+      droppedCount.increment();
+      return;
+    }
+    if (isWriterParked) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  // Returns once the records queued so far have been written and flushed, or
+  // the writer has stopped.
+  @Override
+  public void flush() {
+    // Includes records whose offer is still in progress.
+    long queuedCount = queue.getOfferCount();
+    synchronized (writtenMonitor) {
+      while (writtenCount < queuedCount && !isWriterDone) {
+        try {
+          writtenMonitor.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  // Writes the remaining records and closes the target handler.
+  @Override
+  public void close() {
+    isClosed = true;
+    LockSupport.unpark(writerThread);
+    synchronized (writtenMonitor) {
+      // Blocked producers drop their records.
+      writtenMonitor.notifyAll();
+    }
+    try {
+      writerThread.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    target.close();
+  }
+
+  @Override
+  public long getDroppedCount() {
+    return droppedCount.sum();
+  }
+
+  @Override
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  @Override
+  public int getQueueCapacity() {
+    return queue.capacity();
+  }
+
+  // Returns false if the record must be dropped.
+  private boolean offerWhenFull(LogRecord record) {
+    if (overflowPolicy == OverflowPolicy.DROP) {
+      return false;
+    }
+    synchronized (writtenMonitor) {
+      while (!queue.offer(record)) {
+        if (isClosed || isWriterDone) {
+          return false;
+        }
+        try {
+          writtenMonitor.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private void writeLoop() {
+    try {
+      writeBatches();
+    } finally {
+      synchronized (writtenMonitor) {
+        isWriterDone = true;
+        writtenMonitor.notifyAll();
+      }
+    }
+  }
+
+  private void writeBatches() {
+    while (true) {
+      // Read the flag before draining, so that nothing published before
+      // close() is left behind.
+      boolean isLastRound = isClosed;
+      int batchSize = 0;
+      LogRecord record;
+      while (batchSize < MAX_BATCH_SIZE && (record = queue.poll()) != null) {
+        try {
+          target.publish(record);
+        } catch (RuntimeException e) {
+          reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+        batchSize++;
+      }
+      if (batchSize > 0) {
+        target.flush();
+        synchronized (writtenMonitor) {
+          writtenCount += batchSize;
+          writtenMonitor.notifyAll();
+        }
+      } else if (isLastRound) {
+        return;
+      } else {
+        isWriterParked = true;
+        // Check again, since a record offered before the flag was set did not
+        // unpark this thread.
+        if (queue.size() == 0 && !isClosed) {
+          LockSupport.park(this);
+        }
+        isWriterParked = false;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,11 @@
+package com.neoshell.nlp.server;
+
+public interface AsyncHandlerMXBean {
+
+  long getDroppedCount();
+
+  int getQueueSize();
+
+  int getQueueCapacity();
+
+}
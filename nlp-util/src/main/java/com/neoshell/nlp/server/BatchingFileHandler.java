@@ -0,0 +1,35 @@
+package com.neoshell.nlp.server;
+
+import java.io.IOException;
+import java.util.logging.FileHandler;
+import java.util.logging.LogRecord;
+
+// FileHandler flushes after every record. This one only flushes when flush()
+// is called from outside, e.g. once per batch by AsyncHandler.
+class BatchingFileHandler extends FileHandler {
+
+  private boolean isPublishing = false;
+
+  BatchingFileHandler(String pattern, int limit, int count, boolean append)
+      throws IOException {
+    super(pattern, limit, count, append);
+  }
+
+  @Override
+  public synchronized void publish(LogRecord record) {
+    isPublishing = true;
+    try {
+      super.publish(record);
+    } finally {
+      isPublishing = false;
+    }
+  }
+
+  @Override
+  public synchronized void flush() {
+    if (!isPublishing) {
+      super.flush();
+    }
+  }
+
+}
@@ -8,6 +8,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
+import javax.management.ObjectName;
+
 public class CustomizedLogger {
 
   private static final String LOG_DIR_NAME = "log";
@@ -20,13 +22,9 @@ public class CustomizedLogger {
     String classDir = getClassDir(c);
     Logger logger = Logger.getLogger(c.getName());
     if (logger.getHandlers().length == 0) {
-      File logDir = new File(classDir + "/" + LOG_DIR_NAME);
-      if (!logDir.exists()) {
-        logDir.mkdirs();
-      }
       FileHandler fileHandler = new FileHandler(
-          classDir + "/" + LOG_DIR_NAME + "/" + fileNamePattern, LOG_LIMIT,
-          LOG_COUNT, LOG_APPEND);
+          getLogFilePattern(classDir, fileNamePattern), LOG_LIMIT, LOG_COUNT,
+          LOG_APPEND);
       fileHandler.setLevel(Level.INFO);
       fileHandler.setFormatter(new SimpleFormatter());
       logger.addHandler(fileHandler);
@@ -34,6 +32,39 @@ public class CustomizedLogger {
     return logger;
   }
 
+  // Same as getLogger(), but records are written to disk by a background
+  // thread. Up to queueCapacity records can be pending. When the queue is
+  // full, overflowPolicy decides whether records are dropped or the logging
+  // thread waits.
+  public static Logger getAsyncLogger(Class<?> c, String fileNamePattern,
+      int queueCapacity, AsyncHandler.OverflowPolicy overflowPolicy)
+          throws URISyntaxException, SecurityException, IOException {
+    String classDir = getClassDir(c);
+    Logger logger = Logger.getLogger(c.getName());
+    if (logger.getHandlers().length == 0) {
+      FileHandler fileHandler = new BatchingFileHandler(
+          getLogFilePattern(classDir, fileNamePattern), LOG_LIMIT, LOG_COUNT,
+          LOG_APPEND);
+      fileHandler.setLevel(Level.INFO);
+      fileHandler.setFormatter(new SimpleFormatter());
+      AsyncHandler asyncHandler = new AsyncHandler(fileHandler, queueCapacity,
+          overflowPolicy);
+      ServerMetrics.registerMBean(asyncHandler,
+          "type=Logging,logger=" + ObjectName.quote(c.getName()));
+      logger.addHandler(asyncHandler);
+    }
+    return logger;
+  }
+
+  private static String getLogFilePattern(String classDir,
+      String fileNamePattern) {
+    File logDir = new File(classDir + "/" + LOG_DIR_NAME);
+    if (!logDir.exists()) {
+      logDir.mkdirs();
+    }
+    return classDir + "/" + LOG_DIR_NAME + "/" + fileNamePattern;
+  }
+
   private static String getClassDir(Class<?> c) throws URISyntaxException {
     boolean isWindows = System.getProperty("os.name").contains("indow");
     String classDir = c.getProtectionDomain().getCodeSource().getLocation()
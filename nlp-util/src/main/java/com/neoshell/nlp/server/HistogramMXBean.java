@@ -0,0 +1,19 @@
+package com.neoshell.nlp.server;
+
+public interface HistogramMXBean {
+
+  long getCount();
+
+  long getSum();
+
+  long getMax();
+
+  double getMean();
+
+  long getP50();
+
+  long getP90();
+
+  long getP99();
+
+}
@@ -0,0 +1,48 @@
+package com.neoshell.nlp.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+// Serves ServerMetrics as plain text on http://localhost:<port>/metrics.
+public class MetricsHttpServer {
+
+  private final HttpServer httpServer;
+
+  public MetricsHttpServer(int port, final ServerMetrics metrics)
+      throws IOException {
+    httpServer = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    httpServer.createContext("/metrics", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = metrics.toText().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+            "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(body);
+        os.close();
+      }
+    });
+  }
+
+  public void start() {
+    httpServer.start();
+  }
+
+  public void stop() {
+    httpServer.stop(0);
+  }
+
+  public int getPort() {
+    return httpServer.getAddress().getPort();
+  }
+
+}
@@ -0,0 +1,110 @@
+package com.neoshell.nlp.server;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.protobuf.MessageLite;
+
+// Records latency, payload sizes, errors, aborted and in-flight calls of
+// every RPC.
+public class MetricsInterceptor implements ServerInterceptor {
+
+  private final ServerMetrics metrics;
+
+  public MetricsInterceptor(ServerMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+      ServerCall<ReqT, RespT> call, Metadata headers,
+      ServerCallHandler<ReqT, RespT> next) {
+    final RpcMetrics rpcMetrics = metrics
+        .getRpcMetrics(call.getMethodDescriptor().getFullMethodName());
+    final long startNanos = System.nanoTime();
+    final AtomicBoolean finished = new AtomicBoolean();
+    rpcMetrics.onStart();
+    ServerCall<ReqT, RespT> monitoringCall = new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(
+        call) {
+      @Override
+      public void sendMessage(RespT message) {
+        rpcMetrics.recordResponseSize(getSerializedSize(message));
+        super.sendMessage(message);
+      }
+
+      @Override
+      public void close(Status status, Metadata trailers) {
+        // The service closes the call with CANCELLED when it stops working on
+        // a cancelled call.
+        if (status.getCode() == Status.Code.CANCELLED) {
+          rpcMetrics.onAborted();
+        }
+        // onComplete() is not called if the call fails.
+        if (!status.isOk() && finished.compareAndSet(false, true)) {
+          rpcMetrics.onFinish(false, System.nanoTime() - startNanos);
+        }
+        super.close(status, trailers);
+      }
+    };
+    return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(
+        next.startCall(monitoringCall, headers)) {
+      @Override
+      public void onMessage(ReqT message) {
+        rpcMetrics.recordRequestSize(getSerializedSize(message));
+        try {
+          super.onMessage(message);
+        } catch (RuntimeException e) {
+          onFailure();
+          throw e;
+        }
+      }
+
+      @Override
+      public void onHalfClose() {
+        try {
+          super.onHalfClose();
+        } catch (RuntimeException e) {
+          onFailure();
+          throw e;
+        }
+      }
+
+      @Override
+      public void onComplete() {
+        if (finished.compareAndSet(false, true)) {
+          rpcMetrics.onFinish(true, System.nanoTime() - startNanos);
+        }
+        super.onComplete();
+      }
+
+      @Override
+      public void onCancel() {
+        onFailure();
+        super.onCancel();
+      }
+
+      // gRPC closes the call itself if the service throws, without calling
+      // close() or any listener method.
+      private void onFailure() {
+        if (finished.compareAndSet(false, true)) {
+          rpcMetrics.onFinish(false, System.nanoTime() - startNanos);
+        }
+      }
+    };
+  }
+
+  private static int getSerializedSize(Object message) {
+    if (message instanceof MessageLite) {
+      return ((MessageLite) message).getSerializedSize();
+    }
+    return 0;
+  }
+
+}
@@ -1,71 +1,178 @@
 package com.neoshell.nlp.server;
 
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+import io.grpc.health.v1.HealthCheckResponse.ServingStatus;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.services.HealthStatusManager;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import io.grpc.util.MutableHandlerRegistry;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang.exception.ExceptionUtils;
 
 import org.ini4j.Wini;
 
+import com.neoshell.nlp.core.CRFSegmenter;
+import com.neoshell.nlp.core.CancellationSignal;
+import com.neoshell.nlp.core.CancelledException;
+import com.neoshell.nlp.core.DecayedWordStats;
+import com.neoshell.nlp.core.DictionarySegmenter;
 import com.neoshell.nlp.core.NLPContext;
 import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.core.ParallelSegmenter;
+import com.neoshell.nlp.core.ScriptAwareSegmenter;
+import com.neoshell.nlp.core.Segmenter;
+import com.neoshell.nlp.core.StageTimings;
 import com.neoshell.nlp.core.WordInfo;
+import com.neoshell.nlp.grpc.CountWordShardReply;
+import com.neoshell.nlp.grpc.CountWordShardRequest;
 import com.neoshell.nlp.grpc.CountWordsReply;
 import com.neoshell.nlp.grpc.CountWordsRequest;
+import com.neoshell.nlp.grpc.DocumentKeywordInfo;
 import com.neoshell.nlp.grpc.GenerateNLPContextReply;
 import com.neoshell.nlp.grpc.GenerateNLPContextRequest;
+import com.neoshell.nlp.grpc.GetKeywordInfoBatchReply;
+import com.neoshell.nlp.grpc.GetKeywordInfoBatchRequest;
 import com.neoshell.nlp.grpc.GetKeywordInfoReply;
 import com.neoshell.nlp.grpc.GetKeywordInfoRequest;
 import com.neoshell.nlp.grpc.IsStopWordReply;
 import com.neoshell.nlp.grpc.IsStopWordRequest;
 import com.neoshell.nlp.grpc.MergeMessagesAndComputeKeywordsReply;
 import com.neoshell.nlp.grpc.MergeMessagesAndComputeKeywordsRequest;
+import com.neoshell.nlp.grpc.MergeMessagesAndComputeKeywordsStreamReply;
 import com.neoshell.nlp.grpc.MessageAnalysisUtilGrpc;
+import com.neoshell.nlp.grpc.NLPUtilAdminGrpc;
 import com.neoshell.nlp.grpc.NLPUtilGrpc;
+import com.neoshell.nlp.grpc.ReloadStopWordsReply;
+import com.neoshell.nlp.grpc.ReloadStopWordsRequest;
 import com.neoshell.nlp.grpc.RemoveStopWordsReply;
 import com.neoshell.nlp.grpc.RemoveStopWordsRequest;
+import com.neoshell.nlp.grpc.SegmentOffsetsReply;
+import com.neoshell.nlp.grpc.SegmentOffsetsRequest;
 import com.neoshell.nlp.grpc.SegmentReply;
 import com.neoshell.nlp.grpc.SegmentRequest;
+import com.neoshell.nlp.grpc.TextSegmentation;
+import com.neoshell.nlp.grpc.UpdateNLPContextReply;
+import com.neoshell.nlp.grpc.UpdateNLPContextRequest;
+import com.neoshell.nlp.messaging.BucketCache;
 import com.neoshell.nlp.messaging.Conversation;
 import com.neoshell.nlp.messaging.Message;
 import com.neoshell.nlp.messaging.MessageAnalysisContext;
 import com.neoshell.nlp.messaging.MessageAnalysisUtil;
 
-import edu.stanford.nlp.ie.crf.CRFClassifier;
-import edu.stanford.nlp.ling.CoreLabel;
-
 public class NLPUtilServer {
 
   private static final String LOG_FILE_NAME_PATTERN = "server_%g.log";
-  private static Logger logger;
+  private static final int DEFAULT_LOG_QUEUE_CAPACITY = 8192;
+  private static final int DEFAULT_PARALLEL_SEGMENT_CHUNK_LENGTH = 1000;
+  private static final String DICTIONARY_ENGINE = "Dictionary";
+  private static final int DEFAULT_WORD_STATS_MAX_WORDS = 1000000;
+  private static final int DEFAULT_BUCKET_CACHE_MAX_BUCKETS = 10000;
+  // Replaced by a file logger in main(). The services can also be embedded,
+  // e.g. in tests, without one.
+  private static Logger logger = Logger
+      .getLogger(NLPUtilServer.class.getName());
 
   private NLPUtil nlpUtil;
   private MessageAnalysisUtil messageAnalysisUtil;
+  private ExecutorService keywordBatchExecutor;
   private int port;
+  private int metricsHttpPort;
   private Server server;
+  private Server unixSocketServer;
+  private HealthStatusManager healthStatusManager;
+  private MutableHandlerRegistry handlerRegistry;
+  private ServerMetrics metrics;
+  private MetricsHttpServer metricsHttpServer;
+
+  // Created on first use of a Unix socket, and shared by all the servers.
+  private static class UnixSocketEventLoops {
+    static final EventLoopGroup BOSS = new EpollEventLoopGroup(1,
+        new DefaultThreadFactory("nlp-util-unix-boss", true));
+    static final EventLoopGroup WORKER = new EpollEventLoopGroup(0,
+        new DefaultThreadFactory("nlp-util-unix-worker", true));
+  }
 
   public static Logger getLogger() {
     return logger;
   }
 
-  private void start(String configFile) throws IOException {
-    loadConfig(configFile);
-    server = ServerBuilder.forPort(port).addService(new NLPUtilImpl(nlpUtil))
-        .addService(new MessageAnalysisUtilImpl(messageAnalysisUtil)).build()
-        .start();
+  // Returns once the server is ready. Calls are rejected with UNAVAILABLE
+  // until then.
+  void start(String configFile) throws IOException, InterruptedException {
+    Wini config = new Wini(new File(configFile));
+    port = config.get("Server", "Port", int.class);
+    metricsHttpPort = getInt(config, "Metrics", "HttpPort", 0);
+    metrics = new ServerMetrics();
+    metrics.enableJmx();
+
+    // Open the port before loading the models, so that the health service
+    // can report the server as not ready in the meantime.
+    healthStatusManager = new HealthStatusManager();
+    setServingStatus(ServingStatus.NOT_SERVING);
+    handlerRegistry = new MutableHandlerRegistry();
+    handlerRegistry.addService(
+        createUnavailableService(NLPUtilGrpc.getServiceDescriptor()));
+    handlerRegistry.addService(createUnavailableService(
+        MessageAnalysisUtilGrpc.getServiceDescriptor()));
+    handlerRegistry.addService(
+        createUnavailableService(NLPUtilAdminGrpc.getServiceDescriptor()));
+    server = createServerBuilder(port)
+        .addService(healthStatusManager.getHealthService())
+        .fallbackHandlerRegistry(handlerRegistry).build().start();
     logger.info("Server started, listening on " + port);
+    String unixSocketPath = config.get("Server", "UnixSocketPath");
+    if (unixSocketPath != null && !unixSocketPath.trim().isEmpty()) {
+      unixSocketServer = unixSocketServerBuilder(
+          new File(unixSocketPath.trim()))
+              .addService(healthStatusManager.getHealthService())
+              .fallbackHandlerRegistry(handlerRegistry).build().start();
+      logger.info("Server started, listening on " + unixSocketPath.trim());
+    }
+    if (metricsHttpPort > 0) {
+      metricsHttpServer = new MetricsHttpServer(metricsHttpPort, metrics);
+      metricsHttpServer.start();
+      logger.info("Metrics available at http://localhost:" + metricsHttpPort
+          + "/metrics");
+    }
     Runtime.getRuntime().addShutdownHook(new Thread() {
       @Override
       public void run() {
@@ -77,52 +184,378 @@ public class NLPUtilServer {
         System.err.println("Server shut down");
       }
     });
+
+    try {
+      long startMillis = System.currentTimeMillis();
+      loadConfig(config);
+      nlpUtil.setStageRecorder(metrics);
+      messageAnalysisUtil.setStageRecorder(metrics);
+      logger.info("Loaded models in "
+          + (System.currentTimeMillis() - startMillis) + " ms");
+      startMillis = System.currentTimeMillis();
+      warmUp(config);
+      logger.info("Warmed up in "
+          + (System.currentTimeMillis() - startMillis) + " ms");
+      // Warm-up calls are not real traffic.
+      metrics.reset();
+      messageAnalysisUtil.setWordStats(createWordStats(config));
+      messageAnalysisUtil.setBucketCache(createBucketCache(config));
+      keywordBatchExecutor = createKeywordBatchExecutor(config);
+
+      MetricsInterceptor metricsInterceptor = new MetricsInterceptor(metrics);
+      handlerRegistry.addService(ServerInterceptors
+          .intercept(new NLPUtilImpl(nlpUtil, keywordBatchExecutor),
+              metricsInterceptor));
+      handlerRegistry.addService(ServerInterceptors.intercept(
+          new MessageAnalysisUtilImpl(messageAnalysisUtil),
+          metricsInterceptor));
+      handlerRegistry.addService(ServerInterceptors.intercept(
+          new NLPUtilAdminImpl(nlpUtil, configFile), metricsInterceptor));
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      // Don't leave a server that never gets ready behind.
+      stop();
+      throw e;
+    }
+    setServingStatus(ServingStatus.SERVING);
+    logger.info("Server ready");
   }
 
-  private void stop() {
+  void stop() {
+    if (healthStatusManager != null) {
+      setServingStatus(ServingStatus.NOT_SERVING);
+    }
+    if (metricsHttpServer != null) {
+      metricsHttpServer.stop();
+    }
     if (server != null) {
       server.shutdown();
     }
+    if (unixSocketServer != null) {
+      unixSocketServer.shutdown();
+    }
+    if (keywordBatchExecutor != null) {
+      keywordBatchExecutor.shutdown();
+    }
   }
 
   private void blockUntilShutdown() throws InterruptedException {
     if (server != null) {
       server.awaitTermination();
     }
+    if (unixSocketServer != null) {
+      unixSocketServer.awaitTermination();
+    }
   }
 
-  private void loadConfig(String configFile) throws IOException {
-    Wini config = new Wini(new File(configFile));
-    port = config.get("Server", "Port", int.class);
-    Properties props = new Properties();
-    String segmenterDir = config.get("NLP", "StanfordSegmenterDir",
-        String.class);
-    props.setProperty("sighanCorporaDict", segmenterDir);
-    props.setProperty("serDictionary", segmenterDir + "/dict-chris6.ser.gz");
-    props.setProperty("inputEncoding", "UTF-8");
-    props.setProperty("sighanPostProcessing", "true");
-    CRFClassifier<CoreLabel> segmenter = new CRFClassifier<>(props);
-    segmenter.loadClassifierNoExceptions(segmenterDir + "/ctb.gz", props);
-
-    String stopWordsEnglishFilePath = config.get("NLP", "StopWordsEnglish",
-        String.class);
-    List<String> stopWordsEnglish = readTextLines(stopWordsEnglishFilePath);
-    logger.info("Loaded English stop words from " + stopWordsEnglishFilePath);
-    String stopWordsChineseFilePath = config.get("NLP", "StopWordsChinese",
-        String.class);
-    List<String> stopWordsChinese = readTextLines(stopWordsChineseFilePath);
-    logger.info("Loaded Chinese stop words from " + stopWordsChineseFilePath);
-
-    nlpUtil = new NLPUtil(segmenter);
-    nlpUtil.addStopwords(stopWordsEnglish);
-    nlpUtil.addStopwords(stopWordsChinese);
-    messageAnalysisUtil = new MessageAnalysisUtil(nlpUtil);
-  }
-
-  private List<String> readTextLines(String filePath) throws IOException {
+  // Listens on a Unix domain socket, which saves the TCP stack for clients on
+  // the same host. A socket file left behind, e.g. by a server that crashed,
+  // is replaced. Linux only.
+  public static NettyServerBuilder unixSocketServerBuilder(File socketFile)
+      throws IOException {
+    if (!Epoll.isAvailable()) {
+      throw new IllegalStateException("Unix sockets need Netty epoll",
+          Epoll.unavailabilityCause());
+    }
+    if (socketFile.exists() && !socketFile.isFile()
+        && !socketFile.isDirectory()) {
+      Files.delete(socketFile.toPath());
+    }
+    return NettyServerBuilder.forAddress(new DomainSocketAddress(socketFile))
+        .channelType(EpollServerDomainSocketChannel.class)
+        .bossEventLoopGroup(UnixSocketEventLoops.BOSS)
+        .workerEventLoopGroup(UnixSocketEventLoops.WORKER);
+  }
+
+  // Overridden by tests, e.g. to serve in-process.
+  ServerBuilder<?> createServerBuilder(int port) {
+    return ServerBuilder.forPort(port);
+  }
+
+  ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  private void setServingStatus(ServingStatus status) {
+    // The empty service name stands for the whole server.
+    healthStatusManager.setStatus("", status);
+    healthStatusManager.setStatus(NLPUtilGrpc.SERVICE_NAME, status);
+    healthStatusManager.setStatus(MessageAnalysisUtilGrpc.SERVICE_NAME,
+        status);
+    healthStatusManager.setStatus(NLPUtilAdminGrpc.SERVICE_NAME, status);
+  }
+
+  // Loads the segmenter model and the stop word files in parallel.
+  private void loadConfig(final Wini config)
+      throws IOException, InterruptedException {
+    final String stopWordsEnglishFilePath = config.get("NLP",
+        "StopWordsEnglish", String.class);
+    final String stopWordsChineseFilePath = config.get("NLP",
+        "StopWordsChinese", String.class);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      Future<Segmenter> segmenterFuture = executor
+          .submit(new Callable<Segmenter>() {
+            @Override
+            public Segmenter call() throws IOException {
+              return loadSegmenter(config);
+            }
+          });
+      Future<List<String>> stopWordsEnglishFuture = executor
+          .submit(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws IOException {
+              return readTextLines(stopWordsEnglishFilePath);
+            }
+          });
+      Future<List<String>> stopWordsChineseFuture = executor
+          .submit(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws IOException {
+              return readTextLines(stopWordsChineseFilePath);
+            }
+          });
+      List<String> stopWordsEnglish = getResult(stopWordsEnglishFuture);
+      logger.info("Loaded English stop words from " + stopWordsEnglishFilePath);
+      List<String> stopWordsChinese = getResult(stopWordsChineseFuture);
+      logger.info("Loaded Chinese stop words from " + stopWordsChineseFilePath);
+      Segmenter segmenter = getResult(segmenterFuture);
+
+      nlpUtil = new NLPUtil(createSegmenter(config, segmenter));
+      nlpUtil.addStopwords(stopWordsEnglish);
+      nlpUtil.addStopwords(stopWordsChinese);
+      messageAnalysisUtil = new MessageAnalysisUtil(nlpUtil);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // Loads the segmentation engine of the config: the Stanford CRF model, or
+  // the faster but less accurate dictionary matching. Overridden by tests.
+  Segmenter loadSegmenter(Wini config) throws IOException {
+    String engine = config.get("NLP", "SegmenterEngine");
+    if (engine != null && engine.trim().equalsIgnoreCase(DICTIONARY_ENGINE)) {
+      String dictionaryFilePath = config.get("NLP", "DictionaryFile").trim();
+      DictionarySegmenter segmenter = DictionarySegmenter
+          .load(new File(dictionaryFilePath));
+      logger.info("Loaded " + segmenter.getNumWords()
+          + " dictionary words from " + dictionaryFilePath);
+      // The dictionary only has Chinese words.
+      return new ScriptAwareSegmenter(segmenter);
+    }
+    String segmenterDir = config.get("NLP", "StanfordSegmenterDir");
+    Segmenter segmenter = CRFSegmenter.load(segmenterDir);
+    logger.info("Loaded Stanford Word Segmenter from " + segmenterDir);
+    if (Boolean.parseBoolean(config.get("NLP", "ScriptAwareSegmentation"))) {
+      segmenter = new ScriptAwareSegmenter(segmenter);
+    }
+    return segmenter;
+  }
+
+  // Segments long texts on several threads if enabled in the config.
+  private static Segmenter createSegmenter(Wini config, Segmenter segmenter) {
+    int minTextLength = getInt(config, "NLP", "ParallelSegmentMinLength", 0);
+    if (minTextLength <= 0) {
+      return segmenter;
+    }
+    int chunkLength = getInt(config, "NLP", "ParallelSegmentChunkLength",
+        DEFAULT_PARALLEL_SEGMENT_CHUNK_LENGTH);
+    int numThreads = getInt(config, "NLP", "ParallelSegmentThreads",
+        Runtime.getRuntime().availableProcessors());
+    logger.info("Segmenting texts of at least " + minTextLength
+        + " chars in chunks of " + chunkLength + " chars on " + numThreads
+        + " threads");
+    return new ParallelSegmenter(segmenter, minTextLength,
+        Math.min(chunkLength, minTextLength), numThreads);
+  }
+
+  // Time-decayed word stats to score keywords against, if enabled in the
+  // config. null otherwise.
+  private static DecayedWordStats createWordStats(Wini config) {
+    int halfLifeSeconds = getInt(config, "WordStats", "HalfLifeSeconds", 0);
+    if (halfLifeSeconds <= 0) {
+      return null;
+    }
+    int maxWords = getInt(config, "WordStats", "MaxWords",
+        DEFAULT_WORD_STATS_MAX_WORDS);
+    logger.info("Scoring keywords against word stats with a half-life of "
+        + halfLifeSeconds + " s and at most " + maxWords + " words");
+    return new DecayedWordStats(halfLifeSeconds, maxWords);
+  }
+
+  // Analyzed time buckets reused across MergeMessagesAndComputeKeywords
+  // calls, if enabled in the config. null otherwise.
+  private static BucketCache createBucketCache(Wini config) {
+    int maxBuckets = getInt(config, "BucketCache", "MaxBuckets",
+        DEFAULT_BUCKET_CACHE_MAX_BUCKETS);
+    if (maxBuckets <= 0) {
+      return null;
+    }
+    logger.info("Caching at most " + maxBuckets + " analyzed time buckets");
+    BucketCache bucketCache = new BucketCache(maxBuckets);
+    ServerMetrics.registerMBean(bucketCache, "type=BucketCache");
+    return bucketCache;
+  }
+
+  // Threads helping the calling threads of GetKeywordInfoBatch, if enabled in
+  // the config. null otherwise.
+  private static ExecutorService createKeywordBatchExecutor(Wini config) {
+    int numThreads = getInt(config, "NLP", "KeywordBatchThreads",
+        Runtime.getRuntime().availableProcessors());
+    if (numThreads <= 0) {
+      return null;
+    }
+    logger.info("Computing keyword batches on " + numThreads + " threads");
+    return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "keyword-batch");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private void warmUp(Wini config) throws IOException {
+    int iterations = getInt(config, "Warmup", "Iterations", 0);
+    if (iterations <= 0) {
+      return;
+    }
+    String corpusFilePath = config.get("Warmup", "CorpusFile");
+    List<String> corpus = corpusFilePath == null
+        || corpusFilePath.trim().isEmpty() ? ServerWarmer.DEFAULT_CORPUS
+            : readTextLines(corpusFilePath.trim());
+    new ServerWarmer(nlpUtil, messageAnalysisUtil).warmUp(corpus, iterations);
+  }
+
+  private static List<String> readStopWords(Wini config) throws IOException {
+    List<String> stopWords = new ArrayList<>();
+    stopWords.addAll(
+        readTextLines(config.get("NLP", "StopWordsEnglish", String.class)));
+    stopWords.addAll(
+        readTextLines(config.get("NLP", "StopWordsChinese", String.class)));
+    return stopWords;
+  }
+
+  private static <T> T getResult(Future<T> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  // Rejects all calls with UNAVAILABLE. Used until the real service is ready.
+  private static ServerServiceDefinition createUnavailableService(
+      ServiceDescriptor serviceDescriptor) {
+    ServerServiceDefinition.Builder builder = ServerServiceDefinition
+        .builder(serviceDescriptor);
+    for (MethodDescriptor<?, ?> method : serviceDescriptor.getMethods()) {
+      addUnavailableMethod(builder, method);
+    }
+    return builder.build();
+  }
+
+  private static <ReqT, RespT> void addUnavailableMethod(
+      ServerServiceDefinition.Builder builder,
+      MethodDescriptor<ReqT, RespT> method) {
+    builder.addMethod(method, new ServerCallHandler<ReqT, RespT>() {
+      @Override
+      public ServerCall.Listener<ReqT> startCall(ServerCall<ReqT, RespT> call,
+          Metadata headers) {
+        call.close(Status.UNAVAILABLE.withDescription("Server is not ready"),
+            new Metadata());
+        return new ServerCall.Listener<ReqT>() {
+        };
+      }
+    });
+  }
+
+  // Cancelled once the client cancels the current call or its deadline
+  // passes.
+  private static CancellationSignal getCancellationSignal() {
+    final Context context = Context.current();
+    return new CancellationSignal() {
+      @Override
+      public boolean isCancelled() {
+        return context.isCancelled();
+      }
+    };
+  }
+
+  // Starts collecting the stages run by the current call if the request asks
+  // for it. null otherwise. Must be stopped by stopTimings().
+  private static StageTimings startTimings(boolean includeTiming) {
+    return includeTiming ? StageTimings.start() : null;
+  }
+
+  private static void stopTimings(StageTimings timings) {
+    if (timings != null) {
+      timings.stop();
+    }
+  }
+
+  // Sends the replies only while the call is ready, i.e. as fast as the
+  // client reads them instead of buffering them all in the transport, then
+  // completes the call. Stops if the call is cancelled. Must be called by the
+  // service method, since the handlers can't be set once it returns.
+  private static <T> void sendWhenReady(
+      final ServerCallStreamObserver<T> responseObserver,
+      final Queue<T> replies) {
+    // Run by the call's serialized executor, like the service method.
+    Runnable onReady = new Runnable() {
+      private boolean isCompleted = false;
+
+      @Override
+      public void run() {
+        while (!isCompleted && !responseObserver.isCancelled()) {
+          if (replies.isEmpty()) {
+            isCompleted = true;
+            responseObserver.onCompleted();
+          } else if (responseObserver.isReady()) {
+            responseObserver.onNext(replies.poll());
+          } else {
+            // Run again once the client has read enough.
+            return;
+          }
+        }
+      }
+    };
+    responseObserver.setOnReadyHandler(onReady);
+    responseObserver.setOnCancelHandler(new Runnable() {
+      @Override
+      public void run() {
+        replies.clear();
+      }
+    });
+    // The call may have become ready before the handler was set.
+    onReady.run();
+  }
+
+  // The client does not see this status, but MetricsInterceptor counts the
+  // call as aborted.
+  private static void onCancelled(StreamObserver<?> responseObserver) {
+    responseObserver.onError(Status.CANCELLED
+        .withDescription("Call cancelled before completion")
+        .asRuntimeException());
+  }
+
+  private static int getInt(Wini config, String section, String option,
+      int defaultValue) {
+    String value = config.get(section, option);
+    return value == null || value.trim().isEmpty() ? defaultValue
+        : Integer.parseInt(value.trim());
+  }
+
+  private static List<String> readTextLines(String filePath)
+      throws IOException {
     List<String> lines = new ArrayList<>();
     BufferedReader br = new BufferedReader(
-        new InputStreamReader(new FileInputStream(filePath)));
+        new InputStreamReader(new FileInputStream(filePath),
+            StandardCharsets.UTF_8));
     String line = null;
     while ((line = br.readLine()) != null) {
       lines.add(line);
@@ -131,17 +564,33 @@ public class NLPUtilServer {
     return lines;
   }
 
+  private static Logger createLogger(String configFile) throws Exception {
+    Wini config = new Wini(new File(configFile));
+    if (!Boolean.parseBoolean(config.get("Log", "Async"))) {
+      return CustomizedLogger.getLogger(NLPUtilServer.class,
+          LOG_FILE_NAME_PATTERN);
+    }
+    int queueCapacity = getInt(config, "Log", "QueueCapacity",
+        DEFAULT_LOG_QUEUE_CAPACITY);
+    String overflowPolicy = config.get("Log", "OverflowPolicy");
+    return CustomizedLogger.getAsyncLogger(NLPUtilServer.class,
+        LOG_FILE_NAME_PATTERN, queueCapacity,
+        overflowPolicy == null || overflowPolicy.trim().isEmpty()
+            ? AsyncHandler.OverflowPolicy.DROP
+            : AsyncHandler.OverflowPolicy
+                .valueOf(overflowPolicy.trim().toUpperCase()));
+  }
+
   public static void main(String[] args) {
+    String configFilePath = args.length >= 1 ? args[0] : "config.ini";
     try {
-      logger = CustomizedLogger.getLogger(NLPUtilServer.class,
-          LOG_FILE_NAME_PATTERN);
+      logger = createLogger(configFilePath);
     } catch (Exception e) {
       e.printStackTrace();
       System.err.println("Failed to create logger.");
       return;
     }
     try {
-      String configFilePath = args.length >= 1 ? args[0] : "config.ini";
       final NLPUtilServer server = new NLPUtilServer();
       server.start(configFilePath);
       server.blockUntilShutdown();
@@ -150,32 +599,102 @@ public class NLPUtilServer {
     }
   }
 
-  static class NLPUtilImpl extends NLPUtilGrpc.NLPUtilImplBase {
+  public static class NLPUtilImpl extends NLPUtilGrpc.NLPUtilImplBase {
 
     private NLPUtil nlpUtil;
+    private ExecutorService keywordBatchExecutor;
 
     public NLPUtilImpl(NLPUtil nlpUtil) {
+      this(nlpUtil, null);
+    }
+
+    // GetKeywordInfoBatch is also run on the threads of keywordBatchExecutor
+    // if it is not null.
+    public NLPUtilImpl(NLPUtil nlpUtil, ExecutorService keywordBatchExecutor) {
       this.nlpUtil = nlpUtil;
+      this.keywordBatchExecutor = keywordBatchExecutor;
     }
 
     @Override
     public void generateNLPContext(GenerateNLPContextRequest req,
         StreamObserver<GenerateNLPContextReply> responseObserver) {
       Map<String, Long> globalWordCount = req.getGlobalWordCountMap();
-      NLPContext nlpContext = nlpUtil.generateNLPContext(globalWordCount);
+      NLPContext nlpContext = nlpUtil.generateNLPContext(globalWordCount,
+          req.getLazyScores());
       GenerateNLPContextReply reply = GenerateNLPContextReply.newBuilder()
           .setNlpContext(nlpContext).build();
       responseObserver.onNext(reply);
       responseObserver.onCompleted();
     }
 
+    @Override
+    public void updateNLPContext(UpdateNLPContextRequest req,
+        StreamObserver<UpdateNLPContextReply> responseObserver) {
+      List<String> removedWords = new ArrayList<>();
+      NLPContext nlpContext = nlpUtil.updateNLPContext(req.getNlpContext(),
+          req.getWordCountDeltaMap(), removedWords);
+      UpdateNLPContextReply reply = UpdateNLPContextReply.newBuilder()
+          .setNlpContext(nlpContext).addAllRemovedWord(removedWords).build();
+      responseObserver.onNext(reply);
+      responseObserver.onCompleted();
+    }
+
     @Override
     public void segment(SegmentRequest req,
         StreamObserver<SegmentReply> responseObserver) {
       List<String> texts = req.getTextList();
-      List<String> words = nlpUtil.segment(texts);
-      SegmentReply reply = SegmentReply.newBuilder().addAllWord(words).build();
-      responseObserver.onNext(reply);
+      StageTimings timings = startTimings(req.getIncludeTiming());
+      List<String> words;
+      try {
+        words = nlpUtil.segment(texts, getCancellationSignal());
+      } catch (CancelledException e) {
+        onCancelled(responseObserver);
+        return;
+      } finally {
+        stopTimings(timings);
+      }
+      SegmentReply.Builder replyBuilder = SegmentReply.newBuilder()
+          .addAllWord(words);
+      if (timings != null) {
+        replyBuilder.setTiming(timings.toRequestTiming());
+      }
+      responseObserver.onNext(replyBuilder.build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void segmentOffsets(SegmentOffsetsRequest req,
+        StreamObserver<SegmentOffsetsReply> responseObserver) {
+      boolean includeWordIds = req.getIncludeWordIds();
+      SegmentOffsetsReply.Builder replyBuilder = SegmentOffsetsReply
+          .newBuilder();
+      Map<String, Integer> vocabulary = new HashMap<>();
+      for (String text : req.getTextList()) {
+        TextSegmentation.Builder segmentationBuilder = TextSegmentation
+            .newBuilder();
+        List<String> words = nlpUtil.segment(text);
+        int[] offsets = NLPUtil.getWordOffsets(text, words);
+        if (offsets != null) {
+          for (int offset : offsets) {
+            segmentationBuilder.addOffset(offset);
+          }
+        } else {
+          segmentationBuilder.addAllWord(words);
+        }
+        if (includeWordIds) {
+          for (String word : words) {
+            Integer wordId = vocabulary.get(word);
+            if (wordId == null) {
+              wordId = vocabulary.size();
+              vocabulary.put(word, wordId);
+              replyBuilder.addVocabulary(word);
+            }
+            segmentationBuilder.addWordId(wordId);
+          }
+        }
+        replyBuilder.addSegmentation(segmentationBuilder);
+      }
+      responseObserver.onNext(replyBuilder.build());
       responseObserver.onCompleted();
     }
 
@@ -193,10 +712,16 @@ public class NLPUtilServer {
     @Override
     public void removeStopWords(RemoveStopWordsRequest req,
         StreamObserver<RemoveStopWordsReply> responseObserver) {
-      List<String> words = req.getWordList();
-      words = nlpUtil.removeStopWords(words);
-      RemoveStopWordsReply reply = RemoveStopWordsReply.newBuilder()
-          .addAllWord(words).build();
+      RemoveStopWordsReply.Builder replyBuilder = RemoveStopWordsReply
+          .newBuilder();
+      if (req.getWordCount() > 0) {
+        replyBuilder.addAllWord(nlpUtil.removeStopWords(req.getWordList()));
+      }
+      if (req.getWordUtf8Count() > 0) {
+        replyBuilder.addAllWordUtf8(
+            nlpUtil.removeStopWordsUtf8(req.getWordUtf8List()));
+      }
+      RemoveStopWordsReply reply = replyBuilder.build();
       responseObserver.onNext(reply);
       responseObserver.onCompleted();
     }
@@ -207,9 +732,31 @@ public class NLPUtilServer {
       List<String> texts = req.getTextList();
       boolean countStopWords = req.getCountStopWords();
       int limit = req.getLimit();
-      List<WordInfo> wordCountList = nlpUtil.countWords(texts, countStopWords,
-          limit);
-      CountWordsReply reply = CountWordsReply.newBuilder()
+      StageTimings timings = startTimings(req.getIncludeTiming());
+      List<WordInfo> wordCountList;
+      try {
+        wordCountList = req.hasApproximate()
+            ? nlpUtil.countWords(texts, countStopWords, limit,
+                req.getApproximate())
+            : nlpUtil.countWords(texts, countStopWords, limit);
+      } finally {
+        stopTimings(timings);
+      }
+      CountWordsReply.Builder replyBuilder = CountWordsReply.newBuilder()
+          .addAllWordCount(wordCountList);
+      if (timings != null) {
+        replyBuilder.setTiming(timings.toRequestTiming());
+      }
+      responseObserver.onNext(replyBuilder.build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void countWordShard(CountWordShardRequest req,
+        StreamObserver<CountWordShardReply> responseObserver) {
+      List<WordInfo> wordCountList = nlpUtil
+          .countWordShard(req.getTextList(), req.getCountStopWords());
+      CountWordShardReply reply = CountWordShardReply.newBuilder()
           .addAllWordCount(wordCountList).build();
       responseObserver.onNext(reply);
       responseObserver.onCompleted();
@@ -221,17 +768,47 @@ public class NLPUtilServer {
       List<String> words = req.getWordList();
       NLPContext context = req.getNlpContext();
       int limit = req.getLimit();
-      List<WordInfo> keywordInfo = nlpUtil.getKeywordInfo(words, context,
-          limit);
-      GetKeywordInfoReply reply = GetKeywordInfoReply.newBuilder()
-          .addAllKeywordInfo(keywordInfo).build();
-      responseObserver.onNext(reply);
+      StageTimings timings = startTimings(req.getIncludeTiming());
+      List<WordInfo> keywordInfo;
+      try {
+        keywordInfo = nlpUtil.getKeywordInfo(words, context, limit);
+      } finally {
+        stopTimings(timings);
+      }
+      GetKeywordInfoReply.Builder replyBuilder = GetKeywordInfoReply
+          .newBuilder().addAllKeywordInfo(keywordInfo);
+      if (timings != null) {
+        replyBuilder.setTiming(timings.toRequestTiming());
+      }
+      responseObserver.onNext(replyBuilder.build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getKeywordInfoBatch(GetKeywordInfoBatchRequest req,
+        StreamObserver<GetKeywordInfoBatchReply> responseObserver) {
+      List<List<WordInfo>> keywordInfoLists;
+      try {
+        keywordInfoLists = nlpUtil.getKeywordInfoBatch(req.getDocumentList(),
+            req.getNlpContext(), req.getLimit(), keywordBatchExecutor,
+            getCancellationSignal());
+      } catch (CancelledException e) {
+        onCancelled(responseObserver);
+        return;
+      }
+      GetKeywordInfoBatchReply.Builder replyBuilder = GetKeywordInfoBatchReply
+          .newBuilder();
+      for (List<WordInfo> keywordInfo : keywordInfoLists) {
+        replyBuilder.addDocument(DocumentKeywordInfo.newBuilder()
+            .addAllKeywordInfo(keywordInfo));
+      }
+      responseObserver.onNext(replyBuilder.build());
       responseObserver.onCompleted();
     }
 
   }
 
-  static class MessageAnalysisUtilImpl
+  public static class MessageAnalysisUtilImpl
       extends MessageAnalysisUtilGrpc.MessageAnalysisUtilImplBase {
 
     private MessageAnalysisUtil messageAnalysisUtil;
@@ -246,10 +823,96 @@ public class NLPUtilServer {
         StreamObserver<MergeMessagesAndComputeKeywordsReply> responseObserver) {
       List<Message> messages = req.getMessageList();
       MessageAnalysisContext context = req.getContext();
-      List<Conversation> conversations = messageAnalysisUtil
-          .mergeMessagesAndComputeKeywords(messages, context);
-      MergeMessagesAndComputeKeywordsReply reply = MergeMessagesAndComputeKeywordsReply
-          .newBuilder().addAllConversation(conversations).build();
+      final MergeMessagesAndComputeKeywordsReply.Builder replyBuilder = MergeMessagesAndComputeKeywordsReply
+          .newBuilder();
+      StageTimings timings = startTimings(req.getIncludeTiming());
+      try {
+        messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages, context,
+            null, req.getSummaryOnly(), getCancellationSignal(),
+            new Consumer<Conversation>() {
+              @Override
+              public void accept(Conversation conversation) {
+                replyBuilder.addConversation(conversation);
+              }
+            });
+      } catch (CancelledException e) {
+        onCancelled(responseObserver);
+        return;
+      } finally {
+        stopTimings(timings);
+      }
+      if (timings != null) {
+        replyBuilder.setTiming(timings.toRequestTiming());
+      }
+      responseObserver.onNext(replyBuilder.build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void mergeMessagesAndComputeKeywordsStream(
+        MergeMessagesAndComputeKeywordsRequest req,
+        StreamObserver<MergeMessagesAndComputeKeywordsStreamReply> responseObserver) {
+      StageTimings timings = startTimings(req.getIncludeTiming());
+      final Queue<MergeMessagesAndComputeKeywordsStreamReply> replies = new ArrayDeque<>();
+      try {
+        messageAnalysisUtil.mergeMessagesAndComputeKeywords(
+            req.getMessageList(), req.getContext(), null,
+            req.getSummaryOnly(), getCancellationSignal(),
+            new Consumer<Conversation>() {
+              @Override
+              public void accept(Conversation conversation) {
+                replies.add(MergeMessagesAndComputeKeywordsStreamReply
+                    .newBuilder().setConversation(conversation).build());
+              }
+            });
+      } catch (CancelledException e) {
+        onCancelled(responseObserver);
+        return;
+      } finally {
+        stopTimings(timings);
+      }
+      if (timings != null) {
+        replies.add(MergeMessagesAndComputeKeywordsStreamReply.newBuilder()
+            .setTiming(timings.toRequestTiming()).build());
+      }
+      sendWhenReady(
+          (ServerCallStreamObserver<MergeMessagesAndComputeKeywordsStreamReply>) responseObserver,
+          replies);
+    }
+
+  }
+
+  public static class NLPUtilAdminImpl
+      extends NLPUtilAdminGrpc.NLPUtilAdminImplBase {
+
+    private NLPUtil nlpUtil;
+    private String configFile;
+
+    public NLPUtilAdminImpl(NLPUtil nlpUtil, String configFile) {
+      this.nlpUtil = nlpUtil;
+      this.configFile = configFile;
+    }
+
+    @Override
+    public void reloadStopWords(ReloadStopWordsRequest req,
+        StreamObserver<ReloadStopWordsReply> responseObserver) {
+      List<String> stopWords;
+      try {
+        stopWords = readStopWords(new Wini(new File(configFile)));
+      } catch (IOException e) {
+        // Keep the current stop words.
+        logger.warning("Failed to reload stop words: "
+            + ExceptionUtils.getStackTrace(e));
+        responseObserver.onError(Status.INTERNAL
+            .withDescription("Failed to reload stop words: " + e.getMessage())
+            .asRuntimeException());
+        return;
+      }
+      nlpUtil.setStopwords(stopWords);
+      int numStopWords = nlpUtil.getNumStopwords();
+      logger.info("Reloaded " + numStopWords + " stop words");
+      ReloadStopWordsReply reply = ReloadStopWordsReply.newBuilder()
+          .setNumStopWords(numStopWords).build();
       responseObserver.onNext(reply);
       responseObserver.onCompleted();
     }
@@ -0,0 +1,90 @@
+package com.neoshell.nlp.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded lock-free queue for multiple producers and consumers. Each slot has
+// a sequence number telling whether it is ready to be written or read in the
+// current lap, so producers and consumers only contend on their own counter.
+class RingBuffer<E> {
+
+  private final int mask;
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicLongArray sequences;
+  // Position of the next offer.
+  private final AtomicLong tail = new AtomicLong();
+  // Position of the next poll.
+  private final AtomicLong head = new AtomicLong();
+
+  // The capacity is rounded up to a power of 2.
+  RingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    mask = size - 1;
+    elements = new AtomicReferenceArray<>(size);
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  // Returns false if the queue is full.
+  boolean offer(E element) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) position & mask;
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          elements.set(index, element);
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        // The slot still holds an element from the previous lap.
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  // Returns null if the queue is empty.
+  E poll() {
+    long position = head.get();
+    while (true) {
+      int index = (int) position & mask;
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          E element = elements.get(index);
+          elements.set(index, null);
+          // Ready to be written in the next lap.
+          sequences.set(index, position + mask + 1);
+          return element;
+        }
+        position = head.get();
+      } else if (difference < 0) {
+        return null;
+      } else {
+        position = head.get();
+      }
+    }
+  }
+
+  // Number of successful offers so far, including ones still in progress.
+  long getOfferCount() {
+    return tail.get();
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  // Approximate if there are concurrent updates.
+  int size() {
+    return (int) Math.max(0L, tail.get() - head.get());
+  }
+
+}
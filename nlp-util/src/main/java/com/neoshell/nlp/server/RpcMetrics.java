@@ -0,0 +1,82 @@
+package com.neoshell.nlp.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Metrics of a single RPC method. Latencies are in microseconds and sizes in
+// bytes.
+public class RpcMetrics implements RpcMetricsMXBean {
+
+  private final Histogram latency = new Histogram();
+  private final Histogram requestBytes = new Histogram();
+  private final Histogram responseBytes = new Histogram();
+  private final LongAdder errors = new LongAdder();
+  // Calls whose work was stopped early because the client went away.
+  private final LongAdder aborted = new LongAdder();
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public void onStart() {
+    inFlight.incrementAndGet();
+  }
+
+  public void onFinish(boolean isOk, long elapsedNanos) {
+    inFlight.decrementAndGet();
+    latency.record(elapsedNanos / 1000L);
+    if (!isOk) {
+      errors.increment();
+    }
+  }
+
+  public void onAborted() {
+    aborted.increment();
+  }
+
+  public void recordRequestSize(int bytes) {
+    requestBytes.record(bytes);
+  }
+
+  public void recordResponseSize(int bytes) {
+    responseBytes.record(bytes);
+  }
+
+  public Histogram getLatency() {
+    return latency;
+  }
+
+  public Histogram getRequestBytes() {
+    return requestBytes;
+  }
+
+  public Histogram getResponseBytes() {
+    return responseBytes;
+  }
+
+  @Override
+  public long getCount() {
+    return latency.getCount();
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  @Override
+  public long getAborted() {
+    return aborted.sum();
+  }
+
+  @Override
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public void reset() {
+    latency.reset();
+    requestBytes.reset();
+    responseBytes.reset();
+    errors.reset();
+    aborted.reset();
+  }
+
+}
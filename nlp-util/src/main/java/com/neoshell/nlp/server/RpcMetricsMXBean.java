@@ -0,0 +1,13 @@
+package com.neoshell.nlp.server;
+
+public interface RpcMetricsMXBean {
+
+  long getCount();
+
+  long getErrors();
+
+  long getAborted();
+
+  int getInFlight();
+
+}
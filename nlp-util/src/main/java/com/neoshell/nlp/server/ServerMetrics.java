@@ -0,0 +1,170 @@
+package com.neoshell.nlp.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.neoshell.nlp.core.StageRecorder;
+
+// Collects metrics of RPC methods and internal stages. Latencies are in
+// microseconds and sizes in bytes.
+public class ServerMetrics implements StageRecorder {
+
+  private static final String JMX_DOMAIN = "com.neoshell.nlp";
+  private static final Logger logger = Logger
+      .getLogger(NLPUtilServer.class.getName());
+
+  private final ConcurrentMap<String, RpcMetrics> rpcMetrics = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Histogram> stageLatencies = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Histogram> stageSizes = new ConcurrentHashMap<>();
+  private volatile boolean isJmxEnabled = false;
+
+  // Registers all the existing and future metrics as MBeans.
+  public synchronized void enableJmx() {
+    isJmxEnabled = true;
+    for (Map.Entry<String, RpcMetrics> entry : rpcMetrics.entrySet()) {
+      registerRpcMetrics(entry.getKey(), entry.getValue());
+    }
+    for (String stage : stageLatencies.keySet()) {
+      registerStageMetrics(stage);
+    }
+  }
+
+  public RpcMetrics getRpcMetrics(String method) {
+    RpcMetrics metrics = rpcMetrics.get(method);
+    if (metrics == null) {
+      synchronized (this) {
+        metrics = rpcMetrics.get(method);
+        if (metrics == null) {
+          metrics = new RpcMetrics();
+          rpcMetrics.put(method, metrics);
+          if (isJmxEnabled) {
+            registerRpcMetrics(method, metrics);
+          }
+        }
+      }
+    }
+    return metrics;
+  }
+
+  @Override
+  public void record(String stage, long elapsedNanos, long numItems) {
+    Histogram latency = stageLatencies.get(stage);
+    if (latency == null) {
+      synchronized (this) {
+        latency = stageLatencies.get(stage);
+        if (latency == null) {
+          stageSizes.put(stage, new Histogram());
+          latency = new Histogram();
+          stageLatencies.put(stage, latency);
+          if (isJmxEnabled) {
+            registerStageMetrics(stage);
+          }
+        }
+      }
+    }
+    latency.record(elapsedNanos / 1000L);
+    stageSizes.get(stage).record(numItems);
+  }
+
+  public int getInFlight() {
+    int inFlight = 0;
+    for (RpcMetrics metrics : rpcMetrics.values()) {
+      inFlight += metrics.getInFlight();
+    }
+    return inFlight;
+  }
+
+  public void reset() {
+    for (RpcMetrics metrics : rpcMetrics.values()) {
+      metrics.reset();
+    }
+    for (Histogram histogram : stageLatencies.values()) {
+      histogram.reset();
+    }
+    for (Histogram histogram : stageSizes.values()) {
+      histogram.reset();
+    }
+  }
+
+  // Renders all metrics as plain text, one "name{labels} value" per line.
+  public String toText() {
+    StringBuilder sb = new StringBuilder();
+    appendLine(sb, "in_flight", null, getInFlight());
+    for (Map.Entry<String, RpcMetrics> entry : new TreeMap<>(rpcMetrics)
+        .entrySet()) {
+      String labels = "method=\"" + entry.getKey() + "\"";
+      RpcMetrics metrics = entry.getValue();
+      appendLine(sb, "rpc_count", labels, metrics.getCount());
+      appendLine(sb, "rpc_errors", labels, metrics.getErrors());
+      appendLine(sb, "rpc_aborted", labels, metrics.getAborted());
+      appendLine(sb, "rpc_in_flight", labels, metrics.getInFlight());
+      appendHistogram(sb, "rpc_latency_micros", labels, metrics.getLatency());
+      appendHistogram(sb, "rpc_request_bytes", labels,
+          metrics.getRequestBytes());
+      appendHistogram(sb, "rpc_response_bytes", labels,
+          metrics.getResponseBytes());
+    }
+    for (Map.Entry<String, Histogram> entry : new TreeMap<>(stageLatencies)
+        .entrySet()) {
+      String labels = "stage=\"" + entry.getKey() + "\"";
+      appendHistogram(sb, "stage_latency_micros", labels, entry.getValue());
+      appendHistogram(sb, "stage_items", labels,
+          stageSizes.get(entry.getKey()));
+    }
+    return sb.toString();
+  }
+
+  private void registerRpcMetrics(String method, RpcMetrics metrics) {
+    String name = "type=Rpc,method=" + ObjectName.quote(method);
+    registerMBean(metrics, name);
+    registerMBean(metrics.getLatency(), name + ",metric=latencyMicros");
+    registerMBean(metrics.getRequestBytes(), name + ",metric=requestBytes");
+    registerMBean(metrics.getResponseBytes(), name + ",metric=responseBytes");
+  }
+
+  private void registerStageMetrics(String stage) {
+    String name = "type=Stage,stage=" + ObjectName.quote(stage);
+    registerMBean(stageLatencies.get(stage), name + ",metric=latencyMicros");
+    registerMBean(stageSizes.get(stage), name + ",metric=items");
+  }
+
+  static void registerMBean(Object mBean, String name) {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName objectName = new ObjectName(JMX_DOMAIN + ":" + name);
+      if (!mBeanServer.isRegistered(objectName)) {
+        mBeanServer.registerMBean(mBean, objectName);
+      }
+    } catch (JMException e) {
+      logger.warning("Failed to register MBean " + name + ": " + e);
+    }
+  }
+
+  private static void appendHistogram(StringBuilder sb, String name,
+      String labels, Histogram histogram) {
+    appendLine(sb, name + "_count", labels, histogram.getCount());
+    appendLine(sb, name + "_mean", labels, histogram.getMean());
+    appendLine(sb, name, labels + ",quantile=\"0.5\"", histogram.getP50());
+    appendLine(sb, name, labels + ",quantile=\"0.9\"", histogram.getP90());
+    appendLine(sb, name, labels + ",quantile=\"0.99\"", histogram.getP99());
+    appendLine(sb, name + "_max", labels, histogram.getMax());
+  }
+
+  private static void appendLine(StringBuilder sb, String name, String labels,
+      Object value) {
+    sb.append(name);
+    if (labels != null) {
+      sb.append('{').append(labels).append('}');
+    }
+    sb.append(' ').append(value).append('\n');
+  }
+
+}
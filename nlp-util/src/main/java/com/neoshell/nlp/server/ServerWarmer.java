@@ -0,0 +1,68 @@
+package com.neoshell.nlp.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.neoshell.nlp.core.NLPContext;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.core.WordInfo;
+import com.neoshell.nlp.messaging.Message;
+import com.neoshell.nlp.messaging.MessageAnalysisContext;
+import com.neoshell.nlp.messaging.MessageAnalysisUtil;
+
+// Runs a corpus through the hot paths before the server is declared ready, so
+// that the first requests don't run in the interpreter.
+public class ServerWarmer {
+
+  public static final List<String> DEFAULT_CORPUS = Arrays.asList(
+      "今天天气很好，我们去公园散步吧。", "这个周末你有什么计划？", "我觉得这部电影非常好看。",
+      "The quick brown fox jumps over the lazy dog.",
+      "Let's meet at the coffee shop tomorrow morning.",
+      "I think this movie is really good.");
+
+  private static final int KEYWORD_LIMIT = 10;
+  private static final int MESSAGE_INTERVAL_SECONDS = 60;
+
+  private NLPUtil nlpUtil;
+  private MessageAnalysisUtil messageAnalysisUtil;
+
+  public ServerWarmer(NLPUtil nlpUtil,
+      MessageAnalysisUtil messageAnalysisUtil) {
+    this.nlpUtil = nlpUtil;
+    this.messageAnalysisUtil = messageAnalysisUtil;
+  }
+
+  public void warmUp(List<String> corpus, int iterations) {
+    if (corpus.isEmpty()) {
+      return;
+    }
+    List<Message> messages = new ArrayList<>();
+    for (int i = 0; i < corpus.size(); i++) {
+      messages.add(Message.newBuilder().setId(i)
+          .setTimestampSeconds(i * MESSAGE_INTERVAL_SECONDS)
+          .setContent(corpus.get(i)).build());
+    }
+    Map<String, Long> globalWordCount = new HashMap<>();
+    for (WordInfo wordInfo : nlpUtil.countWords(corpus, true,
+        Integer.MAX_VALUE)) {
+      globalWordCount.put(wordInfo.getWord(), wordInfo.getCount());
+    }
+    NLPContext nlpContext = nlpUtil.generateNLPContext(globalWordCount);
+    MessageAnalysisContext messageAnalysisContext = MessageAnalysisContext
+        .newBuilder().setNlpContext(nlpContext)
+        .setTimeBucketSeconds(MESSAGE_INTERVAL_SECONDS * 2)
+        .setCommonKeywordThreshold(1).setKeywordLimit(KEYWORD_LIMIT)
+        .setMinMessagesPerConversation(2).build();
+    for (int i = 0; i < iterations; i++) {
+      List<String> words = nlpUtil.removeStopWords(nlpUtil.segment(corpus));
+      nlpUtil.getKeywordInfo(words, nlpContext, KEYWORD_LIMIT);
+      nlpUtil.countWords(corpus, false, KEYWORD_LIMIT);
+      messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages,
+          messageAnalysisContext);
+    }
+  }
+
+}
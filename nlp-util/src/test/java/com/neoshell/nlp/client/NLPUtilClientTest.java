@@ -0,0 +1,158 @@
+package com.neoshell.nlp.client;
+
+import static org.junit.Assert.*;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.netty.channel.epoll.Epoll;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.core.Segmenter;
+import com.neoshell.nlp.server.NLPUtilServer;
+
+public class NLPUtilClientTest {
+
+  private static final int NUM_SERVERS = 3;
+
+  private List<Server> servers;
+  // Number of texts segmented by each server.
+  private List<AtomicInteger> segmentCounts;
+  private NLPUtilClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    servers = new ArrayList<>();
+    segmentCounts = new ArrayList<>();
+    ManagedChannel[] channels = new ManagedChannel[NUM_SERVERS];
+    for (int i = 0; i < NUM_SERVERS; i++) {
+      final AtomicInteger segmentCount = new AtomicInteger();
+      NLPUtil nlpUtil = new NLPUtil(new Segmenter() {
+        @Override
+        public List<String> segment(String text) {
+          segmentCount.incrementAndGet();
+          return Arrays.asList(text.split(" "));
+        }
+      });
+      nlpUtil.addStopwords(Arrays.asList("is"));
+      String name = "NLPUtilClientTest-" + i;
+      servers.add(InProcessServerBuilder.forName(name)
+          .addService(new NLPUtilServer.NLPUtilImpl(nlpUtil)).build().start());
+      segmentCounts.add(segmentCount);
+      channels[i] = InProcessChannelBuilder.forName(name).build();
+    }
+    client = new NLPUtilClient(channels);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.shutdown();
+    for (Server server : servers) {
+      server.shutdownNow();
+    }
+  }
+
+  @Test
+  public void segmentSameTextOnSameServer() {
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Arrays.asList("this", "is", "apple"),
+          client.segment(Arrays.asList("this is apple")));
+    }
+    int numUsedServers = 0;
+    for (AtomicInteger segmentCount : segmentCounts) {
+      if (segmentCount.get() > 0) {
+        assertEquals(10, segmentCount.get());
+        numUsedServers++;
+      }
+    }
+    assertEquals(1, numUsedServers);
+  }
+
+  @Test
+  public void segmentTextsOfDifferentServers() {
+    List<String> texts = new ArrayList<>();
+    List<String> expectedResult = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      texts.add("text " + i);
+      expectedResult.add("text");
+      expectedResult.add(String.valueOf(i));
+    }
+    assertEquals(expectedResult, client.segment(texts));
+    for (AtomicInteger segmentCount : segmentCounts) {
+      assertTrue(segmentCount.get() > 0);
+    }
+
+    // Word ids are shared by all the texts.
+    List<SegmentedText> result = client.segmentOffsets(texts, true);
+    for (int i = 0; i < texts.size(); i++) {
+      assertEquals(Arrays.asList("text", String.valueOf(i)),
+          result.get(i).getWords());
+      assertEquals(result.get(0).getWordId(0), result.get(i).getWordId(0));
+    }
+  }
+
+  @Test
+  public void ejectFailedServer() {
+    List<String> texts = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      texts.add("text " + i);
+    }
+    List<String> expectedResult = client.segment(texts);
+    servers.get(0).shutdownNow();
+    assertEquals(expectedResult, client.segment(texts));
+    for (int i = 0; i < 10; i++) {
+      assertTrue(client.isStopWord("is"));
+    }
+  }
+
+  @Test
+  public void unixSocket() throws Exception {
+    Assume.assumeTrue(Epoll.isAvailable());
+    File dir = Files.createTempDirectory("NLPUtilClientTest").toFile();
+    File socketFile = new File(dir, "nlp-util.sock");
+    NLPUtil nlpUtil = new NLPUtil(new Segmenter() {
+      @Override
+      public List<String> segment(String text) {
+        return Arrays.asList(text.split(" "));
+      }
+    });
+    Server server = NLPUtilServer.unixSocketServerBuilder(socketFile)
+        .addService(new NLPUtilServer.NLPUtilImpl(nlpUtil)).build().start();
+    NLPUtilClient unixSocketClient = new NLPUtilClient(socketFile);
+    try {
+      assertEquals(Arrays.asList("this", "is", "apple"),
+          unixSocketClient.segment(Arrays.asList("this is apple")));
+    } finally {
+      unixSocketClient.shutdown();
+      server.shutdownNow().awaitTermination();
+    }
+    // A socket file left behind is replaced.
+    server = NLPUtilServer.unixSocketServerBuilder(socketFile)
+        .addService(new NLPUtilServer.NLPUtilImpl(nlpUtil)).build().start();
+    unixSocketClient = new NLPUtilClient(
+        Arrays.asList("unix:" + socketFile.getPath()));
+    try {
+      assertEquals(Arrays.asList("red", "apple"),
+          unixSocketClient.segment(Arrays.asList("red apple")));
+    } finally {
+      unixSocketClient.shutdown();
+      server.shutdownNow().awaitTermination();
+      socketFile.delete();
+      dir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ApproximateWordCounterTest {
+
+  @Test
+  public void countMinSketch() {
+    CountMinSketch sketch = new CountMinSketch(0.01, 0.01);
+    assertEquals(272, sketch.getWidth());
+    assertEquals(5, sketch.getDepth());
+    sketch.add("a", 3L);
+    sketch.add("b", 1L);
+    assertTrue(sketch.estimate("a") >= 3L);
+    assertTrue(sketch.estimate("b") >= 1L);
+    assertEquals(0L, sketch.estimate("c"));
+  }
+
+  @Test
+  public void getTopWords() {
+    // 10 frequent words "top0" (1000 times) ... "top9" (100 times), in a
+    // stream of 20000 words seen once.
+    List<String> words = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j < 1000 - i * 100; j++) {
+        words.add("top" + i);
+      }
+    }
+    for (int i = 0; i < 20000; i++) {
+      words.add("noise" + i);
+    }
+    long numAllWords = words.size();
+    Collections.shuffle(words, new Random(0L));
+
+    double maxError = 0.001;
+    ApproximateWordCounter counter = new ApproximateWordCounter(maxError,
+        0.01, 100);
+    for (String word : words) {
+      counter.add(word);
+    }
+    List<WordInfo> result = counter.getTopWords(10);
+    assertEquals(10, result.size());
+    for (int i = 0; i < 10; i++) {
+      long count = 1000 - i * 100;
+      assertEquals("top" + i, result.get(i).getWord());
+      assertTrue(result.get(i).getCount() >= count);
+      assertTrue(result.get(i).getCount() <= count + maxError * numAllWords);
+    }
+  }
+
+  @Test
+  public void create() {
+    // Defaults.
+    ApproximateWordCounter counter = ApproximateWordCounter
+        .create(ApproximateCountOptions.getDefaultInstance(), 10);
+    counter.add("a");
+    counter.add("a");
+    counter.add("b");
+    List<WordInfo> result = counter.getTopWords(1);
+    assertEquals(1, result.size());
+    assertEquals("a", result.get(0).getWord());
+    assertEquals(2L, result.get(0).getCount());
+    // Same as the exact counts.
+    assertTrue(counter.getTopWords(0).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void createWithoutLimit() {
+    ApproximateWordCounter.create(ApproximateCountOptions.getDefaultInstance(),
+        0);
+  }
+
+}
@@ -0,0 +1,207 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.neoshell.nlp.messaging.Conversation;
+import com.neoshell.nlp.messaging.Message;
+import com.neoshell.nlp.messaging.MessageAnalysisContext;
+import com.neoshell.nlp.messaging.MessageAnalysisUtil;
+import com.neoshell.nlp.test.TestUtil;
+
+public class DecayedWordStatsTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      return Arrays.asList(text.split(" "));
+    }
+  };
+
+  @Test
+  public void decay() {
+    DecayedWordStats stats = new DecayedWordStats(100.0, 10);
+    stats.add("apple", 8L, 1000L);
+    assertEquals(8.0, stats.getCount("apple"), 1e-9);
+    stats.add("red", 4L, 1100L);
+    assertEquals(4.0, stats.getCount("apple"), 1e-9);
+    assertEquals(4.0, stats.getCount("red"), 1e-9);
+    assertEquals(8.0, stats.getNumAllWords(), 1e-9);
+    // An earlier addition is decayed to the latest time.
+    stats.add("apple", 2L, 1000L);
+    assertEquals(5.0, stats.getCount("apple"), 1e-9);
+    assertEquals(9.0, stats.getNumAllWords(), 1e-9);
+    assertEquals(0.0, stats.getCount("green"), 0.0);
+
+    assertEquals(Math.log(9.0 / 5.0), stats.getFrequencyScore("apple"), 1e-9);
+    assertTrue(Double.isNaN(stats.getFrequencyScore("green")));
+    // The score doesn't change as time goes by, but it grows once the word
+    // stops being frequent.
+    stats.add("red", 1L, 1200L);
+    assertEquals(Math.log(5.5 / 2.5), stats.getFrequencyScore("apple"),
+        1e-9);
+  }
+
+  @Test
+  public void eviction() {
+    DecayedWordStats stats = new DecayedWordStats(100.0, 10);
+    for (int i = 0; i < 10; i++) {
+      stats.add("w" + i, 10L + i, 0L);
+    }
+    assertEquals(10, stats.getNumWords());
+    stats.add("new", 100L, 0L);
+    assertEquals(9, stats.getNumWords());
+    assertEquals(0.0, stats.getCount("w0"), 0.0);
+    assertEquals(0.0, stats.getCount("w1"), 0.0);
+    assertEquals(19.0, stats.getCount("w9"), 1e-9);
+    assertEquals(100.0, stats.getCount("new"), 1e-9);
+    // Evicted words still count.
+    assertEquals(245.0, stats.getNumAllWords(), 1e-9);
+  }
+
+  @Test
+  public void getKeywordInfo() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    DecayedWordStats stats = new DecayedWordStats(3600.0, 100);
+    List<String> words = Arrays.asList("apple", "red", "apple");
+    // Scored by count only without any stats.
+    assertEquals(Arrays.asList("apple", "red"),
+        getWords(nlpUtil.getKeywordInfo(words, stats, 0)));
+
+    stats.add("apple", 1000L, 0L);
+    stats.add("red", 10L, 0L);
+    assertEquals(Arrays.asList("red", "apple"),
+        getWords(nlpUtil.getKeywordInfo(words, stats, 0)));
+    // A day later, apple stopped trending while red didn't.
+    stats.add("red", 10L, 86400L);
+    assertEquals(Arrays.asList("apple", "red"),
+        getWords(nlpUtil.getKeywordInfo(words, stats, 0)));
+  }
+
+  @Test
+  public void mergeMessagesAndComputeKeywords() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    nlpUtil.addStopwords(Arrays.asList("is"));
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(
+        nlpUtil);
+    DecayedWordStats stats = new DecayedWordStats(3600.0, 100);
+    messageAnalysisUtil.setWordStats(stats);
+    List<Message> messages = Arrays.asList(
+        TestUtil.createMessage(0L, 10L, "user0", "user1", "apple is red"),
+        TestUtil.createMessage(1L, 20L, "user1", "user0", "red apple"),
+        TestUtil.createMessage(2L, 700L, "user0", "user1", "green apple"));
+    MessageAnalysisContext context = MessageAnalysisContext.newBuilder()
+        .setTimeBucketSeconds(600).setCommonKeywordThreshold(1)
+        .setMinMessagesPerConversation(1).build();
+    List<Conversation> conversations = messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messages, context);
+    assertEquals(1, conversations.size());
+    // The NLP context of the request is not used, so scores are counts.
+    assertEquals(3L, conversations.get(0).getKeyword(0).getCount());
+    assertEquals(3.0, conversations.get(0).getKeyword(0).getScore(), 0.0);
+
+    // The words of the conversations were added at their end timestamps.
+    assertEquals(4.0 * Math.pow(0.5, 680.0 / 3600.0) + 2.0,
+        stats.getNumAllWords(), 1e-9);
+    assertEquals(2.0 * Math.pow(0.5, 680.0 / 3600.0) + 1.0,
+        stats.getCount("apple"), 1e-9);
+    assertEquals(0.0, stats.getCount("is"), 0.0);
+  }
+
+  @Test
+  public void concurrentCalls() throws InterruptedException {
+    // Decays so slowly that the counts stay exact.
+    DecayedWordStats stats = new DecayedWordStats(1e15, 1000);
+    List<Message> messages = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      messages.add(TestUtil.createMessage(i, i * 10L, "user0", "user1",
+          "apple w" + (i % 50)));
+    }
+    analyzeConcurrently(stats, Arrays.asList(messages, messages), 50);
+    // No count is lost.
+    assertEquals(2 * 50 * 200.0, stats.getNumAllWords(), 1e-6);
+    assertEquals(2 * 50 * 100.0, stats.getCount("apple"), 1e-6);
+    assertEquals(2 * 50 * 2.0, stats.getCount("w0"), 1e-6);
+    assertEquals(51, stats.getNumWords());
+  }
+
+  @Test
+  public void concurrentEviction() throws InterruptedException {
+    DecayedWordStats stats = new DecayedWordStats(1e15, 100);
+    List<List<Message>> messageLists = new ArrayList<>();
+    for (int t = 0; t < 2; t++) {
+      List<Message> messages = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        messages.add(TestUtil.createMessage(i, i * 10L, "user0", "user1",
+            "apple t" + t + "w" + i));
+      }
+      messageLists.add(messages);
+    }
+    analyzeConcurrently(stats, messageLists, 20);
+    assertTrue(stats.getNumWords() <= 100);
+    // Evicted words still count.
+    assertEquals(2 * 20 * 200.0, stats.getNumAllWords(), 1e-6);
+    assertEquals(2 * 20 * 100.0, stats.getCount("apple"), 1e-6);
+  }
+
+  // Analyzes each list of messages numCalls times, each in its own thread,
+  // while reading scores, which are never negative since a count is never
+  // read ahead of the total.
+  private static void analyzeConcurrently(DecayedWordStats stats,
+      List<List<Message>> messageLists, final int numCalls)
+      throws InterruptedException {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    final MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(
+        nlpUtil);
+    messageAnalysisUtil.setWordStats(stats);
+    final MessageAnalysisContext context = MessageAnalysisContext.newBuilder()
+        .setTimeBucketSeconds(60).setCommonKeywordThreshold(1)
+        .setMinMessagesPerConversation(1).build();
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    List<Thread> threads = new ArrayList<>();
+    for (final List<Message> messages : messageLists) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < numCalls; i++) {
+              messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages,
+                  context);
+            }
+          } catch (Throwable e) {
+            error.compareAndSet(null, e);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      while (thread.isAlive()) {
+        double score = stats.getFrequencyScore("apple");
+        assertTrue(Double.isNaN(score) || score >= 0.0);
+      }
+      thread.join();
+    }
+    assertNull(error.get());
+  }
+
+  private static List<String> getWords(List<WordInfo> keywords) {
+    List<String> words = new ArrayList<>();
+    for (WordInfo keyword : keywords) {
+      words.add(keyword.getWord());
+    }
+    return words;
+  }
+
+}
@@ -0,0 +1,61 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DictionarySegmenterTest {
+
+  @Test
+  public void doubleArrayTrie() {
+    // Random Chinese and ASCII words, some prefixes of others.
+    Random random = new Random(0L);
+    Set<String> words = new HashSet<>();
+    while (words.size() < 10000) {
+      StringBuilder sb = new StringBuilder();
+      int length = 1 + random.nextInt(4);
+      for (int i = 0; i < length; i++) {
+        sb.append(random.nextBoolean() ? (char) (0x4E00 + random.nextInt(500))
+            : (char) ('a' + random.nextInt(26)));
+      }
+      words.add(sb.toString());
+    }
+    DoubleArrayTrie trie = new DoubleArrayTrie(words);
+    assertEquals(words.size(), trie.getNumWords());
+    for (String word : words) {
+      assertTrue(word, trie.contains(word));
+      assertFalse(trie.contains(word + "￿"));
+    }
+    assertFalse(trie.contains(""));
+
+    trie = new DoubleArrayTrie(Arrays.asList("a", "abc", "b"));
+    assertEquals(3, trie.getLongestMatch("xabcd", 1, 5));
+    assertEquals(1, trie.getLongestMatch("xabcd", 1, 3));
+    assertEquals(0, trie.getLongestMatch("xabcd", 0, 5));
+    assertFalse(trie.contains("ab"));
+    assertEquals(0, new DoubleArrayTrie(new ArrayList<String>())
+        .getLongestMatch("a", 0, 1));
+  }
+
+  @Test
+  public void segment() {
+    DictionarySegmenter segmenter = new DictionarySegmenter(
+        Arrays.asList("研究", "研究生", "生命", "起源", "苹果"));
+    // Forward matching gives 研究生/命/起源, backward matching gives
+    // 研究/生命/起源, with fewer single chars.
+    assertEquals(Arrays.asList("研究", "生命", "起源"),
+        segmenter.segment("研究生命起源"));
+    assertEquals(Arrays.asList("这", "是", "苹果", "苹果"),
+        segmenter.segment("这是苹果 苹果"));
+    List<String> empty = segmenter.segment("  ");
+    assertTrue(empty.isEmpty());
+  }
+
+}
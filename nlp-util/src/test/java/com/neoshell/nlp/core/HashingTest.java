@@ -0,0 +1,17 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HashingTest {
+
+  @Test
+  public void hash64() {
+    // Clients and servers must agree on these, e.g. for consistent hashing.
+    assertEquals(-1166397803181037274L, Hashing.hash64(""));
+    assertEquals(-9033471704281723301L, Hashing.hash64("a"));
+    assertEquals(-4066857407266600427L, Hashing.hash64("苹果"));
+  }
+
+}
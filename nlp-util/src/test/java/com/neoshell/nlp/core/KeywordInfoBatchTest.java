@@ -0,0 +1,84 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class KeywordInfoBatchTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      return Arrays.asList(text.split(" "));
+    }
+  };
+
+  @Test
+  public void getKeywordInfoBatch() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    nlpUtil.addStopwords(Arrays.asList("is", "the"));
+    Map<String, Long> globalWordCount = new HashMap<>();
+    globalWordCount.put("apple", 100L);
+    globalWordCount.put("red", 10L);
+    globalWordCount.put("sky", 50L);
+    NLPContext context = nlpUtil.generateNLPContext(globalWordCount);
+    // Several chunks, with texts and word lists mixed.
+    List<Document> documents = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      String text = "the apple is red w" + (i % 7) + " sky apple w" + i;
+      documents.add(i % 2 == 0 ? Document.newBuilder().setText(text).build()
+          : Document.newBuilder().addAllWord(Arrays.asList(text.split(" ")))
+              .build());
+    }
+    List<List<WordInfo>> expected = new ArrayList<>();
+    for (int i = 0; i < documents.size(); i++) {
+      List<String> words = i % 2 == 0
+          ? nlpUtil.removeStopWords(
+              nlpUtil.segment(documents.get(i).getText()))
+          : documents.get(i).getWordList();
+      expected.add(nlpUtil.getKeywordInfo(words, context, 3));
+    }
+
+    assertEquals(expected, nlpUtil.getKeywordInfoBatch(documents, context, 3,
+        null, CancellationSignal.NONE));
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      assertEquals(expected, nlpUtil.getKeywordInfoBatch(documents, context,
+          3, executor, CancellationSignal.NONE));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(nlpUtil.getKeywordInfoBatch(new ArrayList<Document>(),
+        context, 3, null, CancellationSignal.NONE).isEmpty());
+  }
+
+  @Test(expected = CancelledException.class)
+  public void cancelled() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    List<Document> documents = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      documents.add(Document.newBuilder().setText("apple red").build());
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      nlpUtil.getKeywordInfoBatch(documents, NLPContext.getDefaultInstance(),
+          3, executor, new CancellationSignal() {
+            @Override
+            public boolean isCancelled() {
+              return true;
+            }
+          });
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class KeywordListTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      return Arrays.asList(text.split(" "));
+    }
+  };
+
+  // Sorts the values of a map by score, and ties by word.
+  private static List<WordInfo> sortByScore(Map<String, WordInfo> map) {
+    List<WordInfo> keywords = new ArrayList<>(map.values());
+    Collections.sort(keywords, new Comparator<WordInfo>() {
+      @Override
+      public int compare(WordInfo o1, WordInfo o2) {
+        int result = Double.compare(o2.getScore(), o1.getScore());
+        return result != 0 ? result : o1.getWord().compareTo(o2.getWord());
+      }
+    });
+    return keywords;
+  }
+
+  private static List<String> createWords(Random random, int numWords,
+      int numDistinctWords) {
+    List<String> words = new ArrayList<>();
+    for (int i = 0; i < numWords; i++) {
+      words.add("w" + random.nextInt(numDistinctWords));
+    }
+    return words;
+  }
+
+  @Test
+  public void getKeywordInfoSortsTiesByWord() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    NLPContext context = NLPContext.newBuilder().setNumAllWords(1000L)
+        .putGlobalWordStats("w1",
+            WordInfo.newBuilder().setWord("w1").setScore(2.0).build())
+        .build();
+    Random random = new Random(1L);
+    for (int i = 0; i < 200; i++) {
+      List<String> words = createWords(random, random.nextInt(200),
+          1 + random.nextInt(100));
+      for (NLPContext nlpContext : Arrays.asList(context,
+          NLPContext.getDefaultInstance())) {
+        Map<String, WordInfo> expected = new HashMap<>();
+        for (String word : words) {
+          WordInfo keyword = expected.get(word);
+          long count = keyword == null ? 1L : keyword.getCount() + 1L;
+          expected.put(word, WordInfo.newBuilder().setWord(word)
+              .setCount(count).build());
+        }
+        for (Map.Entry<String, WordInfo> entry : expected.entrySet()) {
+          WordInfo keyword = entry.getValue();
+          double score = keyword.getCount();
+          if (nlpContext.getNumAllWords() > 0) {
+            WordInfo stats = nlpContext.getGlobalWordStatsMap()
+                .get(keyword.getWord());
+            score *= stats != null ? stats.getScore()
+                : Math.log((double) nlpContext.getNumAllWords()
+                    / keyword.getCount());
+          }
+          entry.setValue(keyword.toBuilder().setScore(score).build());
+        }
+        assertEquals(sortByScore(expected),
+            nlpUtil.getKeywordInfo(words, nlpContext, 0));
+      }
+    }
+  }
+
+  @Test
+  public void mergeSortsTiesByWord() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    Random random = new Random(2L);
+    for (int i = 0; i < 200; i++) {
+      List<WordInfo> keywords1 = nlpUtil.getKeywordInfo(
+          createWords(random, random.nextInt(100), 1 + random.nextInt(50)),
+          NLPContext.getDefaultInstance(), 0);
+      List<WordInfo> keywords2 = nlpUtil.getKeywordInfo(
+          createWords(random, random.nextInt(100), 1 + random.nextInt(50)),
+          NLPContext.getDefaultInstance(), 0);
+      Map<String, WordInfo> expected = new HashMap<>();
+      for (WordInfo keyword : keywords1) {
+        expected.put(keyword.getWord(), keyword);
+      }
+      for (WordInfo keyword : keywords2) {
+        WordInfo keyword1 = expected.get(keyword.getWord());
+        expected.put(keyword.getWord(), keyword1 == null ? keyword
+            : keyword.toBuilder()
+                .setCount(keyword1.getCount() + keyword.getCount())
+                .setScore(keyword1.getScore() + keyword.getScore()).build());
+      }
+      int limit = random.nextInt(10);
+      List<WordInfo> expectedKeywords = sortByScore(expected);
+      if (limit > 0 && limit < expectedKeywords.size()) {
+        expectedKeywords = expectedKeywords.subList(0, limit);
+      }
+
+      Vocabulary vocabulary = new Vocabulary();
+      KeywordList merged = KeywordList.merge(
+          KeywordList.fromWordInfoList(keywords1, vocabulary),
+          KeywordList.fromWordInfoList(keywords2, vocabulary), limit,
+          vocabulary);
+      assertEquals(expectedKeywords, merged.toWordInfoList(vocabulary));
+    }
+  }
+
+  @Test
+  public void hasCommonWords() {
+    Vocabulary vocabulary = new Vocabulary();
+    KeywordList keywords0 = KeywordList.fromWordInfoList(
+        Arrays.asList(WordInfo.newBuilder().setWord("apple").build(),
+            WordInfo.newBuilder().setWord("red").build()),
+        vocabulary);
+    KeywordList keywords1 = KeywordList.fromWordInfoList(
+        Arrays.asList(WordInfo.newBuilder().setWord("red").build(),
+            WordInfo.newBuilder().setWord("green").build(),
+            WordInfo.newBuilder().setWord("apple").build()),
+        vocabulary);
+    assertTrue(keywords0.hasCommonWords(keywords1, 1, vocabulary));
+    assertTrue(keywords0.hasCommonWords(keywords1, 2, vocabulary));
+    assertFalse(keywords0.hasCommonWords(keywords1, 3, vocabulary));
+    assertFalse(keywords0.hasCommonWords(KeywordList.EMPTY, 0, vocabulary));
+    assertTrue(KeywordList.EMPTY.hasCommonWords(keywords1, 0, vocabulary));
+  }
+
+  @Test
+  public void truncate() {
+    Vocabulary vocabulary = new Vocabulary();
+    KeywordList keywords = KeywordList.fromWordInfoList(
+        Arrays.asList(WordInfo.newBuilder().setWord("a").setScore(2.0).build(),
+            WordInfo.newBuilder().setWord("b").setScore(1.0).build()),
+        vocabulary);
+    assertSame(keywords, keywords.truncate(0));
+    assertSame(keywords, keywords.truncate(2));
+    KeywordList truncated = keywords.truncate(1);
+    assertEquals(1, truncated.size());
+    assertEquals("a", vocabulary.getWord(truncated.getWordId(0)));
+    assertEquals(2.0, truncated.getScore(0), 0.0);
+  }
+
+}
@@ -0,0 +1,100 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.neoshell.nlp.messaging.Conversation;
+import com.neoshell.nlp.messaging.Message;
+import com.neoshell.nlp.messaging.MessageAnalysisContext;
+import com.neoshell.nlp.messaging.MessageAnalysisUtil;
+import com.neoshell.nlp.test.TestUtil;
+
+public class KeywordVectorTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      return Arrays.asList(text.split(" "));
+    }
+  };
+
+  @Test
+  public void dot() {
+    Vocabulary vocabulary = new Vocabulary();
+    KeywordVector vector1 = createVector(vocabulary,
+        TestUtil.createWordInfo("apple", 1L, 3.0),
+        TestUtil.createWordInfo("red", 1L, 4.0));
+    KeywordVector vector2 = createVector(vocabulary,
+        TestUtil.createWordInfo("blue", 1L, 4.0),
+        TestUtil.createWordInfo("red", 1L, 2.0),
+        TestUtil.createWordInfo("apple", 1L, 4.0));
+    assertEquals(2, vector1.size());
+    assertEquals(1.0, vector1.dot(vector1), 1e-9);
+    // (3 * 4 + 4 * 2) / (5 * 6)
+    assertEquals(20.0 / 30.0, vector1.dot(vector2), 1e-9);
+    assertEquals(20.0 / 30.0, vector2.dot(vector1), 1e-9);
+    KeywordVector vector3 = createVector(vocabulary,
+        TestUtil.createWordInfo("sky", 1L, 1.0));
+    assertEquals(0.0, vector1.dot(vector3), 0.0);
+    assertEquals(0.0, vector1.dot(KeywordVector.EMPTY), 0.0);
+    assertSame(KeywordVector.EMPTY, createVector(vocabulary,
+        TestUtil.createWordInfo("zero", 1L, 0.0)));
+  }
+
+  @Test
+  public void dotOfDifferentSizes() {
+    // Large enough for the ids of the small vector to be searched.
+    Vocabulary vocabulary = new Vocabulary();
+    List<WordInfo> keywords = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      keywords.add(TestUtil.createWordInfo("w" + i, 1L, 1.0));
+    }
+    KeywordVector large = KeywordVector.fromKeywords(
+        KeywordList.fromWordInfoList(keywords, vocabulary));
+    KeywordVector small = createVector(vocabulary,
+        TestUtil.createWordInfo("w99", 1L, 1.0),
+        TestUtil.createWordInfo("w0", 1L, 1.0),
+        TestUtil.createWordInfo("other", 1L, 1.0));
+    double expected = 2.0 / (Math.sqrt(3.0) * 10.0);
+    assertEquals(expected, small.dot(large), 1e-9);
+    assertEquals(expected, large.dot(small), 1e-9);
+  }
+
+  @Test
+  public void mergeMessagesAndComputeKeywords() {
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(
+        new NLPUtil(WHITESPACE_SEGMENTER));
+    List<Message> messages = Arrays.asList(
+        TestUtil.createMessage(0L, 10L, "user0", "user1",
+            "apple apple apple red"),
+        TestUtil.createMessage(1L, 700L, "user1", "user0",
+            "apple apple apple green"),
+        TestUtil.createMessage(2L, 1300L, "user0", "user1",
+            "sky blue apple"));
+    MessageAnalysisContext.Builder context = MessageAnalysisContext
+        .newBuilder().setTimeBucketSeconds(600).setCommonKeywordThreshold(1)
+        .setMinMessagesPerConversation(1);
+    // All share apple.
+    assertEquals(1, messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messages, context.build()).size());
+    // The last one is not about apple as much.
+    List<Conversation> conversations = messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messages,
+            context.setSimilarityThreshold(0.8).build());
+    assertEquals(2, conversations.size());
+    assertEquals(2, conversations.get(0).getMessageCount());
+    assertEquals(1, conversations.get(1).getMessageCount());
+  }
+
+  private static KeywordVector createVector(Vocabulary vocabulary,
+      WordInfo... keywords) {
+    return KeywordVector.fromKeywords(
+        KeywordList.fromWordInfoList(Arrays.asList(keywords), vocabulary));
+  }
+
+}
@@ -0,0 +1,100 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class NLPContextUpdateTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      return Arrays.asList(text.split(" "));
+    }
+  };
+
+  private static final List<String> WORDS = Arrays.asList("apple", "red",
+      "apple", "green", "pear", "apple");
+
+  private static Map<String, Long> createWordCount(Object... wordCounts) {
+    Map<String, Long> wordCount = new HashMap<>();
+    for (int i = 0; i < wordCounts.length; i += 2) {
+      wordCount.put((String) wordCounts[i],
+          ((Number) wordCounts[i + 1]).longValue());
+    }
+    return wordCount;
+  }
+
+  @Test
+  public void lazyScores() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    Map<String, Long> globalWordCount = createWordCount("apple", 100,
+        "red", 10, "green", 1);
+    NLPContext context = nlpUtil.generateNLPContext(globalWordCount);
+    NLPContext lazyContext = nlpUtil.generateNLPContext(globalWordCount,
+        true);
+    assertTrue(lazyContext.getLazyScores());
+    assertEquals(context.getNumAllWords(), lazyContext.getNumAllWords());
+    assertEquals(0.0,
+        lazyContext.getGlobalWordStatsOrThrow("apple").getScore(), 0.0);
+    assertEquals(nlpUtil.getKeywordInfo(WORDS, context, 0),
+        nlpUtil.getKeywordInfo(WORDS, lazyContext, 0));
+  }
+
+  @Test
+  public void updateNLPContext() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    NLPContext context = nlpUtil.generateNLPContext(
+        createWordCount("apple", 100, "red", 10, "green", 1, "pear", 5));
+    List<String> removedWords = new ArrayList<>();
+    NLPContext updatedContext = nlpUtil.updateNLPContext(context,
+        createWordCount("apple", 20, "red", -10, "green", -3, "plum", 2,
+            "kiwi", -1),
+        removedWords);
+    assertTrue(updatedContext.getLazyScores());
+    assertEquals(127L, updatedContext.getNumAllWords());
+    assertEquals(120L,
+        updatedContext.getGlobalWordStatsOrThrow("apple").getCount());
+    assertEquals(2L,
+        updatedContext.getGlobalWordStatsOrThrow("plum").getCount());
+    assertFalse(updatedContext.containsGlobalWordStats("red"));
+    assertFalse(updatedContext.containsGlobalWordStats("green"));
+    assertFalse(updatedContext.containsGlobalWordStats("kiwi"));
+    Collections.sort(removedWords);
+    assertEquals(Arrays.asList("green", "red"), removedWords);
+
+    // Same keywords as a context generated from the new counts.
+    NLPContext expectedContext = nlpUtil.generateNLPContext(
+        createWordCount("apple", 120, "pear", 5, "plum", 2));
+    assertEquals(nlpUtil.getKeywordInfo(WORDS, expectedContext, 0),
+        nlpUtil.getKeywordInfo(WORDS, updatedContext, 0));
+  }
+
+  @Test
+  public void updatePartialNLPContext() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    NLPContext context = nlpUtil.generateNLPContext(
+        createWordCount("apple", 100, "red", 10, "green", 1), true);
+    Map<String, Long> deltas = createWordCount("red", 5);
+    // Only the entries of the changed words.
+    NLPContext partialContext = NLPContext.newBuilder()
+        .setNumAllWords(context.getNumAllWords())
+        .putGlobalWordStats("red", context.getGlobalWordStatsOrThrow("red"))
+        .build();
+    NLPContext changes = nlpUtil.updateNLPContext(partialContext, deltas,
+        null);
+    NLPContext mergedContext = context.toBuilder()
+        .putAllGlobalWordStats(changes.getGlobalWordStatsMap())
+        .setNumAllWords(changes.getNumAllWords()).build();
+    assertEquals(nlpUtil.updateNLPContext(context, deltas, null),
+        mergedContext);
+  }
+
+}
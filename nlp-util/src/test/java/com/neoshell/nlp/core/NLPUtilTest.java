@@ -57,6 +57,19 @@ public class NLPUtilTest {
     assertEquals(expectedResult, result);
   }
 
+  @Test
+  public void getWordOffsets() {
+    String text = "这是 apple";
+    int[] expectedResult = { 0, 1, 1, 2, 3, 8 };
+    int[] result = NLPUtil.getWordOffsets(text,
+        Arrays.asList("这", "是", "apple"));
+    assertArrayEquals(expectedResult, result);
+
+    // Words can't be mapped back to the text.
+    assertNull(NLPUtil.getWordOffsets(text, Arrays.asList("这", "apple")));
+    assertNull(NLPUtil.getWordOffsets(text, Arrays.asList("这", "是", "pear")));
+  }
+
   @Test
   public void isStopWord() {
     for (String word : STOPWORDS_0) {
@@ -69,6 +82,23 @@ public class NLPUtilTest {
     assertFalse(nlpUtil.isStopWord(nonStopWord));
   }
 
+  @Test
+  public void setStopwords() {
+    // Don't touch the shared instance. No segmentation is needed.
+    NLPUtil localNlpUtil = new NLPUtil((Segmenter) null);
+    localNlpUtil.addStopwords(STOPWORDS_0);
+    localNlpUtil.setStopwords(STOPWORDS_1);
+    assertEquals(STOPWORDS_1.size(), localNlpUtil.getNumStopwords());
+    for (String word : STOPWORDS_0) {
+      assertFalse(localNlpUtil.isStopWord(word));
+    }
+    for (String word : STOPWORDS_1) {
+      assertTrue(localNlpUtil.isStopWord(word));
+    }
+    localNlpUtil.clearStopwords();
+    assertEquals(0, localNlpUtil.getNumStopwords());
+  }
+
   @Test
   public void removeStopWords() {
     List<String> words = Arrays.asList("this", "is", "apple", "not", "banana");
@@ -81,15 +111,15 @@ public class NLPUtilTest {
   public void countWord() {
     List<String> texts = Arrays.asList("这是苹果", "那是香蕉", "苹果是苹果", "苹果不是香蕉");
 
-    // Count stop words. Limit > result size.
+    // Count stop words. Limit > result size. Ties are sorted by word.
     List<WordInfo> result = nlpUtil.countWords(texts, true, 100);
     List<WordInfo> expectedResult = Arrays.asList(
-        TestUtil.createWordInfo("苹果", 4L, 0.0),
         TestUtil.createWordInfo("是", 4L, 0.0),
+        TestUtil.createWordInfo("苹果", 4L, 0.0),
         TestUtil.createWordInfo("香蕉", 2L, 0.0),
-        TestUtil.createWordInfo("那", 1L, 0.0),
+        TestUtil.createWordInfo("不", 1L, 0.0),
         TestUtil.createWordInfo("这", 1L, 0.0),
-        TestUtil.createWordInfo("不", 1L, 0.0));
+        TestUtil.createWordInfo("那", 1L, 0.0));
     assertEquals(expectedResult, result);
 
     // Count stop words. Limit < result size.
@@ -98,11 +128,40 @@ public class NLPUtilTest {
     expectedResult = expectedResult.subList(0, limit);
     assertEquals(expectedResult, result);
 
+    // Limit <= 0.
+    assertTrue(nlpUtil.countWords(texts, true, 0).isEmpty());
+
     // Not count stop words. Limit > result size.
     result = nlpUtil.countWords(texts, false, 100);
     expectedResult = Arrays.asList(TestUtil.createWordInfo("苹果", 4L, 0.0),
         TestUtil.createWordInfo("香蕉", 2L, 0.0));
     assertEquals(expectedResult, result);
+
+    // Approximate counting is exact for so few words.
+    result = nlpUtil.countWords(texts, false, 100,
+        ApproximateCountOptions.getDefaultInstance());
+    assertEquals(expectedResult, result);
+  }
+
+  @Test
+  public void countWordShard() {
+    List<String> texts = Arrays.asList("这是苹果", "那是香蕉", "苹果是苹果", "苹果不是香蕉");
+
+    // Sorted by word.
+    List<WordInfo> result = nlpUtil.countWordShard(texts, true);
+    List<WordInfo> expectedResult = Arrays.asList(
+        TestUtil.createWordInfo("不", 1L, 0.0),
+        TestUtil.createWordInfo("是", 4L, 0.0),
+        TestUtil.createWordInfo("苹果", 4L, 0.0),
+        TestUtil.createWordInfo("这", 1L, 0.0),
+        TestUtil.createWordInfo("那", 1L, 0.0),
+        TestUtil.createWordInfo("香蕉", 2L, 0.0));
+    assertEquals(expectedResult, result);
+
+    result = nlpUtil.countWordShard(texts, false);
+    expectedResult = Arrays.asList(TestUtil.createWordInfo("苹果", 4L, 0.0),
+        TestUtil.createWordInfo("香蕉", 2L, 0.0));
+    assertEquals(expectedResult, result);
   }
 
   @Test
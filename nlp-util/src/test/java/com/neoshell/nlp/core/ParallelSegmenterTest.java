@@ -0,0 +1,58 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ParallelSegmenterTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      List<String> words = new ArrayList<>();
+      for (String word : text.split("\\s+")) {
+        if (!word.isEmpty()) {
+          words.add(word);
+        }
+      }
+      return words;
+    }
+  };
+
+  @Test
+  public void split() {
+    assertEquals(Arrays.asList("这是苹果。", "那是香蕉！", "好"),
+        ParallelSegmenter.split("这是苹果。那是香蕉！好", 3));
+    // Not cut before a closing quote, after a decimal point or at the end.
+    assertEquals(Arrays.asList("他说“好。”", "Pi is 3.14. ", "Yes."),
+        ParallelSegmenter.split("他说“好。”Pi is 3.14. Yes.", 3));
+    assertEquals(Arrays.asList("line one\n", "line two"),
+        ParallelSegmenter.split("line one\nline two", 3));
+    assertEquals(Arrays.asList("no sentence end"),
+        ParallelSegmenter.split("no sentence end", 3));
+  }
+
+  @Test
+  public void segment() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append("Sentence number ").append(i).append(" ends here. ");
+    }
+    String text = sb.toString();
+    ParallelSegmenter segmenter = new ParallelSegmenter(WHITESPACE_SEGMENTER,
+        1000, 100, 4);
+    try {
+      assertEquals(WHITESPACE_SEGMENTER.segment(text),
+          segmenter.segment(text));
+      assertEquals(Arrays.asList("Short.", "text."),
+          segmenter.segment("Short. text."));
+    } finally {
+      segmenter.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,48 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ScriptAwareSegmenterTest {
+
+  @Test
+  public void segment() {
+    // Splits the Chinese parts into single chars and records them.
+    final List<String> segmentedTexts = new ArrayList<>();
+    ScriptAwareSegmenter segmenter = new ScriptAwareSegmenter(
+        new Segmenter() {
+          @Override
+          public List<String> segment(String text) {
+            segmentedTexts.add(text);
+            List<String> words = new ArrayList<>();
+            for (int i = 0; i < text.length(); i++) {
+              if (!Character.isWhitespace(text.charAt(i))) {
+                words.add(text.substring(i, i + 1));
+              }
+            }
+            return words;
+          }
+        });
+
+    assertEquals(
+        Arrays.asList("I", "don't", "like", "3.14", "e-mail", ",", "ok",
+            "?"),
+        segmenter.segment("  I don't like 3.14 e-mail, ok? "));
+    assertTrue(segmentedTexts.isEmpty());
+
+    assertEquals(Arrays.asList("我", "用", "iPhone", "打", "电", "话", "。"),
+        segmenter.segment("我用iPhone打电话。"));
+    assertEquals(Arrays.asList("我用", "打电话。"), segmentedTexts);
+
+    segmentedTexts.clear();
+    assertEquals(Arrays.asList("你", "好", "世", "界", "!"),
+        segmenter.segment("你好 世界 !"));
+    assertEquals(Arrays.asList("你好 世界"), segmentedTexts);
+  }
+
+}
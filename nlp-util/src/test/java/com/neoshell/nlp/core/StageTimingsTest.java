@@ -0,0 +1,115 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.neoshell.nlp.messaging.Message;
+import com.neoshell.nlp.messaging.MessageAnalysisContext;
+import com.neoshell.nlp.messaging.MessageAnalysisUtil;
+import com.neoshell.nlp.test.TestUtil;
+
+public class StageTimingsTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      return Arrays.asList(text.split(" "));
+    }
+  };
+
+  @Test
+  public void countWords() {
+    final AtomicLong numRecords = new AtomicLong();
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    nlpUtil.setStageRecorder(new StageRecorder() {
+      @Override
+      public void record(String stage, long elapsedNanos, long numItems) {
+        numRecords.incrementAndGet();
+      }
+    });
+    StageTimings timings = StageTimings.start();
+    nlpUtil.countWords(Arrays.asList("apple red", "red apple pie"), false,
+        10);
+    RequestTiming timing = timings.toRequestTiming();
+    // The recorder of NLPUtil still gets everything.
+    assertEquals(3L, numRecords.get());
+    assertEquals(2, timing.getStageCount());
+    StageTiming segment = timing.getStage(0);
+    assertEquals(StageRecorder.SEGMENT, segment.getStage());
+    assertEquals(2, segment.getNumCalls());
+    assertEquals(22L, segment.getNumItems());
+    StageTiming removeStopWords = timing.getStage(1);
+    assertEquals(StageRecorder.REMOVE_STOP_WORDS, removeStopWords.getStage());
+    assertEquals(1, removeStopWords.getNumCalls());
+    assertEquals(5L, removeStopWords.getNumItems());
+    assertTrue(timing.getElapsedMicros() >= segment.getElapsedMicros()
+        + removeStopWords.getElapsedMicros());
+
+    // Nothing is collected once stopped.
+    nlpUtil.segment("apple");
+    assertEquals(timing, timings.toRequestTiming());
+  }
+
+  @Test
+  public void otherThreads() throws Exception {
+    final NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    StageTimings timings = StageTimings.start();
+    try {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          nlpUtil.segment("apple");
+        }
+      });
+      thread.start();
+      thread.join();
+    } finally {
+      timings.stop();
+    }
+    assertEquals(0, timings.toRequestTiming().getStageCount());
+  }
+
+  @Test
+  public void mergeMessagesAndComputeKeywords() {
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(
+        new NLPUtil(WHITESPACE_SEGMENTER));
+    List<Message> messages = Arrays.asList(
+        TestUtil.createMessage(0L, 10L, "user0", "user1", "apple red"),
+        TestUtil.createMessage(1L, 700L, "user1", "user0", "red apple"),
+        TestUtil.createMessage(2L, 1300L, "user0", "user1", "blue sky"));
+    MessageAnalysisContext context = MessageAnalysisContext.newBuilder()
+        .setTimeBucketSeconds(600).setCommonKeywordThreshold(1)
+        .setMinMessagesPerConversation(1).build();
+    StageTimings timings = StageTimings.start();
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages, context);
+    RequestTiming timing = timings.toRequestTiming();
+    StageTiming mergeConversations = getStage(timing,
+        StageRecorder.MERGE_CONVERSATIONS);
+    assertEquals(3L, mergeConversations.getNumItems());
+    // One merge, then a pass without any.
+    StageTiming mergePass = getStage(timing, StageRecorder.MERGE_PASS);
+    assertEquals(2, mergePass.getNumCalls());
+    assertEquals(5L, mergePass.getNumItems());
+    StageTiming buildConversations = getStage(timing,
+        StageRecorder.BUILD_CONVERSATIONS);
+    assertEquals(2L, buildConversations.getNumItems());
+    assertEquals(3, getStage(timing, StageRecorder.GET_KEYWORD_INFO)
+        .getNumCalls());
+  }
+
+  private static StageTiming getStage(RequestTiming timing, String stage) {
+    for (StageTiming stageTiming : timing.getStageList()) {
+      if (stageTiming.getStage().equals(stage)) {
+        return stageTiming;
+      }
+    }
+    fail(stage);
+    return null;
+  }
+
+}
@@ -0,0 +1,151 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.neoshell.nlp.messaging.Message;
+import com.neoshell.nlp.messaging.MessageAnalysisContext;
+import com.neoshell.nlp.messaging.MessageAnalysisUtil;
+import com.neoshell.nlp.test.TestUtil;
+
+public class TokenizedCorpusTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      return Arrays.asList(text.split(" "));
+    }
+  };
+
+  // Fails the test if anything is segmented.
+  private static final Segmenter FAILING_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      throw new AssertionError("Segmented " + text);
+    }
+  };
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void countWords() throws Exception {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    nlpUtil.addStopwords(Arrays.asList("is"));
+    List<String> texts = Arrays.asList("this is apple", "apple is red",
+        "this apple");
+    TokenizedCorpusWriter writer = new TokenizedCorpusWriter(
+        folder.getRoot(), "corpus");
+    // Not in id order.
+    for (int i = 0; i < texts.size(); i++) {
+      writer.add(10L - i, nlpUtil.segment(texts.get(i)));
+    }
+    writer.close();
+
+    TokenizedCorpus corpus = TokenizedCorpus.open(folder.getRoot(),
+        "corpus");
+    try {
+      assertEquals(3, corpus.getNumTexts());
+      assertEquals(4, corpus.getVocabularySize());
+      assertEquals(Arrays.asList("apple", "is", "red"),
+          corpus.getWords(corpus.find(9L)));
+      assertEquals(-1, corpus.find(11L));
+      NLPUtil failingNLPUtil = new NLPUtil(FAILING_SEGMENTER);
+      failingNLPUtil.addStopwords(Arrays.asList("is"));
+      for (boolean countStopWords : new boolean[] { true, false }) {
+        assertEquals(
+            new HashSet<>(nlpUtil.countWords(texts, countStopWords, 100)),
+            new HashSet<>(
+                failingNLPUtil.countWords(corpus, countStopWords, 100)));
+      }
+      List<WordInfo> result = failingNLPUtil.countWords(corpus, false, 1);
+      assertEquals(Arrays.asList(TestUtil.createWordInfo("apple", 3L, 0.0)),
+          result);
+      assertTrue(failingNLPUtil.countWords(corpus, false, 0).isEmpty());
+      assertTrue(failingNLPUtil.countWords(corpus, true, -1).isEmpty());
+    } finally {
+      corpus.close();
+    }
+  }
+
+  @Test
+  public void chunks() throws Exception {
+    TokenizedCorpusWriter writer = new TokenizedCorpusWriter(
+        folder.getRoot(), "chunks");
+    List<List<String>> texts = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      List<String> words = new ArrayList<>();
+      for (int j = 0; j < i; j++) {
+        words.add("word" + (i * j % 7));
+      }
+      texts.add(words);
+      writer.add(i, words);
+    }
+    writer.close();
+
+    // 4 word ids per chunk, so that most texts span several chunks.
+    TokenizedCorpus corpus = TokenizedCorpus.open(folder.getRoot(), "chunks",
+        2);
+    try {
+      for (int i = 0; i < texts.size(); i++) {
+        assertEquals(texts.get(i), corpus.getWords(corpus.find(i)));
+        for (int j = 0; j < i; j++) {
+          assertEquals(texts.get(i).get(j),
+              corpus.getWord(corpus.getWordId(corpus.find(i), j)));
+        }
+      }
+    } finally {
+      corpus.close();
+    }
+  }
+
+  @Test
+  public void mergeMessagesAndComputeKeywords() throws Exception {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    List<Message> messages = new ArrayList<>();
+    TokenizedCorpusWriter writer = new TokenizedCorpusWriter(
+        folder.getRoot(), "messages");
+    String[] contents = { "apple pie", "apple juice", "red car", "car wash" };
+    Map<String, Long> globalWordCount = new HashMap<>();
+    for (int i = 0; i < contents.length; i++) {
+      Message message = TestUtil.createMessage(i, i * 100L, "a", "b",
+          contents[i]);
+      messages.add(message);
+      List<String> words = nlpUtil.segment(contents[i]);
+      writer.add(message.getId(), words);
+      for (String word : words) {
+        Long count = globalWordCount.get(word);
+        globalWordCount.put(word, count == null ? 1L : count + 1L);
+      }
+    }
+    writer.close();
+    MessageAnalysisContext context = MessageAnalysisContext.newBuilder()
+        .setTimeBucketSeconds(100).setKeywordLimit(2)
+        .setCommonKeywordThreshold(1).setMinMessagesPerConversation(1)
+        .setNlpContext(nlpUtil.generateNLPContext(globalWordCount)).build();
+
+    TokenizedCorpus corpus = TokenizedCorpus.open(folder.getRoot(),
+        "messages");
+    try {
+      assertEquals(
+          new MessageAnalysisUtil(nlpUtil)
+              .mergeMessagesAndComputeKeywords(messages, context),
+          new MessageAnalysisUtil(new NLPUtil(FAILING_SEGMENTER))
+              .mergeMessagesAndComputeKeywords(messages, context, corpus,
+                  CancellationSignal.NONE));
+    } finally {
+      corpus.close();
+    }
+  }
+
+}
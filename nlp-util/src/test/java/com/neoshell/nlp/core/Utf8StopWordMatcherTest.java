@@ -0,0 +1,91 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class Utf8StopWordMatcherTest {
+
+  private static final Segmenter WHITESPACE_SEGMENTER = new Segmenter() {
+    @Override
+    public List<String> segment(String text) {
+      return Arrays.asList(text.split(" "));
+    }
+  };
+
+  private static final List<String> STOP_WORDS = Arrays.asList("the", "is",
+      "我们", "über", "σας", "i̇stanbul", "ⱥ", "😀a");
+
+  private static final List<String> WORDS = Arrays.asList("the", "The",
+      "THE", "they", "th", "", "我们", "我", "我们的", "Über", "ÜBER", "uber",
+      "ΣΑΣ", "Σας", "σας", "İstanbul", "istanbul", "Ⱥ", "ⱥ", "😀A", "😀a",
+      "😀", "is", "IS", "iS");
+
+  @Test
+  public void sameAsStrings() {
+    Utf8StopWordMatcher matcher = new Utf8StopWordMatcher(
+        new HashSet<>(STOP_WORDS));
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    nlpUtil.setStopwords(STOP_WORDS);
+    byte[] buffer = new byte[64];
+    for (String word : WORDS) {
+      assertEquals(word, nlpUtil.isStopWord(word),
+          matcher.isStopWord(ByteString.copyFromUtf8(word), buffer));
+    }
+  }
+
+  @Test
+  public void localeSensitive() {
+    Locale locale = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      Utf8StopWordMatcher matcher = new Utf8StopWordMatcher(
+          new HashSet<>(Arrays.asList("ııı", "iii")));
+      byte[] buffer = new byte[64];
+      assertTrue(matcher.isStopWord(ByteString.copyFromUtf8("III"), buffer));
+      assertTrue(matcher.isStopWord(ByteString.copyFromUtf8("İİİ"), buffer));
+    } finally {
+      Locale.setDefault(locale);
+    }
+  }
+
+  @Test
+  public void invalidUtf8() {
+    Utf8StopWordMatcher matcher = new Utf8StopWordMatcher(
+        new HashSet<>(STOP_WORDS));
+    byte[] buffer = new byte[64];
+    assertFalse(matcher.isStopWord(
+        ByteString.copyFrom(new byte[] { 't', 'h', (byte) 0xE6 }), buffer));
+    assertFalse(matcher.isStopWord(
+        ByteString.copyFrom(new byte[] { (byte) 0xFF, 'a' }), buffer));
+  }
+
+  @Test
+  public void removeStopWordsUtf8() {
+    NLPUtil nlpUtil = new NLPUtil(WHITESPACE_SEGMENTER);
+    nlpUtil.addStopwords(Arrays.asList("the", "我们"));
+    ByteString apple = ByteString.copyFromUtf8("apple");
+    List<ByteString> words = Arrays.asList(ByteString.copyFromUtf8("The"),
+        apple, ByteString.copyFromUtf8("我们"));
+    List<ByteString> result = nlpUtil.removeStopWordsUtf8(words);
+    assertEquals(1, result.size());
+    assertSame(apple, result.get(0));
+    // Follows the stop words.
+    nlpUtil.clearStopwords();
+    assertEquals(words, nlpUtil.removeStopWordsUtf8(words));
+    // Long words.
+    char[] chars = new char[1000];
+    Arrays.fill(chars, 'Ⱥ');
+    nlpUtil.setStopwords(Arrays.asList(new String(chars).toLowerCase()));
+    assertTrue(nlpUtil.removeStopWordsUtf8(
+        Arrays.asList(ByteString.copyFromUtf8(new String(chars)))).isEmpty());
+  }
+
+}
@@ -0,0 +1,71 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class VocabularyTest {
+
+  @Test
+  public void ids() {
+    Vocabulary vocabulary = new Vocabulary();
+    assertArrayEquals(new int[] { 0, 1, 0, 2 },
+        vocabulary.addAll(Arrays.asList("a", "b", "a", "c")));
+    assertEquals(3, vocabulary.size());
+    assertEquals(1, vocabulary.add("b"));
+    assertEquals(2, vocabulary.getId("c"));
+    assertEquals(-1, vocabulary.getId("d"));
+    assertEquals("c", vocabulary.getWord(2));
+  }
+
+  @Test
+  public void isStopWord() {
+    Vocabulary vocabulary = new Vocabulary();
+    int the = vocabulary.add("The");
+    int apple = vocabulary.add("apple");
+    Set<String> stopwords = new HashSet<>(Arrays.asList("the"));
+    assertTrue(vocabulary.isStopWord(the, stopwords));
+    assertFalse(vocabulary.isStopWord(apple, stopwords));
+    // Another set is checked again.
+    Set<String> otherStopwords = new HashSet<>(Arrays.asList("apple"));
+    assertFalse(vocabulary.isStopWord(the, otherStopwords));
+    assertTrue(vocabulary.isStopWord(apple, otherStopwords));
+    assertTrue(vocabulary.isStopWord(vocabulary.add("APPLE"),
+        otherStopwords));
+  }
+
+  @Test
+  public void getFrequencyScore() {
+    Vocabulary vocabulary = new Vocabulary();
+    int apple = vocabulary.add("apple");
+    int red = vocabulary.add("red");
+    NLPContext context = NLPContext.newBuilder()
+        .putGlobalWordStats("apple",
+            WordInfo.newBuilder().setWord("apple").setScore(1.5).build())
+        .build();
+    WordFrequencyModel model = new NLPContextWordFrequencyModel(context);
+    assertEquals(1.5, vocabulary.getFrequencyScore(apple, model), 0.0);
+    assertTrue(Double.isNaN(vocabulary.getFrequencyScore(red, model)));
+    // Another model is looked up again.
+    assertTrue(Double.isNaN(vocabulary.getFrequencyScore(apple,
+        new NLPContextWordFrequencyModel(NLPContext.getDefaultInstance()))));
+  }
+
+  @Test
+  public void scratch() {
+    Vocabulary vocabulary = new Vocabulary();
+    int a = vocabulary.add("a");
+    int b = vocabulary.add("b");
+    assertEquals(-1, vocabulary.getScratch(a));
+    vocabulary.setScratch(a, 5);
+    assertEquals(5, vocabulary.getScratch(a));
+    assertEquals(-1, vocabulary.getScratch(b));
+    vocabulary.clearScratch();
+    assertEquals(-1, vocabulary.getScratch(a));
+  }
+
+}
@@ -0,0 +1,86 @@
+package com.neoshell.nlp.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WordCountMergerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void generateNLPContextFile() throws Exception {
+    List<List<String>> workerWords = Arrays.asList(
+        Arrays.asList("a", "b", "c", "a", "d", "e", "a"),
+        Arrays.asList("e", "f", "b", "g"),
+        Arrays.asList("h", "a", "i", "j", "k", "c"));
+    Map<String, Long> globalWordCount = new HashMap<>();
+    List<File> runFiles = new ArrayList<>();
+    for (int i = 0; i < workerWords.size(); i++) {
+      // At most 2 words in memory, so that each worker writes several runs.
+      WordCountShardWriter writer = new WordCountShardWriter(folder.getRoot(),
+          "worker" + i, 2);
+      writer.addWords(workerWords.get(i));
+      writer.close();
+      assertTrue(writer.getRunFiles().size() > 1);
+      runFiles.addAll(writer.getRunFiles());
+      for (String word : workerWords.get(i)) {
+        Long count = globalWordCount.get(word);
+        globalWordCount.put(word, count == null ? 1L : count + 1L);
+      }
+    }
+
+    // Merge 2 runs at a time to go through several passes.
+    File contextFile = new File(folder.getRoot(), "context.bin");
+    new WordCountMerger(folder.newFolder(), 2)
+        .generateNLPContextFile(runFiles, contextFile);
+    NLPContext expectedResult = new NLPUtil((Segmenter) null)
+        .generateNLPContext(globalWordCount);
+    assertEquals(expectedResult, WordCountMerger.readNLPContext(contextFile));
+  }
+
+  @Test
+  public void merge() throws Exception {
+    WordCountShardWriter writer0 = new WordCountShardWriter(folder.getRoot(),
+        "worker0", 100);
+    writer0.add("b", 2L);
+    writer0.add("a", 1L);
+    writer0.close();
+    WordCountShardWriter writer1 = new WordCountShardWriter(folder.getRoot(),
+        "worker1", 100);
+    writer1.addWordCounts(Arrays.asList(
+        WordInfo.newBuilder().setWord("c").setCount(3L).build(),
+        WordInfo.newBuilder().setWord("b").setCount(4L).build()));
+    writer1.close();
+    List<File> runFiles = new ArrayList<>(writer0.getRunFiles());
+    runFiles.addAll(writer1.getRunFiles());
+
+    File mergedRun = new File(folder.getRoot(), "merged.run");
+    long numAllWords = new WordCountMerger(folder.getRoot()).merge(runFiles,
+        mergedRun);
+    assertEquals(10L, numAllWords);
+    List<WordInfo> expectedResult = Arrays.asList(
+        WordInfo.newBuilder().setWord("a").setCount(1L).build(),
+        WordInfo.newBuilder().setWord("b").setCount(6L).build(),
+        WordInfo.newBuilder().setWord("c").setCount(3L).build());
+    List<WordInfo> result = new ArrayList<>();
+    WordCountRunReader reader = new WordCountRunReader(mergedRun);
+    WordInfo wordInfo;
+    while ((wordInfo = reader.next()) != null) {
+      result.add(wordInfo);
+    }
+    reader.close();
+    assertEquals(expectedResult, result);
+  }
+
+}
@@ -0,0 +1,221 @@
+package com.neoshell.nlp.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.neoshell.nlp.core.DecayedWordStats;
+import com.neoshell.nlp.core.NLPContext;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.core.Segmenter;
+import com.neoshell.nlp.test.TestUtil;
+
+public class BucketCacheTest {
+
+  // Splits at whitespace and counts the texts it segments.
+  private static class CountingSegmenter implements Segmenter {
+    private int numTexts;
+
+    @Override
+    public List<String> segment(String text) {
+      numTexts++;
+      return Arrays.asList(text.split(" "));
+    }
+  }
+
+  private static final String[] TEXTS = { "apple red apple", "sky blue sky",
+      "apple green tree", "red sky night", "tree apple blue", "night sky red",
+      "green apple red", "blue tree sky" };
+
+  @Test
+  public void overlappingWindows() {
+    CountingSegmenter segmenter = new CountingSegmenter();
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(
+        new NLPUtil(segmenter));
+    BucketCache bucketCache = new BucketCache(100);
+    messageAnalysisUtil.setBucketCache(bucketCache);
+    MessageAnalysisUtil uncached = new MessageAnalysisUtil(
+        new NLPUtil(new CountingSegmenter()));
+    MessageAnalysisContext context = createContext(5);
+    // 2 messages per bucket.
+    List<Message> messages = createMessages();
+
+    List<Message> window = messages.subList(0, 6);
+    assertEquals(uncached.mergeMessagesAndComputeKeywords(window, context),
+        messageAnalysisUtil.mergeMessagesAndComputeKeywords(window, context));
+    assertEquals(6, segmenter.numTexts);
+    assertEquals(0, bucketCache.getHits());
+    assertEquals(3, bucketCache.getMisses());
+    assertEquals(3, bucketCache.getSize());
+
+    // Only the new bucket is analyzed.
+    window = messages.subList(2, 8);
+    assertEquals(uncached.mergeMessagesAndComputeKeywords(window, context),
+        messageAnalysisUtil.mergeMessagesAndComputeKeywords(window, context));
+    assertEquals(8, segmenter.numTexts);
+    assertEquals(2, bucketCache.getHits());
+    assertEquals(4, bucketCache.getMisses());
+
+    // A changed bucket is analyzed again.
+    List<Message> changed = new ArrayList<>(window);
+    changed.set(5, TestUtil.createMessage(100L, 3900L, "user0", "user1",
+        "apple night"));
+    assertEquals(uncached.mergeMessagesAndComputeKeywords(changed, context),
+        messageAnalysisUtil.mergeMessagesAndComputeKeywords(changed, context));
+    assertEquals(10, segmenter.numTexts);
+    assertEquals(4, bucketCache.getHits());
+    assertEquals(5, bucketCache.getMisses());
+  }
+
+  @Test
+  public void invalidation() {
+    CountingSegmenter segmenter = new CountingSegmenter();
+    NLPUtil nlpUtil = new NLPUtil(segmenter);
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(nlpUtil);
+    messageAnalysisUtil.setBucketCache(new BucketCache(100));
+    List<Message> messages = createMessages();
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages,
+        createContext(5));
+    assertEquals(8, segmenter.numTexts);
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages,
+        createContext(5));
+    assertEquals(8, segmenter.numTexts);
+
+    // Other keyword limit.
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages,
+        createContext(1));
+    assertEquals(16, segmenter.numTexts);
+
+    // Other stop words.
+    nlpUtil.addStopwords(Arrays.asList("apple"));
+    List<Conversation> conversations = messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messages, createContext(5));
+    assertEquals(24, segmenter.numTexts);
+    for (Conversation conversation : conversations) {
+      for (int i = 0; i < conversation.getKeywordCount(); i++) {
+        assertNotEquals("apple", conversation.getKeyword(i).getWord());
+      }
+    }
+  }
+
+  @Test
+  public void changedMessageOrStopWords() {
+    CountingSegmenter segmenter = new CountingSegmenter();
+    NLPUtil nlpUtil = new NLPUtil(segmenter);
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(nlpUtil);
+    BucketCache bucketCache = new BucketCache(100);
+    messageAnalysisUtil.setBucketCache(bucketCache);
+    MessageAnalysisContext context = createContext(5);
+    List<Message> messages = createMessages().subList(0, 2);
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages, context);
+    // Equal copies hit.
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(
+        new ArrayList<>(createMessages().subList(0, 2)), context);
+    assertEquals(1, bucketCache.getHits());
+    assertEquals(1, bucketCache.getMisses());
+
+    // Same id and timestamp, other content.
+    List<Message> changed = new ArrayList<>(messages);
+    changed.set(1, messages.get(1).toBuilder().setContent("sky blue").build());
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(changed, context);
+    assertEquals(1, bucketCache.getHits());
+    assertEquals(2, bucketCache.getMisses());
+    assertEquals(4, segmenter.numTexts);
+
+    // Other stop words version.
+    nlpUtil.addStopwords(Arrays.asList("night"));
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages, context);
+    assertEquals(1, bucketCache.getHits());
+    assertEquals(3, bucketCache.getMisses());
+    assertEquals(6, segmenter.numTexts);
+  }
+
+  @Test
+  public void keys() {
+    BucketCache bucketCache = new BucketCache(100);
+    List<Message> messages = createMessages();
+    byte[] contextDigest = BucketCache.digest(NLPContext.getDefaultInstance());
+    BucketCache.Key key = bucketCache.createKey(messages, contextDigest, 5, 0L);
+    assertEquals(key, bucketCache.createKey(createMessages(),
+        BucketCache.digest(NLPContext.getDefaultInstance()), 5, 0L));
+    // Content moved from one message to the next.
+    List<Message> moved = new ArrayList<>(messages.subList(0, 2));
+    moved.set(0, moved.get(0).toBuilder().setContent("apple red").build());
+    moved.set(1, moved.get(1).toBuilder()
+        .setContent("apple sky blue sky").build());
+    assertNotEquals(bucketCache.createKey(messages.subList(0, 2),
+        contextDigest, 5, 0L), bucketCache.createKey(moved, contextDigest, 5,
+        0L));
+    assertNotEquals(key, bucketCache.createKey(messages, contextDigest, 5, 1L));
+    assertNotEquals(key, bucketCache.createKey(messages, contextDigest, 4, 0L));
+    // Other context.
+    NLPContext context = NLPContext.newBuilder().setNumAllWords(1L).build();
+    assertNotEquals(key,
+        bucketCache.createKey(messages, BucketCache.digest(context), 5, 0L));
+  }
+
+  @Test
+  public void eviction() {
+    CountingSegmenter segmenter = new CountingSegmenter();
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(
+        new NLPUtil(segmenter));
+    BucketCache bucketCache = new BucketCache(2);
+    messageAnalysisUtil.setBucketCache(bucketCache);
+    MessageAnalysisContext context = createContext(5);
+    List<Message> messages = createMessages();
+
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages, context);
+    assertEquals(2, bucketCache.getSize());
+    assertEquals(2, bucketCache.getEvictions());
+    // The last 2 buckets are kept.
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages.subList(4, 8),
+        context);
+    assertEquals(8, segmenter.numTexts);
+    assertEquals(2, bucketCache.getHits());
+
+    bucketCache.clear();
+    assertEquals(0, bucketCache.getSize());
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages.subList(4, 8),
+        context);
+    assertEquals(12, segmenter.numTexts);
+  }
+
+  @Test
+  public void wordStats() {
+    // Not cached, since scores depend on previous calls.
+    CountingSegmenter segmenter = new CountingSegmenter();
+    MessageAnalysisUtil messageAnalysisUtil = new MessageAnalysisUtil(
+        new NLPUtil(segmenter));
+    BucketCache bucketCache = new BucketCache(100);
+    messageAnalysisUtil.setBucketCache(bucketCache);
+    messageAnalysisUtil.setWordStats(new DecayedWordStats(3600, 1000));
+    List<Message> messages = createMessages();
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages,
+        createContext(5));
+    messageAnalysisUtil.mergeMessagesAndComputeKeywords(messages,
+        createContext(5));
+    assertEquals(16, segmenter.numTexts);
+    assertEquals(0, bucketCache.getSize());
+  }
+
+  private static MessageAnalysisContext createContext(int keywordLimit) {
+    return MessageAnalysisContext.newBuilder().setTimeBucketSeconds(600)
+        .setCommonKeywordThreshold(2).setMinMessagesPerConversation(1)
+        .setKeywordLimit(keywordLimit).build();
+  }
+
+  // 2 messages in each of 4 time buckets.
+  private static List<Message> createMessages() {
+    List<Message> messages = new ArrayList<>();
+    for (int i = 0; i < TEXTS.length; i++) {
+      messages.add(TestUtil.createMessage(i, 1800L + i * 300L,
+          "user" + (i % 2), "user" + ((i + 1) % 2), TEXTS[i]));
+    }
+    return messages;
+  }
+
+}
@@ -2,10 +2,8 @@ package com.neoshell.nlp.messaging;
 
 import static org.junit.Assert.*;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.BeforeClass;
@@ -26,12 +24,6 @@ public class MessageAnalysisUtilTest {
   private static MessageAnalysisUtil messageAnalysisUtil;
   private static MessageAnalysisContext messageAnalysisUtilContext;
 
-  // For testing private methods.
-  private static Method analyzeConversationMethod;
-  private static Method hasCommonKeywordMethod;
-  private static Method mergeConversationMethod;
-  private static Method mergeConversationsMethod;
-
   @BeforeClass
   public static void setUpTestData() {
     try {
@@ -49,205 +41,130 @@ public class MessageAnalysisUtilTest {
           .setCommonKeywordThreshold(commonKeywordThreshold)
           .setKeywordLimit(keywordLimit)
           .setMinMessagesPerConversation(minMessagesPerConversation).build();
-
-      analyzeConversationMethod = messageAnalysisUtil.getClass()
-          .getDeclaredMethod("analyzeConversation", Conversation.class,
-              NLPContext.class, int.class);
-      hasCommonKeywordMethod = messageAnalysisUtil.getClass().getDeclaredMethod(
-          "hasCommonKeyword", Conversation.class, Conversation.class,
-          int.class);
-      mergeConversationMethod = messageAnalysisUtil.getClass()
-          .getDeclaredMethod("mergeConversation", Conversation.class,
-              Conversation.class, int.class);
-      mergeConversationsMethod = messageAnalysisUtil.getClass()
-          .getDeclaredMethod("mergeConversations", LinkedList.class, int.class,
-              int.class);
-      analyzeConversationMethod.setAccessible(true);
-      hasCommonKeywordMethod.setAccessible(true);
-      mergeConversationMethod.setAccessible(true);
-      mergeConversationsMethod.setAccessible(true);
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
 
-  // Test private method.
+  // A single time bucket.
   @Test
   public void analyzeConversation() {
-    try {
-      // Case 0: No messages.
-      Conversation conversation = (Conversation) analyzeConversationMethod
-          .invoke(messageAnalysisUtil, Conversation.newBuilder().build(),
-              nlpContext, 0);
-      assertEquals(0L, conversation.getStartTimestampSeconds());
-      assertEquals(0L, conversation.getEndTimestampSeconds());
-      assertEquals(0L, conversation.getNumWords());
-      assertEquals(0L, conversation.getNumNonStopWords());
-      assertTrue(conversation.getKeywordList().isEmpty());
-
-      // Case 1: Has messages.
-      conversation = (Conversation) analyzeConversationMethod.invoke(
-          messageAnalysisUtil,
-          Conversation.newBuilder()
-              .addMessage(TestUtil.createMessage(0L, 600L, "user0", "user1",
-                  "this is apple"))
-              .addMessage(TestUtil.createMessage(1L, 1800L, "user1", "user0",
-                  "I like apple"))
-              .build(),
-          nlpContext, 0);
-      List<WordInfo> expectedKeywords = Arrays.asList(
-          TestUtil.createWordInfo("apple", 2L, 2.0),
-          TestUtil.createWordInfo("like", 1L, 1.0));
-      assertEquals(600L, conversation.getStartTimestampSeconds());
-      assertEquals(1800L, conversation.getEndTimestampSeconds());
-      assertEquals(6L, conversation.getNumWords());
-      assertEquals(3L, conversation.getNumNonStopWords());
-      assertEquals(expectedKeywords, conversation.getKeywordList());
-    } catch (Exception e) {
-      e.printStackTrace();
-      fail();
-    }
+    MessageAnalysisContext context = createContext(3600, 1);
+    // Case 0: No messages.
+    assertTrue(messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(new ArrayList<>(), context)
+        .isEmpty());
+
+    // Case 1: Has messages.
+    Message message0 = TestUtil.createMessage(0L, 600L, "user0", "user1",
+        "this is apple");
+    Message message1 = TestUtil.createMessage(1L, 1800L, "user1", "user0",
+        "I like apple");
+    ArrayList<Conversation> conversations = messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(Arrays.asList(message0, message1),
+            context);
+    assertEquals(1, conversations.size());
+    Conversation conversation = conversations.get(0);
+    List<WordInfo> expectedKeywords = Arrays.asList(
+        TestUtil.createWordInfo("apple", 2L, 2.0),
+        TestUtil.createWordInfo("like", 1L, 1.0));
+    assertEquals(Arrays.asList(message0, message1),
+        conversation.getMessageList());
+    assertEquals(600L, conversation.getStartTimestampSeconds());
+    assertEquals(1800L, conversation.getEndTimestampSeconds());
+    assertEquals(6L, conversation.getNumWords());
+    assertEquals(3L, conversation.getNumNonStopWords());
+    assertEquals(expectedKeywords, conversation.getKeywordList());
   }
 
-  // Test private method.
+  // Two time buckets are merged if they have enough common keywords.
   @Test
   public void hasCommonKeyword() {
-    try {
-      int keywordLimit = 0;
-      Message message0 = TestUtil.createMessage(0L, 600L, "user0", "user1",
-          "a b c");
-      Message message1 = TestUtil.createMessage(1L, 1200L, "user1", "user0",
-          "a b");
-
-      Conversation conversation0 = (Conversation) analyzeConversationMethod
-          .invoke(messageAnalysisUtil,
-              Conversation.newBuilder().addMessage(message0).build(),
-              nlpContext, keywordLimit);
-      Conversation conversation1 = (Conversation) analyzeConversationMethod
-          .invoke(messageAnalysisUtil,
-              Conversation.newBuilder().addMessage(message1).build(),
-              nlpContext, keywordLimit);
-      assertTrue((boolean) hasCommonKeywordMethod.invoke(messageAnalysisUtil,
-          conversation0, conversation1, 1));
-      assertTrue((boolean) hasCommonKeywordMethod.invoke(messageAnalysisUtil,
-          conversation0, conversation1, 2));
-      assertFalse((boolean) hasCommonKeywordMethod.invoke(messageAnalysisUtil,
-          conversation0, conversation1, 3));
-    } catch (Exception e) {
-      e.printStackTrace();
-      fail();
-    }
+    List<Message> messages = Arrays.asList(
+        TestUtil.createMessage(0L, 600L, "user0", "user1", "a b c"),
+        TestUtil.createMessage(1L, 1200L, "user1", "user0", "a b"));
+    assertEquals(1, messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messages, createContext(600, 1))
+        .size());
+    assertEquals(1, messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messages, createContext(600, 2))
+        .size());
+    assertEquals(2, messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messages, createContext(600, 3))
+        .size());
   }
 
-  // Test private method.
   @Test
   public void mergeConversation() {
-    try {
-      int keywordLimit = 0;
-      Message message0 = TestUtil.createMessage(0L, 600L, "user0", "user1",
-          "a b c c");
-      Message message1 = TestUtil.createMessage(1L, 1200L, "user1", "user0",
-          "b c d");
-
-      Conversation conversation0 = (Conversation) analyzeConversationMethod
-          .invoke(messageAnalysisUtil,
-              Conversation.newBuilder().addMessage(message0).build(),
-              nlpContext, keywordLimit);
-      Conversation conversation1 = (Conversation) analyzeConversationMethod
-          .invoke(messageAnalysisUtil,
-              Conversation.newBuilder().addMessage(message1).build(),
-              nlpContext, keywordLimit);
-      Conversation expectedConversation = Conversation.newBuilder()
-          .addMessage(message0).addMessage(message1)
-          .setStartTimestampSeconds(600L).setEndTimestampSeconds(1200L)
-          .setNumWords(7L).setNumNonStopWords(7L)
-          .addAllKeyword(Arrays.asList(TestUtil.createWordInfo("c", 3L, 3.0),
-              TestUtil.createWordInfo("b", 2L, 2.0),
-              TestUtil.createWordInfo("a", 1L, 1.0),
-              TestUtil.createWordInfo("d", 1L, 1.0)))
-          .build();
-      Conversation conversation = (Conversation) mergeConversationMethod.invoke(
-          messageAnalysisUtil, conversation0, conversation1, keywordLimit);
-      assertEquals(expectedConversation, conversation);
-    } catch (Exception e) {
-      e.printStackTrace();
-      fail();
-    }
+    Message message0 = TestUtil.createMessage(0L, 600L, "user0", "user1",
+        "a b c c");
+    Message message1 = TestUtil.createMessage(1L, 1200L, "user1", "user0",
+        "b c d");
+    Conversation expectedConversation = Conversation.newBuilder()
+        .addMessage(message0).addMessage(message1)
+        .setStartTimestampSeconds(600L).setEndTimestampSeconds(1200L)
+        .setNumWords(7L).setNumNonStopWords(7L)
+        .addAllKeyword(Arrays.asList(TestUtil.createWordInfo("c", 3L, 3.0),
+            TestUtil.createWordInfo("b", 2L, 2.0),
+            TestUtil.createWordInfo("a", 1L, 1.0),
+            TestUtil.createWordInfo("d", 1L, 1.0)))
+        .build();
+    assertEquals(Arrays.asList(expectedConversation),
+        messageAnalysisUtil.mergeMessagesAndComputeKeywords(
+            Arrays.asList(message0, message1), createContext(600, 1)));
   }
 
-  // Test private method.
-  @SuppressWarnings("unchecked")
   @Test
   public void mergeConversations() {
-    try {
-      int commonKeywordThreshold = 1;
-      int keywordLimit = 0;
-      Message[] messages = {
-          TestUtil.createMessage(0L, 600L, "user0", "user1", "a b"),
-          TestUtil.createMessage(1L, 1200L, "user1", "user0", "b c"),
-          TestUtil.createMessage(2L, 1800L, "user0", "user1", "d"),
-          TestUtil.createMessage(3L, 2400L, "user1", "user0", "d a"),
-          TestUtil.createMessage(4L, 3000L, "user0", "user1", "c c") };
-      LinkedList<Conversation> conversations = new LinkedList<>();
-      for (int i = 0; i < messages.length; i++) {
-        Conversation conversation = Conversation.newBuilder()
-            .addMessage(messages[i]).build();
-        conversation = (Conversation) analyzeConversationMethod.invoke(
-            messageAnalysisUtil, conversation, nlpContext, keywordLimit);
-        conversations.add(conversation);
-      }
-      LinkedList<Conversation> mergedConversations = null;
-
-      // Case 0: No Conversations.
-      mergedConversations = (LinkedList<Conversation>) mergeConversationsMethod
-          .invoke(messageAnalysisUtil, new LinkedList<Conversation>(),
-              commonKeywordThreshold, keywordLimit);
-      assertTrue(mergedConversations.isEmpty());
-
-      // Case 1: 1 Conversation.
-      mergedConversations = (LinkedList<Conversation>) mergeConversationsMethod
-          .invoke(messageAnalysisUtil,
-              new LinkedList<Conversation>(conversations.subList(0, 1)),
-              commonKeywordThreshold, keywordLimit);
-      assertEquals(1, mergedConversations.size());
-      assertEquals(conversations.get(0), mergedConversations.get(0));
-
-      // Case 2: Merge multiple Conversations in single iteration.
-      mergedConversations = (LinkedList<Conversation>) mergeConversationsMethod
-          .invoke(messageAnalysisUtil,
-              new LinkedList<Conversation>(conversations.subList(0, 3)),
-              commonKeywordThreshold, keywordLimit);
-      assertEquals(2, mergedConversations.size());
-      assertEquals(Conversation.newBuilder().addMessage(messages[0])
-          .addMessage(messages[1]).setStartTimestampSeconds(600L)
-          .setEndTimestampSeconds(1200L).setNumWords(4L).setNumNonStopWords(4L)
-          .addAllKeyword(Arrays.asList(TestUtil.createWordInfo("b", 2L, 2.0),
-              TestUtil.createWordInfo("a", 1L, 1.0),
-              TestUtil.createWordInfo("c", 1L, 1.0)))
-          .build(), mergedConversations.get(0));
-      assertEquals(conversations.get(2), mergedConversations.get(1));
-
-      // Case 3: Merge multiple Conversations in multiple iterations.
-      mergedConversations = (LinkedList<Conversation>) mergeConversationsMethod
-          .invoke(messageAnalysisUtil,
-              new LinkedList<Conversation>(conversations.subList(0, 5)),
-              commonKeywordThreshold, keywordLimit);
-      assertEquals(1, mergedConversations.size());
-      assertEquals(Conversation.newBuilder().addMessage(messages[0])
-          .addMessage(messages[1]).addMessage(messages[2])
-          .addMessage(messages[3]).addMessage(messages[4])
-          .setStartTimestampSeconds(600L).setEndTimestampSeconds(3000L)
-          .setNumWords(9L).setNumNonStopWords(9L)
-          .addAllKeyword(Arrays.asList(TestUtil.createWordInfo("c", 3L, 3.0),
-              TestUtil.createWordInfo("a", 2L, 2.0),
-              TestUtil.createWordInfo("b", 2L, 2.0),
-              TestUtil.createWordInfo("d", 2L, 2.0)))
-          .build(), mergedConversations.get(0));
-
-    } catch (Exception e) {
-      e.printStackTrace();
-      fail();
-    }
+    MessageAnalysisContext context = createContext(600, 1);
+    Message[] messages = {
+        TestUtil.createMessage(0L, 600L, "user0", "user1", "a b"),
+        TestUtil.createMessage(1L, 1200L, "user1", "user0", "b c"),
+        TestUtil.createMessage(2L, 1800L, "user0", "user1", "d"),
+        TestUtil.createMessage(3L, 2400L, "user1", "user0", "d a"),
+        TestUtil.createMessage(4L, 3000L, "user0", "user1", "c c") };
+    List<Message> messageList = Arrays.asList(messages);
+    ArrayList<Conversation> mergedConversations = null;
+
+    // Case 0: 1 Conversation.
+    mergedConversations = messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messageList.subList(0, 1), context);
+    assertEquals(1, mergedConversations.size());
+    assertEquals(Conversation.newBuilder().addMessage(messages[0])
+        .setStartTimestampSeconds(600L).setEndTimestampSeconds(600L)
+        .setNumWords(2L).setNumNonStopWords(2L)
+        .addAllKeyword(Arrays.asList(TestUtil.createWordInfo("a", 1L, 1.0),
+            TestUtil.createWordInfo("b", 1L, 1.0)))
+        .build(), mergedConversations.get(0));
+
+    // Case 1: Merge multiple Conversations in single iteration.
+    mergedConversations = messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messageList.subList(0, 3), context);
+    assertEquals(2, mergedConversations.size());
+    assertEquals(Conversation.newBuilder().addMessage(messages[0])
+        .addMessage(messages[1]).setStartTimestampSeconds(600L)
+        .setEndTimestampSeconds(1200L).setNumWords(4L).setNumNonStopWords(4L)
+        .addAllKeyword(Arrays.asList(TestUtil.createWordInfo("b", 2L, 2.0),
+            TestUtil.createWordInfo("a", 1L, 1.0),
+            TestUtil.createWordInfo("c", 1L, 1.0)))
+        .build(), mergedConversations.get(0));
+    assertEquals(Arrays.asList(messages[2]),
+        mergedConversations.get(1).getMessageList());
+
+    // Case 2: Merge multiple Conversations in multiple iterations.
+    mergedConversations = messageAnalysisUtil
+        .mergeMessagesAndComputeKeywords(messageList, context);
+    assertEquals(1, mergedConversations.size());
+    assertEquals(Conversation.newBuilder().addMessage(messages[0])
+        .addMessage(messages[1]).addMessage(messages[2])
+        .addMessage(messages[3]).addMessage(messages[4])
+        .setStartTimestampSeconds(600L).setEndTimestampSeconds(3000L)
+        .setNumWords(9L).setNumNonStopWords(9L)
+        .addAllKeyword(Arrays.asList(TestUtil.createWordInfo("c", 3L, 3.0),
+            TestUtil.createWordInfo("a", 2L, 2.0),
+            TestUtil.createWordInfo("b", 2L, 2.0),
+            TestUtil.createWordInfo("d", 2L, 2.0)))
+        .build(), mergedConversations.get(0));
   }
 
   @Test
@@ -297,4 +214,13 @@ public class MessageAnalysisUtilTest {
         conversations.get(1));
   }
 
+  // With no keyword limit, and no minimum number of messages.
+  private static MessageAnalysisContext createContext(int timeBucketSeconds,
+      int commonKeywordThreshold) {
+    return MessageAnalysisContext.newBuilder().setNlpContext(nlpContext)
+        .setTimeBucketSeconds(timeBucketSeconds)
+        .setCommonKeywordThreshold(commonKeywordThreshold).setKeywordLimit(0)
+        .setMinMessagesPerConversation(1).build();
+  }
+
 }
@@ -0,0 +1,197 @@
+package com.neoshell.nlp.server;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+public class AsyncHandlerTest {
+
+  // Keeps the records it gets. Publishing waits while blocked.
+  private static class RecordingHandler extends Handler {
+    final List<LogRecord> records = Collections
+        .synchronizedList(new ArrayList<LogRecord>());
+    final CountDownLatch publishing = new CountDownLatch(1);
+    volatile CountDownLatch unblock = new CountDownLatch(0);
+    // Number of records when last flushed.
+    volatile int flushedCount = 0;
+    volatile boolean isClosed = false;
+
+    @Override
+    public void publish(LogRecord record) {
+      publishing.countDown();
+      try {
+        unblock.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      records.add(record);
+    }
+
+    @Override
+    public void flush() {
+      flushedCount = records.size();
+    }
+
+    @Override
+    public void close() {
+      isClosed = true;
+    }
+  }
+
+  @Test
+  public void dropWhenFull() throws InterruptedException {
+    RecordingHandler target = new RecordingHandler();
+    target.unblock = new CountDownLatch(1);
+    AsyncHandler handler = new AsyncHandler(target, 2,
+        AsyncHandler.OverflowPolicy.DROP);
+    // The writer takes the first record and blocks, 2 more fill the queue.
+    handler.publish(createRecord("0"));
+    assertTrue(target.publishing.await(5L, TimeUnit.SECONDS));
+    handler.publish(createRecord("1"));
+    handler.publish(createRecord("2"));
+    assertEquals(2, handler.getQueueSize());
+    handler.publish(createRecord("3"));
+    handler.publish(createRecord("4"));
+    assertEquals(2L, handler.getDroppedCount());
+
+    target.unblock.countDown();
+    handler.flush();
+    assertEquals(3, target.flushedCount);
+    assertMessages(target, "0", "1", "2");
+    handler.close();
+  }
+
+  @Test
+  public void blockWhenFull() throws InterruptedException {
+    RecordingHandler target = new RecordingHandler();
+    target.unblock = new CountDownLatch(1);
+    final AsyncHandler handler = new AsyncHandler(target, 2,
+        AsyncHandler.OverflowPolicy.BLOCK);
+    handler.publish(createRecord("0"));
+    assertTrue(target.publishing.await(5L, TimeUnit.SECONDS));
+    handler.publish(createRecord("1"));
+    handler.publish(createRecord("2"));
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        handler.publish(createRecord("3"));
+      }
+    };
+    producer.start();
+    long deadlineNanos = System.nanoTime() + 5000000000L;
+    while (producer.getState() != Thread.State.WAITING
+        && System.nanoTime() < deadlineNanos) {
+      Thread.sleep(1L);
+    }
+    assertEquals(Thread.State.WAITING, producer.getState());
+
+    target.unblock.countDown();
+    producer.join(5000L);
+    assertFalse(producer.isAlive());
+    handler.flush();
+    assertEquals(0L, handler.getDroppedCount());
+    assertMessages(target, "0", "1", "2", "3");
+    handler.close();
+  }
+
+  @Test
+  public void concurrentProducers() throws InterruptedException {
+    final int numProducers = 4;
+    final int numRecords = 2000;
+    RecordingHandler target = new RecordingHandler();
+    final AsyncHandler handler = new AsyncHandler(target, 16,
+        AsyncHandler.OverflowPolicy.BLOCK);
+    List<Thread> producers = new ArrayList<>();
+    for (int p = 0; p < numProducers; p++) {
+      final int producer = p;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < numRecords; i++) {
+            handler.publish(createRecord(producer + ":" + i));
+          }
+        }
+      };
+      thread.start();
+      producers.add(thread);
+    }
+    for (Thread thread : producers) {
+      thread.join();
+    }
+    handler.flush();
+    assertEquals(numProducers * numRecords, target.flushedCount);
+    assertEquals(0L, handler.getDroppedCount());
+    // In order for each producer.
+    int[] next = new int[numProducers];
+    for (LogRecord record : target.records) {
+      String[] parts = record.getMessage().split(":");
+      int producer = Integer.parseInt(parts[0]);
+      assertEquals(next[producer]++, Integer.parseInt(parts[1]));
+    }
+    handler.close();
+  }
+
+  @Test
+  public void flushWaitsForWrites() {
+    RecordingHandler target = new RecordingHandler();
+    AsyncHandler handler = new AsyncHandler(target, 1024,
+        AsyncHandler.OverflowPolicy.BLOCK);
+    // Over several batches, in order.
+    List<String> expected = new ArrayList<>();
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 50; i++) {
+        String message = round + "." + i;
+        handler.publish(createRecord(message));
+        expected.add(message);
+      }
+      handler.flush();
+      assertEquals(expected.size(), target.flushedCount);
+      assertMessages(target, expected.toArray(new String[0]));
+    }
+    handler.close();
+  }
+
+  @Test
+  public void closeWritesEverything() {
+    RecordingHandler target = new RecordingHandler();
+    AsyncHandler handler = new AsyncHandler(target, 4096,
+        AsyncHandler.OverflowPolicy.BLOCK);
+    for (int i = 0; i < 1000; i++) {
+      handler.publish(createRecord(String.valueOf(i)));
+    }
+    handler.close();
+    assertEquals(1000, target.records.size());
+    assertEquals(1000, target.flushedCount);
+    assertTrue(target.isClosed);
+    // Ignored once closed.
+    handler.publish(createRecord("late"));
+    handler.flush();
+    assertEquals(1000, target.records.size());
+  }
+
+  private static LogRecord createRecord(String message) {
+    return new LogRecord(Level.INFO, message);
+  }
+
+  private static void assertMessages(RecordingHandler target,
+      String... expected) {
+    List<String> messages = new ArrayList<>();
+    synchronized (target.records) {
+      for (LogRecord record : target.records) {
+        messages.add(record.getMessage());
+      }
+    }
+    assertEquals(Arrays.asList(expected), messages);
+  }
+
+}
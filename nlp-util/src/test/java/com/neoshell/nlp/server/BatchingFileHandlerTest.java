@@ -0,0 +1,60 @@
+package com.neoshell.nlp.server;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchingFileHandlerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void flushesOnlyWhenAsked() throws Exception {
+    File file = new File(folder.getRoot(), "test.log");
+    BatchingFileHandler handler = new BatchingFileHandler(file.getPath(),
+        0, 1, false);
+    handler.setFormatter(new SimpleFormatter());
+    // Small records stay in the buffer of the stream until flushed.
+    handler.publish(new LogRecord(Level.INFO, "first"));
+    handler.publish(new LogRecord(Level.INFO, "second"));
+    assertEquals(0L, file.length());
+
+    handler.flush();
+    String text = new String(Files.readAllBytes(file.toPath()),
+        StandardCharsets.UTF_8);
+    assertTrue(text.indexOf("first") >= 0);
+    assertTrue(text.indexOf("second") > text.indexOf("first"));
+    handler.close();
+  }
+
+  @Test
+  public void asyncHandlerTarget() throws Exception {
+    File file = new File(folder.getRoot(), "async.log");
+    BatchingFileHandler fileHandler = new BatchingFileHandler(file.getPath(),
+        0, 1, false);
+    fileHandler.setFormatter(new SimpleFormatter());
+    AsyncHandler handler = new AsyncHandler(fileHandler, 64,
+        AsyncHandler.OverflowPolicy.BLOCK);
+    for (int i = 0; i < 500; i++) {
+      handler.publish(new LogRecord(Level.INFO, "record " + i));
+    }
+    // On disk once flush() returns.
+    handler.flush();
+    String text = new String(Files.readAllBytes(file.toPath()),
+        StandardCharsets.UTF_8);
+    assertTrue(text.contains("record 0\n"));
+    assertTrue(text.contains("record 499\n"));
+    handler.close();
+  }
+
+}
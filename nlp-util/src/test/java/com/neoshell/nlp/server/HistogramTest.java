@@ -0,0 +1,88 @@
+package com.neoshell.nlp.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+  private static final int LAST_BUCKET = Histogram
+      .getBucketIndex(Long.MAX_VALUE);
+
+  @Test
+  public void bucketBounds() {
+    // Exact below 4.
+    for (int i = 0; i < 4; i++) {
+      assertEquals(i, Histogram.getBucketIndex(i));
+      assertEquals(i, Histogram.getBucketUpperBound(i));
+    }
+    // 4 buckets per power of two.
+    assertEquals(4, Histogram.getBucketIndex(4L));
+    assertEquals(7, Histogram.getBucketIndex(7L));
+    assertEquals(8, Histogram.getBucketIndex(8L));
+    assertEquals(8, Histogram.getBucketIndex(9L));
+    assertEquals(9, Histogram.getBucketIndex(10L));
+    assertEquals(9L, Histogram.getBucketUpperBound(8));
+    assertEquals(15L, Histogram.getBucketUpperBound(11));
+    assertEquals(Histogram.getBucketIndex(1L << 40) - 1,
+        Histogram.getBucketIndex((1L << 40) - 1));
+    // The last bucket ends at Long.MAX_VALUE instead of overflowing.
+    assertEquals(Long.MAX_VALUE, Histogram.getBucketUpperBound(LAST_BUCKET));
+    assertEquals(LAST_BUCKET, Histogram.getBucketIndex(7L << 60));
+  }
+
+  @Test
+  public void bucketsAreContiguous() {
+    for (int i = 0; i < LAST_BUCKET; i++) {
+      long upperBound = Histogram.getBucketUpperBound(i);
+      assertEquals(i, Histogram.getBucketIndex(upperBound));
+      assertEquals(i + 1, Histogram.getBucketIndex(upperBound + 1));
+    }
+  }
+
+  @Test
+  public void percentiles() {
+    Histogram histogram = new Histogram();
+    assertEquals(0L, histogram.getP50());
+    assertEquals(0.0, histogram.getMean(), 0.0);
+
+    for (long i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(100L, histogram.getCount());
+    assertEquals(5050L, histogram.getSum());
+    assertEquals(50.5, histogram.getMean(), 1e-9);
+    assertEquals(100L, histogram.getMax());
+    // Upper bounds of the buckets of 50 (48-55) and 90 (80-95).
+    assertEquals(55L, histogram.getP50());
+    assertEquals(95L, histogram.getP90());
+    // Capped by the max.
+    assertEquals(100L, histogram.getP99());
+    assertEquals(1L, histogram.getPercentile(0.0));
+    assertEquals(100L, histogram.getPercentile(1.0));
+
+    histogram.reset();
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0L, histogram.getMax());
+    assertEquals(0L, histogram.getP99());
+  }
+
+  @Test
+  public void edgeValues() {
+    Histogram histogram = new Histogram();
+    histogram.record(0L);
+    assertEquals(0L, histogram.getP50());
+    assertEquals(0L, histogram.getP99());
+    // Negative values count as 0.
+    histogram.record(-5L);
+    assertEquals(2L, histogram.getCount());
+    assertEquals(0L, histogram.getMax());
+    assertEquals(0L, histogram.getP99());
+
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, histogram.getMax());
+    assertEquals(0L, histogram.getP50());
+    assertEquals(Long.MAX_VALUE, histogram.getP99());
+  }
+
+}
@@ -0,0 +1,178 @@
+package com.neoshell.nlp.server;
+
+import static org.junit.Assert.*;
+
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.core.Segmenter;
+import com.neoshell.nlp.grpc.NLPUtilGrpc;
+import com.neoshell.nlp.grpc.SegmentReply;
+import com.neoshell.nlp.grpc.SegmentRequest;
+
+public class MetricsInterceptorTest {
+
+  private static final String SEGMENT_METHOD = MethodDescriptor
+      .generateFullMethodName(NLPUtilGrpc.SERVICE_NAME, "Segment");
+
+  // Texts starting with "fail" throw, texts starting with "block" wait until
+  // the call is cancelled.
+  private final CountDownLatch blocked = new CountDownLatch(1);
+  private final ServerMetrics metrics = new ServerMetrics();
+  private Server server;
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() throws IOException {
+    NLPUtil nlpUtil = new NLPUtil(new Segmenter() {
+      @Override
+      public List<String> segment(String text) {
+        if (text.startsWith("fail")) {
+          throw new IllegalStateException(text);
+        }
+        if (text.startsWith("block")) {
+          blocked.countDown();
+          long deadlineNanos = System.nanoTime() + 5000000000L;
+          while (!Context.current().isCancelled()
+              && System.nanoTime() < deadlineNanos) {
+            try {
+              Thread.sleep(10L);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              break;
+            }
+          }
+        }
+        return Arrays.asList(text.split(" "));
+      }
+    });
+    String name = "MetricsInterceptorTest";
+    server = InProcessServerBuilder.forName(name)
+        .addService(ServerInterceptors.intercept(
+            new NLPUtilServer.NLPUtilImpl(nlpUtil),
+            new MetricsInterceptor(metrics)))
+        .build().start();
+    channel = InProcessChannelBuilder.forName(name).build();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    channel.shutdownNow().awaitTermination(5L, TimeUnit.SECONDS);
+    server.shutdownNow().awaitTermination(5L, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void ok() throws Exception {
+    NLPUtilGrpc.newBlockingStub(channel)
+        .segment(SegmentRequest.newBuilder().addText("apple red").build());
+    RpcMetrics rpcMetrics = metrics.getRpcMetrics(SEGMENT_METHOD);
+    waitForCount(rpcMetrics, 1L);
+    assertEquals(0, rpcMetrics.getInFlight());
+    assertEquals(0L, rpcMetrics.getErrors());
+    assertEquals(0L, rpcMetrics.getAborted());
+    assertEquals(1L, rpcMetrics.getRequestBytes().getCount());
+    assertEquals(1L, rpcMetrics.getResponseBytes().getCount());
+    assertTrue(rpcMetrics.getResponseBytes().getMax() > 0L);
+  }
+
+  @Test
+  public void error() throws Exception {
+    try {
+      NLPUtilGrpc.newBlockingStub(channel)
+          .segment(SegmentRequest.newBuilder().addText("fail").build());
+      fail();
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.UNKNOWN, e.getStatus().getCode());
+    }
+    RpcMetrics rpcMetrics = metrics.getRpcMetrics(SEGMENT_METHOD);
+    waitForCount(rpcMetrics, 1L);
+    assertEquals(0, rpcMetrics.getInFlight());
+    assertEquals(1L, rpcMetrics.getErrors());
+    assertEquals(0L, rpcMetrics.getAborted());
+  }
+
+  @Test
+  public void cancelled() throws Exception {
+    ListenableFuture<SegmentReply> future = NLPUtilGrpc
+        .newFutureStub(channel).segment(SegmentRequest.newBuilder()
+            .addText("block").addText("apple").build());
+    assertTrue(blocked.await(5L, TimeUnit.SECONDS));
+    RpcMetrics rpcMetrics = metrics.getRpcMetrics(SEGMENT_METHOD);
+    assertEquals(1, rpcMetrics.getInFlight());
+    assertEquals(1, metrics.getInFlight());
+
+    // Listener callbacks of a call are serialized, so the cancellation is
+    // seen by the interceptor once the service stops, at the next text, and
+    // closes the call as CANCELLED.
+    future.cancel(true);
+    waitForCount(rpcMetrics, 1L);
+    assertEquals(0, rpcMetrics.getInFlight());
+    assertEquals(1L, rpcMetrics.getErrors());
+    assertEquals(1L, rpcMetrics.getAborted());
+    assertEquals(0, metrics.getInFlight());
+  }
+
+  @Test
+  public void httpServer() throws Exception {
+    NLPUtilGrpc.newBlockingStub(channel)
+        .segment(SegmentRequest.newBuilder().addText("apple red").build());
+    waitForCount(metrics.getRpcMetrics(SEGMENT_METHOD), 1L);
+    metrics.record("segment", 3000L, 2L);
+
+    MetricsHttpServer httpServer = new MetricsHttpServer(0, metrics);
+    httpServer.start();
+    try {
+      URL url = new URL(
+          "http://localhost:" + httpServer.getPort() + "/metrics");
+      String text;
+      try (InputStream is = url.openStream();
+          Scanner scanner = new Scanner(is, StandardCharsets.UTF_8.name())) {
+        text = scanner.useDelimiter("\\A").next();
+      }
+      assertEquals(metrics.toText(), text);
+      assertTrue(text.startsWith("in_flight 0\n"));
+      assertTrue(text.contains(
+          "rpc_count{method=\"" + SEGMENT_METHOD + "\"} 1\n"));
+      assertTrue(text
+          .contains("stage_latency_micros_max{stage=\"segment\"} 3\n"));
+      assertTrue(text.contains("stage_items_count{stage=\"segment\"} 1\n"));
+    } finally {
+      httpServer.stop();
+    }
+  }
+
+  // The call is finished on the server after the client gets its result.
+  private static void waitForCount(RpcMetrics rpcMetrics, long count)
+      throws InterruptedException {
+    long deadlineNanos = System.nanoTime() + 5000000000L;
+    while (rpcMetrics.getCount() < count
+        && System.nanoTime() < deadlineNanos) {
+      Thread.sleep(10L);
+    }
+    assertEquals(count, rpcMetrics.getCount());
+  }
+
+}
@@ -0,0 +1,425 @@
+package com.neoshell.nlp.server;
+
+import static org.junit.Assert.*;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.ServerBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.health.v1.HealthCheckRequest;
+import io.grpc.health.v1.HealthCheckResponse.ServingStatus;
+import io.grpc.health.v1.HealthGrpc;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ini4j.Wini;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.neoshell.nlp.core.NLPUtil;
+import com.neoshell.nlp.core.Segmenter;
+import com.neoshell.nlp.core.StageRecorder;
+import com.neoshell.nlp.grpc.MergeMessagesAndComputeKeywordsRequest;
+import com.neoshell.nlp.grpc.MergeMessagesAndComputeKeywordsStreamReply;
+import com.neoshell.nlp.grpc.MessageAnalysisUtilGrpc;
+import com.neoshell.nlp.grpc.NLPUtilGrpc;
+import com.neoshell.nlp.grpc.SegmentRequest;
+import com.neoshell.nlp.messaging.Conversation;
+import com.neoshell.nlp.messaging.Message;
+import com.neoshell.nlp.messaging.MessageAnalysisContext;
+import com.neoshell.nlp.messaging.MessageAnalysisUtil;
+import com.neoshell.nlp.test.TestUtil;
+
+public class NLPUtilServerTest {
+
+  // Serves in-process, and loads a whitespace segmenter once released
+  // instead of the Stanford model.
+  private static class StubModelServer extends NLPUtilServer {
+    private final String name;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger segmentCount = new AtomicInteger();
+    private volatile IOException loadFailure;
+
+    StubModelServer(String name) {
+      this.name = name;
+    }
+
+    @Override
+    ServerBuilder<?> createServerBuilder(int port) {
+      return InProcessServerBuilder.forName(name);
+    }
+
+    @Override
+    Segmenter loadSegmenter(Wini config) throws IOException {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      if (loadFailure != null) {
+        throw loadFailure;
+      }
+      return new Segmenter() {
+        @Override
+        public List<String> segment(String text) {
+          segmentCount.incrementAndGet();
+          return Arrays.asList(text.split(" "));
+        }
+      };
+    }
+  }
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void segmentStopsAfterDeadline() throws Exception {
+    final AtomicInteger segmentCount = new AtomicInteger();
+    NLPUtil nlpUtil = new NLPUtil(new Segmenter() {
+      @Override
+      public List<String> segment(String text) {
+        segmentCount.incrementAndGet();
+        try {
+          Thread.sleep(10L);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return Arrays.asList(text.split(" "));
+      }
+    });
+    ServerMetrics metrics = new ServerMetrics();
+    String name = "NLPUtilServerTest";
+    Server server = InProcessServerBuilder.forName(name)
+        .addService(ServerInterceptors.intercept(
+            new NLPUtilServer.NLPUtilImpl(nlpUtil),
+            new MetricsInterceptor(metrics)))
+        .build().start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+    try {
+      // About 10 s of work. The deadline leaves time for the call to start.
+      List<String> texts = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        texts.add("text " + i);
+      }
+      try {
+        NLPUtilGrpc.newBlockingStub(channel)
+            .withDeadlineAfter(1L, TimeUnit.SECONDS)
+            .segment(SegmentRequest.newBuilder().addAllText(texts).build());
+        fail();
+      } catch (StatusRuntimeException e) {
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+      }
+
+      RpcMetrics rpcMetrics = metrics.getRpcMetrics(MethodDescriptor
+          .generateFullMethodName(NLPUtilGrpc.SERVICE_NAME, "Segment"));
+      long deadlineNanos = System.nanoTime() + 5000000000L;
+      while (rpcMetrics.getAborted() == 0L
+          && System.nanoTime() < deadlineNanos) {
+        Thread.sleep(10L);
+      }
+      assertEquals(1L, rpcMetrics.getAborted());
+      assertTrue(segmentCount.get() < texts.size());
+    } finally {
+      channel.shutdownNow();
+      server.shutdownNow();
+    }
+  }
+
+  @Test
+  public void mergeMessagesAndComputeKeywordsStream() throws Exception {
+    NLPUtil nlpUtil = new NLPUtil(new Segmenter() {
+      @Override
+      public List<String> segment(String text) {
+        return Arrays.asList(text.split(" "));
+      }
+    });
+    String name = "NLPUtilServerTest.stream";
+    Server server = InProcessServerBuilder.forName(name)
+        .addService(new NLPUtilServer.MessageAnalysisUtilImpl(
+            new MessageAnalysisUtil(nlpUtil)))
+        .build().start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+    try {
+      List<Message> messages = Arrays.asList(
+          TestUtil.createMessage(0L, 10L, "user0", "user1", "apple red"),
+          TestUtil.createMessage(1L, 20L, "user1", "user0", "red apple"),
+          TestUtil.createMessage(2L, 700L, "user0", "user1", "blue sky"),
+          TestUtil.createMessage(3L, 1300L, "user1", "user0", "apple pie"));
+      MessageAnalysisContext context = MessageAnalysisContext.newBuilder()
+          .setTimeBucketSeconds(600).setCommonKeywordThreshold(1)
+          .setMinMessagesPerConversation(1).build();
+      MergeMessagesAndComputeKeywordsRequest.Builder request = MergeMessagesAndComputeKeywordsRequest
+          .newBuilder().addAllMessage(messages).setContext(context);
+      List<Conversation> expected = MessageAnalysisUtilGrpc
+          .newBlockingStub(channel)
+          .mergeMessagesAndComputeKeywords(request.build())
+          .getConversationList();
+      assertEquals(3, expected.size());
+      assertEquals(expected, getConversations(MessageAnalysisUtilGrpc
+          .newBlockingStub(channel)
+          .mergeMessagesAndComputeKeywordsStream(request.build())));
+
+      // Summaries have the same keywords and message ids instead of
+      // messages.
+      List<Conversation> summaries = getConversations(MessageAnalysisUtilGrpc
+          .newBlockingStub(channel).mergeMessagesAndComputeKeywordsStream(
+              request.setSummaryOnly(true).build()));
+      assertEquals(expected.size(), summaries.size());
+      for (int i = 0; i < expected.size(); i++) {
+        Conversation conversation = expected.get(i);
+        Conversation summary = summaries.get(i);
+        assertEquals(0, summary.getMessageCount());
+        assertEquals(conversation.getMessageCount(),
+            summary.getMessageIdCount());
+        for (int j = 0; j < conversation.getMessageCount(); j++) {
+          assertEquals(conversation.getMessage(j).getId(),
+              summary.getMessageId(j));
+        }
+        assertEquals(conversation.getKeywordList(), summary.getKeywordList());
+        assertEquals(conversation.getStartTimestampSeconds(),
+            summary.getStartTimestampSeconds());
+      }
+    } finally {
+      channel.shutdownNow();
+      server.shutdownNow();
+    }
+  }
+
+  @Test
+  public void streamFollowsFlowControl() throws Exception {
+    NLPUtil nlpUtil = new NLPUtil(new Segmenter() {
+      @Override
+      public List<String> segment(String text) {
+        return Arrays.asList(text.split(" "));
+      }
+    });
+    ServerMetrics metrics = new ServerMetrics();
+    String name = "NLPUtilServerTest.flowControl";
+    Server server = InProcessServerBuilder.forName(name)
+        .addService(ServerInterceptors.intercept(
+            new NLPUtilServer.MessageAnalysisUtilImpl(
+                new MessageAnalysisUtil(nlpUtil)),
+            new MetricsInterceptor(metrics)))
+        .build().start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+    try {
+      // 10 conversations without common keywords.
+      List<Message> messages = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        messages.add(TestUtil.createMessage(i, i * 1000L, "user0", "user1",
+            "word" + i));
+      }
+      MessageAnalysisContext context = MessageAnalysisContext.newBuilder()
+          .setTimeBucketSeconds(600).setCommonKeywordThreshold(1)
+          .setMinMessagesPerConversation(1).build();
+      final BlockingQueue<MergeMessagesAndComputeKeywordsStreamReply> replies = new LinkedBlockingQueue<>();
+      final CountDownLatch closed = new CountDownLatch(1);
+      ClientCall<MergeMessagesAndComputeKeywordsRequest, MergeMessagesAndComputeKeywordsStreamReply> call = channel
+          .newCall(
+              MessageAnalysisUtilGrpc.METHOD_MERGE_MESSAGES_AND_COMPUTE_KEYWORDS_STREAM,
+              CallOptions.DEFAULT);
+      call.start(
+          new ClientCall.Listener<MergeMessagesAndComputeKeywordsStreamReply>() {
+            @Override
+            public void onMessage(
+                MergeMessagesAndComputeKeywordsStreamReply message) {
+              replies.add(message);
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+              closed.countDown();
+            }
+          }, new Metadata());
+      call.sendMessage(MergeMessagesAndComputeKeywordsRequest.newBuilder()
+          .addAllMessage(messages).setContext(context).build());
+      call.halfClose();
+      RpcMetrics rpcMetrics = metrics.getRpcMetrics(
+          MethodDescriptor.generateFullMethodName(
+              MessageAnalysisUtilGrpc.SERVICE_NAME,
+              "MergeMessagesAndComputeKeywordsStream"));
+
+      // The server only sends what the client asks for.
+      for (int i = 0; i < 3; i++) {
+        call.request(1);
+        MergeMessagesAndComputeKeywordsStreamReply reply = replies.poll(5L,
+            TimeUnit.SECONDS);
+        assertNotNull(reply);
+        assertEquals(messages.get(i), reply.getConversation().getMessage(0));
+        Thread.sleep(50L);
+        assertEquals(i + 1, rpcMetrics.getResponseBytes().getCount());
+      }
+
+      // And stops once cancelled.
+      call.cancel("Enough", null);
+      assertTrue(closed.await(5L, TimeUnit.SECONDS));
+      long deadlineNanos = System.nanoTime() + 5000000000L;
+      while (rpcMetrics.getCount() == 0L
+          && System.nanoTime() < deadlineNanos) {
+        Thread.sleep(10L);
+      }
+      assertEquals(1L, rpcMetrics.getErrors());
+      assertEquals(3L, rpcMetrics.getResponseBytes().getCount());
+    } finally {
+      channel.shutdownNow();
+      server.shutdownNow();
+    }
+  }
+
+  @Test
+  public void readiness() throws Exception {
+    String name = "NLPUtilServerTest.readiness";
+    StubModelServer nlpUtilServer = new StubModelServer(name);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+    try {
+      Future<?> started = startInBackground(executor, nlpUtilServer);
+      awaitHealthService(channel);
+      // Not ready while the model loads.
+      assertEquals(ServingStatus.NOT_SERVING, getServingStatus(channel, ""));
+      assertEquals(ServingStatus.NOT_SERVING,
+          getServingStatus(channel, NLPUtilGrpc.SERVICE_NAME));
+      try {
+        NLPUtilGrpc.newBlockingStub(channel)
+            .segment(SegmentRequest.newBuilder().addText("apple").build());
+        fail();
+      } catch (StatusRuntimeException e) {
+        assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+      }
+
+      nlpUtilServer.release.countDown();
+      started.get(30L, TimeUnit.SECONDS);
+      assertEquals(ServingStatus.SERVING, getServingStatus(channel, ""));
+      assertEquals(ServingStatus.SERVING,
+          getServingStatus(channel, NLPUtilGrpc.SERVICE_NAME));
+      // Warmed up, but warm-up calls are not in the metrics.
+      assertTrue(nlpUtilServer.segmentCount.get() > 0);
+      assertTrue(nlpUtilServer.getMetrics().toText()
+          .contains("stage_latency_micros_count{stage=\""
+              + StageRecorder.SEGMENT + "\"} 0\n"));
+      assertEquals(Arrays.asList("apple", "red"),
+          NLPUtilGrpc.newBlockingStub(channel)
+              .segment(SegmentRequest.newBuilder().addText("apple red")
+                  .build())
+              .getWordList());
+    } finally {
+      nlpUtilServer.release.countDown();
+      nlpUtilServer.stop();
+      channel.shutdownNow();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void failedLoadIsNeverReady() throws Exception {
+    String name = "NLPUtilServerTest.failedLoad";
+    StubModelServer nlpUtilServer = new StubModelServer(name);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+    try {
+      Future<?> started = startInBackground(executor, nlpUtilServer);
+      awaitHealthService(channel);
+      assertEquals(ServingStatus.NOT_SERVING, getServingStatus(channel, ""));
+
+      nlpUtilServer.loadFailure = new IOException("no model");
+      nlpUtilServer.release.countDown();
+      try {
+        started.get(30L, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertEquals("no model", e.getCause().getMessage());
+      }
+      // Either still not serving or shut down.
+      try {
+        assertEquals(ServingStatus.NOT_SERVING,
+            getServingStatus(channel, ""));
+      } catch (StatusRuntimeException e) {
+        assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+      }
+    } finally {
+      nlpUtilServer.stop();
+      channel.shutdownNow();
+      executor.shutdownNow();
+    }
+  }
+
+  private Future<?> startInBackground(ExecutorService executor,
+      final NLPUtilServer nlpUtilServer) throws IOException {
+    File stopWordsFile = folder.newFile();
+    Files.write(stopWordsFile.toPath(),
+        Arrays.asList("the", "is"), StandardCharsets.UTF_8);
+    final File configFile = folder.newFile("config.ini");
+    Files.write(configFile.toPath(), Arrays.asList("[Server]", "Port=0",
+        "[NLP]", "StopWordsEnglish=" + stopWordsFile.getPath(),
+        "StopWordsChinese=" + stopWordsFile.getPath(),
+        "KeywordBatchThreads=0", "[Warmup]", "Iterations=2"),
+        StandardCharsets.UTF_8);
+    return executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        nlpUtilServer.start(configFile.getPath());
+        return null;
+      }
+    });
+  }
+
+  // Waits until the server accepts calls, which it does before loading.
+  private static void awaitHealthService(ManagedChannel channel)
+      throws InterruptedException {
+    long deadlineNanos = System.nanoTime() + 10000000000L;
+    while (true) {
+      try {
+        getServingStatus(channel, "");
+        return;
+      } catch (StatusRuntimeException e) {
+        if (System.nanoTime() > deadlineNanos) {
+          throw e;
+        }
+        Thread.sleep(10L);
+      }
+    }
+  }
+
+  private static ServingStatus getServingStatus(ManagedChannel channel,
+      String service) {
+    return HealthGrpc.newBlockingStub(channel)
+        .check(HealthCheckRequest.newBuilder().setService(service).build())
+        .getStatus();
+  }
+
+  private static List<Conversation> getConversations(
+      Iterator<MergeMessagesAndComputeKeywordsStreamReply> replies) {
+    List<Conversation> conversations = new ArrayList<>();
+    while (replies.hasNext()) {
+      conversations.add(replies.next().getConversation());
+    }
+    return conversations;
+  }
+
+}
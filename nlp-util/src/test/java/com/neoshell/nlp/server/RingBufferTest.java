@@ -0,0 +1,84 @@
+package com.neoshell.nlp.server;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+  @Test
+  public void offerAndPoll() {
+    RingBuffer<Integer> queue = new RingBuffer<>(3);
+    assertEquals(4, queue.capacity());
+    assertNull(queue.poll());
+    // Several laps.
+    for (int lap = 0; lap < 3; lap++) {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(queue.offer(lap * 4 + i));
+      }
+      assertFalse(queue.offer(-1));
+      assertEquals(4, queue.size());
+      for (int i = 0; i < 4; i++) {
+        assertEquals(Integer.valueOf(lap * 4 + i), queue.poll());
+      }
+      assertNull(queue.poll());
+      assertEquals(0, queue.size());
+    }
+    assertEquals(12L, queue.getOfferCount());
+    assertEquals(2, new RingBuffer<Integer>(1).capacity());
+    assertEquals(8, new RingBuffer<Integer>(8).capacity());
+  }
+
+  @Test
+  public void concurrentProducers() throws InterruptedException {
+    final int numProducers = 4;
+    final int numElements = 20000;
+    final RingBuffer<int[]> queue = new RingBuffer<>(16);
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> producers = new ArrayList<>();
+    for (int p = 0; p < numProducers; p++) {
+      final int producer = p;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < numElements; i++) {
+            while (!queue.offer(new int[] { producer, i })) {
+              Thread.yield();
+            }
+          }
+        }
+      };
+      thread.start();
+      producers.add(thread);
+    }
+    start.countDown();
+    // Each producer's elements come out in order, and none is lost.
+    int[] next = new int[numProducers];
+    int total = 0;
+    while (total < numProducers * numElements) {
+      int[] element = queue.poll();
+      if (element == null) {
+        Thread.yield();
+        continue;
+      }
+      assertEquals(next[element[0]], element[1]);
+      next[element[0]]++;
+      total++;
+    }
+    for (Thread thread : producers) {
+      thread.join();
+    }
+    assertNull(queue.poll());
+    assertEquals((long) numProducers * numElements, queue.getOfferCount());
+  }
+
+}